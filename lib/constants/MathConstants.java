@@ -14,6 +14,27 @@ public final class MathConstants {
     public static final int BISECTION_MAX_ITERATIONS = 40;
     public static final double BISECTION_EPSILON = 1e-8;
     public static final double DEDUPLICATION_THRESHOLD = 1e-6;
+    public static final int NEWTON_MAX_ITERATIONS = 20;
+    
+    // Expression compilation
+    public static final int COMPILED_EXPRESSION_CACHE_SIZE = 512;
+    // Samples evaluated on the tree before an expression is compiled to bytecode
+    public static final int TIER_UP_THRESHOLD = 20000;
+    // View width, relative to the magnitude of x, below which curves are sampled in double-double
+    public static final double DEEP_ZOOM_RANGE = 1e-10;
+    // Largest error of the fast-math approximations used for preview frames
+    // (absolute for sin, cos and logarithms, relative for tan and exp)
+    public static final double FAST_MATH_MAX_ERROR = 1e-8;
+    // Largest number of terms of a sum or product; larger ones are undefined
+    public static final double MAX_REDUCTION_TERMS = 1e6;
+    // Term evaluations (terms times samples) from which a sum or product is split across threads
+    public static final int PARALLEL_REDUCTION_MIN_WORK = 1 << 16;
+    // Node evaluations (tree nodes times samples) from which a loop over samples is split across threads
+    public static final int PARALLEL_SAMPLING_MIN_WORK = 1 << 14;
+    // Largest number of terms of a recursive sequence kept in its memo table; later terms are undefined
+    public static final int MAX_SEQUENCE_TERMS = 1000000;
+    // Initial capacity of the memo table of a recursive sequence, doubled as terms are requested
+    public static final int SEQUENCE_MEMO_CAPACITY = 64;
     
     // Precision and formatting
     public static final double EPSILON = 1e-12; // General floating point comparison
@@ -44,6 +44,21 @@ public final class RenderingConstants {
     public static final int MAX_SAMPLES = 5000;
     public static final int MIN_INTERSECTION_SAMPLES = 200;
     public static final int MAX_INTERSECTION_SAMPLES = 1000;
+    // Samples per range bounded with interval arithmetic before sampling it
+    public static final int INTERVAL_BLOCK_SAMPLES = 32;
+    // Adaptive subdivision of curves: one initial sample every few pixels, then an
+    // interval is halved while its midpoint is off the chord by more than the tolerance
+    public static final int ADAPTIVE_INITIAL_SPACING = 8; // Pixels between initial samples
+    public static final int ADAPTIVE_MAX_DEPTH = 5; // Halvings of an initial interval (8 px down to 1/4 px)
+    public static final double ADAPTIVE_TOLERANCE = 0.5; // Pixels
+    public static final int ADAPTIVE_SAMPLE_BUDGET = 2000; // Samples evaluated per curve and frame
+    // Discontinuities: a step of the finest subdivision rising more than this many pixels is
+    // bisected to tell a jump or pole, whose change does not shrink, from a steep continuous segment
+    public static final double DISCONTINUITY_MIN_PIXELS = 2.0;
+    public static final int DISCONTINUITY_BISECTIONS = 8; // Samples spent at most per suspected jump
+    public static final int DISCONTINUITY_SAMPLE_BUDGET = 400; // Samples spent on bisections per curve and frame
+    // Quiet time after the last pan, zoom or slider move before the exact frame replaces the preview
+    public static final int SETTLE_DELAY_MS = 150;
     
     // Strokes (pre-created for performance)
     public static final Stroke FUNCTION_STROKE = new BasicStroke(FUNCTION_STROKE_WIDTH);
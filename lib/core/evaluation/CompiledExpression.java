@@ -0,0 +1,504 @@
+package lib.core.evaluation;
+
+import lib.constants.MathConstants;
+import lib.core.evaluation.codegen.BytecodeCompiler;
+import lib.core.evaluation.codegen.GeneratedCode;
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.BinaryOperator;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.ColumnFrame;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.DualNumber;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.Interval;
+import lib.core.evaluation.node.MathFunction;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ReductionNode;
+import lib.core.evaluation.node.SampleColumnCache;
+import lib.core.evaluation.node.SharedNode;
+import lib.core.evaluation.node.VariableNode;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An expression parsed once into an immutable evaluation tree.
+ * Evaluating it involves no string handling, regex or parsing, so it can be
+ * called for every sample of a curve.
+ * 
+ * Evaluation is tiered: every expression starts by walking its tree, and
+ * counts the samples it evaluates. Once it reaches
+ * {@link MathConstants#TIER_UP_THRESHOLD} the tree is compiled to bytecode on
+ * a background thread and the generated code takes over. Expressions typed
+ * and discarded while editing never pay for code generation.
+ * Expressions with sums or products keep walking the tree over columns,
+ * where a sum reuses its partial results from one frame to the next and
+ * splits large ranges across threads; single samples use the generated loop.
+ * Other large columns are split into ranges evaluated in parallel
+ * ({@link SampleRanges}), with the same results as one sequential pass.
+ */
+public class CompiledExpression {
+    
+    // One low-priority thread is enough: promotions are rare and not urgent
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "expression-compiler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    
+    private final String expression;
+    private final ExpressionNode root;
+    private final Dependencies dependencies;
+    private final boolean transcendental;
+    private final Set<String> sharedCalls;
+    private final boolean reductions;
+    // Distinct tree nodes, an estimate of the cost of a sample
+    private final int cost;
+    private final AtomicBoolean promotionRequested = new AtomicBoolean();
+    private volatile DoubleUnaryOperator function;
+    private volatile GeneratedCode generated;
+    // Racy on purpose: lost increments only delay the promotion slightly
+    private int hotness;
+    
+    /**
+     * Create a compiled expression, starting on the tree interpreter
+     * @param expression The source expression
+     * @param root Root of the parsed tree
+     */
+    public CompiledExpression(String expression, ExpressionNode root) {
+        this(expression, root, Dependencies.of(root));
+    }
+    
+    /**
+     * Create a compiled expression whose dependencies were collected before
+     * optimization, starting on the tree interpreter
+     * @param expression The source expression
+     * @param root Root of the optimized tree
+     * @param dependencies What the expression reads
+     */
+    public CompiledExpression(String expression, ExpressionNode root, Dependencies dependencies) {
+        this.expression = expression;
+        this.root = root;
+        this.dependencies = dependencies;
+        this.transcendental = usesTranscendentals(root, new IdentityHashMap<>());
+        Set<String> calls = new HashSet<>();
+        collectSharedCalls(root, calls, new IdentityHashMap<>());
+        this.sharedCalls = calls;
+        this.reductions = containsReduction(root, new IdentityHashMap<>());
+        this.cost = countNodes(root, new IdentityHashMap<>());
+        this.function = root::evaluate;
+    }
+    
+    /**
+     * Evaluate the expression for a given value of {@code x}
+     * Never throws: domain errors such as {@code sqrt(-1)} or {@code ln(0)}
+     * come back as NaN or infinity, so sampling loops need no try/catch.
+     * @param x The value to bind to {@code x}
+     * @return The evaluated result ({@code double}), NaN or infinite outside the domain
+     */
+    public double evaluate(double x) {
+        if (generated == null) {
+            countSamples(1);
+        }
+        return function.applyAsDouble(x);
+    }
+    
+    /**
+     * Evaluate the expression and its derivative for a given value of {@code x}
+     * by forward-mode automatic differentiation over the tree, through inlined
+     * user functions too. Exact up to rounding, unlike finite differences.
+     * @param x The value to bind to {@code x}
+     * @return The value and derivative ({@link DualNumber}), NaN outside the domain
+     */
+    public DualNumber evaluateWithDerivative(double x) {
+        return root.evaluateDual(DualNumber.variable(x));
+    }
+    
+    /**
+     * Bound the expression over a range of {@code x} by interval arithmetic.
+     * The result is guaranteed to hold every defined value the expression
+     * takes on the range, so ranges it proves off-screen or root-free can be
+     * skipped without sampling them. The bounds may be loose.
+     * @param from Start of the range
+     * @param to End of the range, not below {@code from}
+     * @return An enclosure of the values ({@link Interval}), empty if undefined on the whole range
+     */
+    public Interval evaluateInterval(double from, double to) {
+        return root.evaluateInterval(new Interval(from, to));
+    }
+    
+    /**
+     * Evaluate the expression in double-double precision (about 32 digits),
+     * for deep zoom. Always walks the tree and allocates nothing.
+     * @param xHi High part of the value to bind to {@code x}
+     * @param xLo Low part of the value to bind to {@code x}
+     * @param out Receives the high ({@code out[0]}) and low ({@code out[1]}) parts of the result
+     */
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        root.evaluateDoubleDouble(xHi, xLo, out);
+    }
+    
+    /**
+     * Evaluate the expression for a column of {@code x} values in one call.
+     * Generated code runs the whole column in one loop; the tree is evaluated
+     * node by node over the column, so arithmetic runs as vectorizable loops
+     * and only transcendental functions go sample by sample.
+     * @param xs The values to bind to {@code x}
+     * @param out Array receiving the results, at least as long as {@code xs}
+     */
+    public void evaluate(double[] xs, double[] out) {
+        if (out.length < xs.length) {
+            throw new IllegalArgumentException("Output column shorter than input column");
+        }
+        GeneratedCode code = generated;
+        if (code != null && !reductions) {
+            if (isSplit(xs.length)) {
+                evaluateSplit(xs, out, code, null, null, false);
+                return;
+            }
+            // Each sample is read before its result is written, so xs may be out
+            code.applyToColumn(xs, out, xs.length);
+            return;
+        }
+        countSamples(xs.length);
+        if (isSplit(xs.length)) {
+            evaluateSplit(xs, out, null, null, null, false);
+            return;
+        }
+        if (xs == out) {
+            xs = xs.clone();
+        }
+        root.evaluate(xs, out, xs.length);
+    }
+    
+    /**
+     * Evaluate the expression for a column of {@code x} values with the
+     * {@link lib.core.evaluation.node.FastMath} approximations of the
+     * transcendental functions, for preview frames drawn while the user
+     * interacts. Each approximated function is off by at most
+     * {@link MathConstants#FAST_MATH_MAX_ERROR}. Expressions without
+     * transcendental functions gain nothing and are evaluated exactly.
+     * @param xs The values to bind to {@code x}
+     * @param out Array receiving the results, at least as long as {@code xs}
+     */
+    public void evaluateFast(double[] xs, double[] out) {
+        if (!transcendental) {
+            evaluate(xs, out);
+            return;
+        }
+        if (out.length < xs.length) {
+            throw new IllegalArgumentException("Output column shorter than input column");
+        }
+        countSamples(xs.length);
+        if (isSplit(xs.length)) {
+            evaluateSplit(xs, out, null, null, null, true);
+            return;
+        }
+        if (xs == out) {
+            xs = xs.clone();
+        }
+        root.evaluate(xs, out, xs.length, new ColumnFrame(true));
+    }
+    
+    /**
+     * Evaluate the expression for samples of a grid, reading the columns of
+     * the user functions it calls on {@code x} from a cache shared with the
+     * other curves sampled on that grid. The first expression of a frame to
+     * call a function keeps its generated code; the next ones walk the tree
+     * and share the function's column. Expressions without such calls are
+     * evaluated as by {@link #evaluate(double[], double[])}.
+     * @param xs The values to bind to {@code x}
+     * @param out Array receiving the results, at least as long as {@code xs}
+     * @param indices Grid index of each sample
+     * @param columns Cache prepared for the grid
+     */
+    public void evaluate(double[] xs, double[] out, int[] indices, SampleColumnCache columns) {
+        if (sharedCalls.isEmpty() || (!columns.request(sharedCalls) && generated != null)) {
+            evaluate(xs, out);
+            return;
+        }
+        evaluateShared(xs, out, indices, columns, false);
+    }
+    
+    /**
+     * Evaluate the expression for samples of a grid with the fast-math
+     * approximations, sharing user function columns as
+     * {@link #evaluate(double[], double[], int[], SampleColumnCache)} does
+     * @param xs The values to bind to {@code x}
+     * @param out Array receiving the results, at least as long as {@code xs}
+     * @param indices Grid index of each sample
+     * @param columns Cache prepared for the grid, in fast-math mode
+     */
+    public void evaluateFast(double[] xs, double[] out, int[] indices, SampleColumnCache columns) {
+        if (sharedCalls.isEmpty()) {
+            evaluateFast(xs, out);
+            return;
+        }
+        // The fast path walks the tree anyway, so only exact expressions have generated code to keep
+        if (!columns.request(sharedCalls) && !transcendental && generated != null) {
+            evaluate(xs, out);
+            return;
+        }
+        evaluateShared(xs, out, indices, columns, transcendental);
+    }
+    
+    /**
+     * Walk the tree over a grid column, reading and filling the shared
+     * columns of the user functions called on {@code x}
+     */
+    private void evaluateShared(double[] xs, double[] out, int[] indices, SampleColumnCache columns,
+                                boolean fastMath) {
+        if (out.length < xs.length) {
+            throw new IllegalArgumentException("Output column shorter than input column");
+        }
+        countSamples(xs.length);
+        if (isSplit(xs.length)) {
+            evaluateSplit(xs, out, null, indices, columns, fastMath);
+            return;
+        }
+        if (xs == out) {
+            xs = xs.clone();
+        }
+        root.evaluate(xs, out, xs.length, new ColumnFrame(fastMath, columns, xs, indices));
+    }
+    
+    /**
+     * Check if a column is large enough to be split across threads. Columns
+     * with sums or products never are: a reduction splits its own range of
+     * terms, and keeps the partial results of whole columns.
+     */
+    private boolean isSplit(int samples) {
+        return !reductions && SampleRanges.isParallel(samples, cost);
+    }
+    
+    /**
+     * Evaluate a column as ranges evaluated in parallel, each as a column of
+     * its own with its own frame: frames are not thread-safe. The generated
+     * code, if any, is picked once for the whole column.
+     * @param xs The values to bind to {@code x}
+     * @param out Array receiving the results (may be {@code xs} itself)
+     * @param code Generated code to run, or null to walk the tree
+     * @param indices Grid index of each sample, or null without a sample column cache
+     * @param columns Cache prepared for the grid, or null
+     * @param fastMath true to evaluate transcendental functions with {@link lib.core.evaluation.node.FastMath}
+     */
+    private void evaluateSplit(double[] xs, double[] out, GeneratedCode code, int[] indices,
+                               SampleColumnCache columns, boolean fastMath) {
+        SampleRanges.forEach(xs.length, cost, (from, to) -> {
+            int length = to - from;
+            double[] rangeXs = Arrays.copyOfRange(xs, from, to);
+            double[] rangeOut = new double[length];
+            if (code != null) {
+                code.applyToColumn(rangeXs, rangeOut, length);
+            } else if (columns != null) {
+                int[] rangeIndices = Arrays.copyOfRange(indices, from, to);
+                root.evaluate(rangeXs, rangeOut, length, new ColumnFrame(fastMath, columns, rangeXs, rangeIndices));
+            } else {
+                root.evaluate(rangeXs, rangeOut, length, new ColumnFrame(fastMath));
+            }
+            System.arraycopy(rangeOut, 0, out, from, length);
+        });
+    }
+    
+    /**
+     * Collect the names of the user functions a tree calls on {@code x}
+     * itself, outside of other calls: the calls {@link SampleColumnCache} can share
+     */
+    private static void collectSharedCalls(ExpressionNode node, Set<String> names,
+                                           Map<ExpressionNode, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) return;
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            if (call.getArgument() instanceof VariableNode) {
+                names.add(call.getFunctionName());
+            } else {
+                collectSharedCalls(call.getArgument(), names, visited);
+            }
+        } else if (node instanceof BinaryNode) {
+            collectSharedCalls(((BinaryNode) node).getLeft(), names, visited);
+            collectSharedCalls(((BinaryNode) node).getRight(), names, visited);
+        } else if (node instanceof FunctionNode) {
+            collectSharedCalls(((FunctionNode) node).getArgument(), names, visited);
+        } else if (node instanceof NegateNode) {
+            collectSharedCalls(((NegateNode) node).getOperand(), names, visited);
+        } else if (node instanceof SharedNode) {
+            collectSharedCalls(((SharedNode) node).getValue(), names, visited);
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            collectSharedCalls(conditional.getLeft(), names, visited);
+            collectSharedCalls(conditional.getRight(), names, visited);
+            collectSharedCalls(conditional.getWhenTrue(), names, visited);
+            collectSharedCalls(conditional.getWhenFalse(), names, visited);
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            collectSharedCalls(reduction.getFrom(), names, visited);
+            collectSharedCalls(reduction.getTo(), names, visited);
+            collectSharedCalls(reduction.getBody(), names, visited);
+        }
+    }
+    
+    /**
+     * Count the distinct nodes of a tree, including the bodies of the user functions it calls
+     */
+    private static int countNodes(ExpressionNode node, Map<ExpressionNode, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) return 0;
+        int count = 1;
+        if (node instanceof BinaryNode) {
+            count += countNodes(((BinaryNode) node).getLeft(), visited);
+            count += countNodes(((BinaryNode) node).getRight(), visited);
+        } else if (node instanceof FunctionNode) {
+            count += countNodes(((FunctionNode) node).getArgument(), visited);
+        } else if (node instanceof NegateNode) {
+            count += countNodes(((NegateNode) node).getOperand(), visited);
+        } else if (node instanceof SharedNode) {
+            count += countNodes(((SharedNode) node).getValue(), visited);
+        } else if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            count += countNodes(call.getBody(), visited) + countNodes(call.getArgument(), visited);
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            count += countNodes(conditional.getLeft(), visited) + countNodes(conditional.getRight(), visited)
+                + countNodes(conditional.getWhenTrue(), visited) + countNodes(conditional.getWhenFalse(), visited);
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            count += countNodes(reduction.getFrom(), visited) + countNodes(reduction.getTo(), visited)
+                + countNodes(reduction.getBody(), visited);
+        }
+        return count;
+    }
+    
+    /**
+     * Check if a tree holds a sum or product, including in the bodies of the user functions it calls
+     */
+    private static boolean containsReduction(ExpressionNode node, Map<ExpressionNode, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) return false;
+        if (node instanceof ReductionNode) return true;
+        if (node instanceof BinaryNode) {
+            return containsReduction(((BinaryNode) node).getLeft(), visited)
+                || containsReduction(((BinaryNode) node).getRight(), visited);
+        }
+        if (node instanceof FunctionNode) return containsReduction(((FunctionNode) node).getArgument(), visited);
+        if (node instanceof NegateNode) return containsReduction(((NegateNode) node).getOperand(), visited);
+        if (node instanceof SharedNode) return containsReduction(((SharedNode) node).getValue(), visited);
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            return containsReduction(call.getBody(), visited) || containsReduction(call.getArgument(), visited);
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            return containsReduction(conditional.getLeft(), visited)
+                || containsReduction(conditional.getRight(), visited)
+                || containsReduction(conditional.getWhenTrue(), visited)
+                || containsReduction(conditional.getWhenFalse(), visited);
+        }
+        return false;
+    }
+    
+    /**
+     * Check if a tree calls a function {@link lib.core.evaluation.node.FastMath}
+     * approximates: a trigonometric function, a logarithm, an exponential or a power
+     */
+    private static boolean usesTranscendentals(ExpressionNode node, Map<ExpressionNode, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) return false;
+        if (node instanceof FunctionNode) {
+            MathFunction function = ((FunctionNode) node).getFunction();
+            return function.isTranscendental()
+                || usesTranscendentals(((FunctionNode) node).getArgument(), visited);
+        }
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            return binary.getOperator() == BinaryOperator.POWER
+                || usesTranscendentals(binary.getLeft(), visited)
+                || usesTranscendentals(binary.getRight(), visited);
+        }
+        if (node instanceof NegateNode) return usesTranscendentals(((NegateNode) node).getOperand(), visited);
+        if (node instanceof SharedNode) return usesTranscendentals(((SharedNode) node).getValue(), visited);
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            return usesTranscendentals(call.getBody(), visited) || usesTranscendentals(call.getArgument(), visited);
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            return usesTranscendentals(conditional.getLeft(), visited)
+                || usesTranscendentals(conditional.getRight(), visited)
+                || usesTranscendentals(conditional.getWhenTrue(), visited)
+                || usesTranscendentals(conditional.getWhenFalse(), visited);
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            return usesTranscendentals(reduction.getFrom(), visited)
+                || usesTranscendentals(reduction.getTo(), visited)
+                || usesTranscendentals(reduction.getBody(), visited);
+        }
+        return false;
+    }
+    
+    /**
+     * Add evaluated samples to the hotness count, requesting promotion to
+     * bytecode the first time it crosses the threshold
+     */
+    private void countSamples(int samples) {
+        int count = hotness + samples;
+        hotness = count;
+        if (count >= MathConstants.TIER_UP_THRESHOLD && promotionRequested.compareAndSet(false, true)) {
+            COMPILER.execute(this::promote);
+        }
+    }
+    
+    /**
+     * Compile the tree to bytecode and switch to it. Trees that cannot be
+     * compiled stay on the interpreter.
+     */
+    private void promote() {
+        GeneratedCode code = BytecodeCompiler.compile(root);
+        if (code == null) return;
+        function = code;
+        generated = code;
+    }
+    
+    /**
+     * Check whether evaluation has been promoted to generated bytecode
+     * @return true if generated code is running, false while walking the tree
+     */
+    public boolean isGenerated() {
+        return generated != null;
+    }
+    
+    /**
+     * Get the source expression
+     */
+    public String getExpression() {
+        return expression;
+    }
+    
+    /**
+     * Get the number of distinct nodes of the tree, user function bodies
+     * included: an estimate of the cost of evaluating one sample
+     */
+    public int getCost() {
+        return cost;
+    }
+    
+    /**
+     * Get what the expression reads: parameters, user functions and {@code x}
+     * @return The dependencies ({@link Dependencies})
+     */
+    public Dependencies getDependencies() {
+        return dependencies;
+    }
+    
+    /**
+     * Get the root of the evaluation tree
+     */
+    public ExpressionNode getRoot() {
+        return root;
+    }
+}
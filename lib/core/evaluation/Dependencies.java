@@ -0,0 +1,156 @@
+package lib.core.evaluation;
+
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ParameterNode;
+import lib.core.evaluation.node.ReductionNode;
+import lib.core.evaluation.node.SharedNode;
+import lib.core.evaluation.node.TermNode;
+import lib.core.evaluation.node.VariableNode;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a compiled expression reads: the parameters and user functions it
+ * references, directly or through the bodies of the functions it calls, and
+ * whether it depends on {@code x} at all.
+ * Lets callers recompute only the curves affected by a change, and sample
+ * constant expressions once instead of across the whole view.
+ */
+public final class Dependencies {
+    
+    private final Set<String> parameters;
+    private final Set<String> userFunctions;
+    private final boolean dependsOnX;
+    
+    private Dependencies(Set<String> parameters, Set<String> userFunctions, boolean dependsOnX) {
+        this.parameters = Collections.unmodifiableSet(parameters);
+        this.userFunctions = Collections.unmodifiableSet(userFunctions);
+        this.dependsOnX = dependsOnX;
+    }
+    
+    /**
+     * Collect the dependencies of an expression tree. The tree should be the
+     * parsed one: the optimizer inlines user function calls, which would hide
+     * their names.
+     * @param root Root of the expression tree
+     * @return The dependencies ({@link Dependencies})
+     */
+    public static Dependencies of(ExpressionNode root) {
+        Set<String> parameters = new TreeSet<>();
+        Set<String> userFunctions = new TreeSet<>();
+        Map<ExpressionNode, Boolean> visited = new IdentityHashMap<>();
+        boolean dependsOnX = collect(root, parameters, userFunctions, visited);
+        return new Dependencies(parameters, userFunctions, dependsOnX);
+    }
+    
+    /**
+     * Add the parameters and user functions a node reads to the given sets.
+     * Shared subtrees and function bodies are walked once.
+     * @return true if the node depends on its variable
+     */
+    private static boolean collect(ExpressionNode node, Set<String> parameters, Set<String> userFunctions,
+                                   Map<ExpressionNode, Boolean> visited) {
+        Boolean known = visited.get(node);
+        if (known != null) return known;
+        
+        boolean result;
+        if (node instanceof VariableNode) {
+            result = true;
+        } else if (node instanceof ParameterNode) {
+            parameters.add(((ParameterNode) node).getName());
+            result = false;
+        } else if (node instanceof NegateNode) {
+            result = collect(((NegateNode) node).getOperand(), parameters, userFunctions, visited);
+        } else if (node instanceof FunctionNode) {
+            result = collect(((FunctionNode) node).getArgument(), parameters, userFunctions, visited);
+        } else if (node instanceof SharedNode) {
+            result = collect(((SharedNode) node).getValue(), parameters, userFunctions, visited);
+        } else if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            // Derivative calls such as f'' read the definition of f
+            userFunctions.add(call.getFunctionName().replace("'", ""));
+            boolean bodyReadsArgument = collect(call.getBody(), parameters, userFunctions, visited);
+            boolean argument = collect(call.getArgument(), parameters, userFunctions, visited);
+            // The body's variable is bound to the argument, not to x
+            result = bodyReadsArgument && argument;
+        } else if (node instanceof BinaryNode) {
+            boolean left = collect(((BinaryNode) node).getLeft(), parameters, userFunctions, visited);
+            boolean right = collect(((BinaryNode) node).getRight(), parameters, userFunctions, visited);
+            result = left || right;
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            boolean left = collect(conditional.getLeft(), parameters, userFunctions, visited);
+            boolean right = collect(conditional.getRight(), parameters, userFunctions, visited);
+            boolean whenTrue = collect(conditional.getWhenTrue(), parameters, userFunctions, visited);
+            boolean whenFalse = collect(conditional.getWhenFalse(), parameters, userFunctions, visited);
+            result = left || right || whenTrue || whenFalse;
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            boolean from = collect(reduction.getFrom(), parameters, userFunctions, visited);
+            boolean to = collect(reduction.getTo(), parameters, userFunctions, visited);
+            boolean body = collect(reduction.getBody(), parameters, userFunctions, visited);
+            result = from || to || body;
+        } else if (node instanceof TermNode) {
+            // Earlier terms of a sequence read the parameters of its own definition only
+            result = collect(((TermNode) node).getArgument(), parameters, userFunctions, visited);
+        } else {
+            result = false;
+        }
+        visited.put(node, result);
+        return result;
+    }
+    
+    /**
+     * Check if the expression reads a parameter
+     * @param name Parameter name (lowercase)
+     * @return true if a change of the parameter's value changes the expression
+     */
+    public boolean readsParameter(String name) {
+        return parameters.contains(name);
+    }
+    
+    /**
+     * Check if the expression calls a user function, directly or indirectly
+     * @param name Function name (lowercase)
+     * @return true if a change of the function's definition changes the expression
+     */
+    public boolean callsFunction(String name) {
+        return userFunctions.contains(name);
+    }
+    
+    /**
+     * Check if the expression depends on {@code x}. Expressions that do not
+     * have the same value everywhere, so one evaluation covers the whole view.
+     * @return true if the value may change with {@code x}
+     */
+    public boolean dependsOnX() {
+        return dependsOnX;
+    }
+    
+    /**
+     * Get the names of the parameters the expression reads
+     */
+    public Set<String> getParameters() {
+        return parameters;
+    }
+    
+    /**
+     * Get the names of the user functions the expression calls
+     */
+    public Set<String> getUserFunctions() {
+        return userFunctions;
+    }
+    
+    @Override
+    public String toString() {
+        return "Dependencies[parameters=" + parameters + ", functions=" + userFunctions + ", x=" + dependsOnX + "]";
+    }
+}
@@ -0,0 +1,141 @@
+package lib.core.evaluation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of everything expressions are evaluated against:
+ * parameter values, user function definitions and sets, stamped with a
+ * version. The {@link ExpressionEvaluator} publishes a new snapshot on every
+ * change instead of mutating the current one, so a snapshot can be handed
+ * to worker threads while the UI keeps editing.
+ * Value changes share the slot layout and definitions of the previous
+ * snapshot, so taking one per slider move is cheap.
+ */
+public final class EvaluationContext {
+    
+    private final long version;
+    private final Map<String, Integer> slots;
+    private final double[] values;
+    private final Set<String> fixed;
+    private final Map<String, String> userFunctions;
+    private final Map<String, List<Double>> sets;
+    
+    /**
+     * Create a snapshot. The arguments are kept, not copied: callers pass
+     * collections nobody writes to anymore.
+     * @param version Snapshot version
+     * @param slots Map of parameter name to slot index
+     * @param values Parameter values indexed by slot
+     * @param fixed Names of the fixed parameters
+     * @param userFunctions Map of user function name to body
+     * @param sets Map of set name to values
+     */
+    EvaluationContext(long version, Map<String, Integer> slots, double[] values, Set<String> fixed,
+                      Map<String, String> userFunctions, Map<String, List<Double>> sets) {
+        this.version = version;
+        this.slots = Collections.unmodifiableMap(slots);
+        this.values = values;
+        this.fixed = Collections.unmodifiableSet(fixed);
+        this.userFunctions = Collections.unmodifiableMap(userFunctions);
+        this.sets = Collections.unmodifiableMap(sets);
+    }
+    
+    /**
+     * Create a snapshot with the same definitions and sets but other
+     * parameter values
+     * @param version Snapshot version
+     * @param values Parameter values indexed by slot
+     * @return The new snapshot ({@link EvaluationContext})
+     */
+    EvaluationContext withValues(long version, double[] values) {
+        return new EvaluationContext(version, slots, values, fixed, userFunctions, sets);
+    }
+    
+    /**
+     * Create a snapshot with the same parameters and definitions but other sets
+     * @param version Snapshot version
+     * @param sets Map of set name to values
+     * @return The new snapshot ({@link EvaluationContext})
+     */
+    EvaluationContext withSets(long version, Map<String, List<Double>> sets) {
+        return new EvaluationContext(version, slots, values, fixed, userFunctions, sets);
+    }
+    
+    /**
+     * Get the snapshot version. It increases with every published change,
+     * parameter values included, so equal versions mean equal contents.
+     * @return The version
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Check if a parameter is defined
+     * @param name Parameter name (lowercase)
+     * @return true if the parameter is defined
+     */
+    public boolean hasParameter(String name) {
+        return slots.containsKey(name);
+    }
+    
+    /**
+     * Get the value of a parameter
+     * @param name Parameter name (lowercase)
+     * @return The parameter value, NaN if the parameter is not defined
+     */
+    public double getParameter(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? values[slot] : Double.NaN;
+    }
+    
+    /**
+     * Check if a parameter is fixed (has no slider)
+     * @param name Parameter name (lowercase)
+     * @return true if the parameter is fixed
+     */
+    public boolean isFixed(String name) {
+        return fixed.contains(name);
+    }
+    
+    /**
+     * Copy the parameter values into a name-to-value map
+     * @return Map of parameter name to value
+     */
+    public Map<String, Double> getParameters() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+            map.put(entry.getKey(), values[entry.getValue()]);
+        }
+        return map;
+    }
+    
+    /**
+     * Get the user function definitions
+     * @return Unmodifiable map of function name to body
+     */
+    public Map<String, String> getUserFunctions() {
+        return userFunctions;
+    }
+    
+    /**
+     * Get the values of a set
+     * @param name Set name
+     * @return Unmodifiable list of values, or null if the set is not defined
+     */
+    public List<Double> getSet(String name) {
+        return sets.get(name);
+    }
+    
+    /**
+     * Get every set
+     * @return Unmodifiable map of set name to values
+     */
+    public Map<String, List<Double>> getSets() {
+        return sets;
+    }
+}
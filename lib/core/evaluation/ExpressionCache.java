@@ -0,0 +1,136 @@
+package lib.core.evaluation;
+
+import lib.constants.MathConstants;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of compiled expressions with least-recently-used eviction.
+ * Entries are keyed by the evaluator that compiled them, its definitions
+ * version and the normalized expression text, so rebuilding a scene whose
+ * definitions did not change reuses every compiled expression.
+ */
+public class ExpressionCache {
+    
+    private static final ExpressionCache SHARED = new ExpressionCache(MathConstants.COMPILED_EXPRESSION_CACHE_SIZE);
+    
+    private final int capacity;
+    private final Map<Key, CompiledExpression> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Create a cache holding at most the given number of expressions
+     * @param capacity Maximum number of entries
+     */
+    public ExpressionCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, CompiledExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledExpression> eldest) {
+                if (size() > ExpressionCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Get the cache shared by every evaluator
+     */
+    public static ExpressionCache getShared() {
+        return SHARED;
+    }
+    
+    /**
+     * Look up a compiled expression
+     * @param evaluator The evaluator the expression was compiled by
+     * @param version The evaluator's definitions version
+     * @param expression The normalized expression text
+     * @return The cached compiled expression, or null on a miss
+     */
+    public synchronized CompiledExpression get(ExpressionEvaluator evaluator, long version, String expression) {
+        CompiledExpression compiled = entries.get(new Key(evaluator, version, expression));
+        if (compiled != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return compiled;
+    }
+    
+    /**
+     * Store a compiled expression
+     * @param evaluator The evaluator the expression was compiled by
+     * @param version The evaluator's definitions version
+     * @param compiled The compiled expression
+     */
+    public synchronized void put(ExpressionEvaluator evaluator, long version, CompiledExpression compiled) {
+        entries.put(new Key(evaluator, version, compiled.getExpression()), compiled);
+    }
+    
+    /**
+     * Remove every entry (the counters are kept)
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "ExpressionCache[size=" + entries.size() + "/" + capacity
+            + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+    
+    /**
+     * Cache key: evaluator identity, definitions version and expression text
+     */
+    private static final class Key {
+        private final ExpressionEvaluator evaluator;
+        private final long version;
+        private final String expression;
+        
+        Key(ExpressionEvaluator evaluator, long version, String expression) {
+            this.evaluator = evaluator;
+            this.version = version;
+            this.expression = expression;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return evaluator == other.evaluator && version == other.version
+                && expression.equals(other.expression);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(evaluator), version, expression);
+        }
+    }
+}
@@ -1,59 +1,296 @@
 package lib.core.evaluation;
 
-import lib.core.parser.ExpressionParser;
+import lib.constants.MathConstants;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.RecursiveSequence;
+import lib.core.evaluation.node.SampleColumnCache;
+import lib.core.evaluation.optimizer.ExpressionOptimizer;
+import lib.core.parser.ExpressionSyntaxException;
+import lib.core.parser.ExpressionTreeParser;
+import lib.core.parser.FunctionParser;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class ExpressionEvaluator {
-
-    private Map<String, String> userFunctions;
-    private Map<String, Double> parameters;
-
+    
+    private final ParameterTable parameters;
+    private UserFunctionTable userFunctions;
+    private volatile long version;
+    private volatile EvaluationContext context;
+    private long contextVersion;
+    private final SampleColumnCache sampleColumns = new SampleColumnCache();
+    
     public ExpressionEvaluator() { this(null, null); }
-
+    
     public ExpressionEvaluator(Map<String, String> userFunctions) { 
         this(userFunctions, null); 
     }
     
     public ExpressionEvaluator(Map<String, String> userFunctions, Map<String, Double> parameters) {
-        this.userFunctions = userFunctions;
-        this.parameters = parameters;
+        this.parameters = new ParameterTable(parameters);
+        this.userFunctions = new UserFunctionTable(userFunctions, this.parameters);
+        publish(Collections.emptyMap());
+    }
+    
+    /**
+     * Get the current evaluation context. The snapshot never changes, so
+     * worker threads can read it while the UI publishes newer ones; comparing
+     * its version with a later snapshot's tells whether anything changed.
+     * @return The current snapshot ({@link EvaluationContext})
+     */
+    public EvaluationContext getContext() {
+        return context;
+    }
+    
+    /**
+     * Get the cache through which the curves of a frame share the columns of
+     * the user functions they call. Callers prepare it with the current
+     * context version and their sample grid before evaluating.
+     * @return The sample column cache ({@link SampleColumnCache})
+     */
+    public SampleColumnCache getSampleColumnCache() {
+        return sampleColumns;
+    }
+    
+    /**
+     * Publish a new snapshot of the parameters and definitions
+     * @param sets Sets of the new snapshot
+     */
+    private void publish(Map<String, List<Double>> sets) {
+        context = new EvaluationContext(++contextVersion, parameters.copySlots(), parameters.publishedValues(),
+            parameters.copyFixed(), new HashMap<>(userFunctions.getDefinitions()), sets);
+    }
+    
+    /**
+     * Replace the user-defined functions this evaluator resolves calls against
+     * @param userFunctions Map of function name to function body
+     */
+    public synchronized void setUserFunctions(Map<String, String> userFunctions) {
+        Map<String, String> definitions = userFunctions != null ? userFunctions : Collections.emptyMap();
+        if (this.userFunctions.getDefinitions().equals(definitions)) {
+            // Unchanged definitions keep the linked bodies and every compiled expression valid
+            return;
+        }
+        this.userFunctions = new UserFunctionTable(userFunctions, parameters);
+        version++;
+        publish(context.getSets());
+    }
+    
+    /**
+     * Replace the sets (e.g. {@code a={1,2,3}}) published in the evaluation
+     * context. Sets whose values did not change keep their list, so readers
+     * can detect changes by identity.
+     * @param sets Map of set name to values
+     */
+    public synchronized void setSets(Map<String, List<Double>> sets) {
+        Map<String, List<Double>> current = context.getSets();
+        Map<String, List<Double>> next = new HashMap<>();
+        if (sets != null) {
+            for (Map.Entry<String, List<Double>> entry : sets.entrySet()) {
+                List<Double> previous = current.get(entry.getKey());
+                next.put(entry.getKey(), entry.getValue().equals(previous) ? previous : List.copyOf(entry.getValue()));
+            }
+        }
+        // Equal maps reuse every previous list, so nothing changed
+        if (next.equals(current)) return;
+        context = context.withSets(++contextVersion, next);
+    }
+    
+    /**
+     * Link all user-defined functions and report the invalid ones,
+     * such as recursive definitions ({@code f(x)=f(x)+1})
+     * @return Map of function name to error message, empty if all are valid
+     */
+    public synchronized Map<String, String> getDefinitionErrors() {
+        return userFunctions.link();
+    }
+    
+    /**
+     * Replace the parameters this evaluator resolves. Only adding or removing
+     * parameters invalidates compiled expressions; new values are written to
+     * the existing slots.
+     * @param parameters Map of parameter name to value
+     */
+    public void setParameters(Map<String, Double> parameters) {
+        setParameters(parameters, Collections.emptySet());
+    }
+    
+    /**
+     * Replace the parameters this evaluator resolves, some of them fixed.
+     * Fixed values are folded into compiled expressions, so changing one
+     * invalidates them like adding or removing a parameter does.
+     * @param parameters Map of parameter name to value
+     * @param fixedNames Names of the parameters without a slider
+     */
+    public synchronized void setParameters(Map<String, Double> parameters, Set<String> fixedNames) {
+        if (this.parameters.update(parameters, fixedNames)) {
+            userFunctions.invalidate();
+            version++;
+        }
+        publish(context.getSets());
+    }
+    
+    /**
+     * Write a single parameter value. Compiled expressions read it directly,
+     * so nothing needs to be recompiled.
+     * @param name Parameter name (lowercase)
+     * @param value New value
+     * @return true if the parameter exists, false otherwise
+     */
+    public synchronized boolean setParameterValue(String name, double value) {
+        int slot = parameters.getSlot(name);
+        if (slot < 0) return false;
+        parameters.set(slot, value);
+        if (parameters.isFixed(slot)) {
+            // The old value may have been folded into compiled expressions
+            version++;
+        }
+        context = context.withValues(++contextVersion, parameters.publishedValues());
+        return true;
+    }
+    
+    /**
+     * Get the parameter table compiled expressions read their values from
+     */
+    public ParameterTable getParameterTable() {
+        return parameters;
     }
     
     /**
-     * Evaluate the mathematical expression for a given value of {@code x}
+     * Get the definitions version. It changes whenever user functions are
+     * replaced or parameters are added or removed, so expressions compiled
+     * with an older version are stale. Parameter value changes do not affect it.
+     * @return The current version
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Compile the expression into a tree that can be evaluated repeatedly
+     * without re-parsing. User function calls are linked to their shared
+     * compiled bodies; parameters are bound to their table slots and read at
+     * evaluation time.
+     * The tree is then optimized, after collecting its dependencies (inlining
+     * hides the user functions it calls). It starts out interpreted and is
+     * compiled to bytecode in the background once it has been evaluated often enough.
+     * Results are shared through the {@link ExpressionCache}, so compiling
+     * the same text again with unchanged definitions is a lookup.
      * @param expression The function expression as a string
-     * @param x The value to substitute for {@code x} in the expression
-     * @return The evaluated result ({@code double})
+     * @return The compiled expression ({@link CompiledExpression})
      * @throws Exception If the expression is invalid
      */
-    public double evaluate(String expression, double x) throws Exception {
-    expression = expression.toLowerCase().trim();
+    public synchronized CompiledExpression compile(String expression) throws Exception {
+        String normalized = expression.toLowerCase().trim();
+        ExpressionCache cache = ExpressionCache.getShared();
+        CompiledExpression cached = cache.get(this, version, normalized);
+        if (cached != null) return cached;
+        
+        ExpressionNode parsed = new ExpressionTreeParser(userFunctions, parameters).parse(normalized);
+        ExpressionNode root = ExpressionOptimizer.optimize(parsed);
+        CompiledExpression compiled = new CompiledExpression(normalized, root, Dependencies.of(parsed));
+        cache.put(this, version, compiled);
+        return compiled;
+    }
     
-    // Replace parameter names with their values
-    if (parameters != null) {
-        for (Map.Entry<String, Double> entry : parameters.entrySet()) {
-            String paramName = entry.getKey().toLowerCase();
-            String paramValue = String.valueOf(entry.getValue());
-            // Replace whole-word occurrences of parameter name
-            expression = expression.replaceAll("(?i)\\b" + paramName + "\\b", "(" + paramValue + ")");
+    /**
+     * Check an expression without evaluating it
+     * @param expression The function expression as a string
+     * @return The error message (with its position for syntax errors), or null if the expression is valid
+     */
+    public String validate(String expression) {
+        try {
+            compile(expression);
+            return null;
+        } catch (Exception e) {
+            return e.getMessage();
         }
     }
     
-    // Replace whole-word occurrences of x with a parenthesized numeric value so
-    // expressions like x^2 evaluate correctly when x is negative (e.g. (-2)^2).
-    String xVal = String.valueOf(x);
-    expression = expression.replaceAll("(?i)\\bx\\b", "(" + xVal + ")");
-        
-        // Handle basic math functions
-        expression = handleFunctions(expression);
+    /**
+     * Compile a recursive sequence definition (e.g.
+     * {@code a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1}) into a sequence that
+     * computes its terms iteratively into a memo table. Like compiled
+     * expressions, it is stale once the definitions version changes.
+     * @param definition The whole definition, recurrence first, then the base cases
+     * @return The compiled sequence ({@link RecursiveSequence})
+     * @throws Exception If the definition is invalid
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized RecursiveSequence compileSequence(String definition) throws Exception {
+        Object[] parts = FunctionParser.parseSequence(definition.toLowerCase().trim());
+        if (parts == null) {
+            throw new Exception("Invalid sequence definition, expected e.g. a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1");
+        }
+        String name = (String) parts[0];
+        String index = (String) parts[1];
+        Map<Integer, String> baseCases = (Map<Integer, String>) parts[3];
+        if (index.equals("pi") || index.equals("e")) {
+            throw new Exception("Invalid index variable: " + index);
+        }
+        if (!baseCases.isEmpty() && (double) Collections.max(baseCases.keySet())
+                - Collections.min(baseCases.keySet()) >= MathConstants.MAX_SEQUENCE_TERMS) {
+            throw new Exception("Base cases of " + name + " are too far apart");
+        }
         
-        // Evaluate the expression
-        return evaluateExpression(expression);
+        RecursiveSequence sequence = new RecursiveSequence(name, index);
+        ExpressionTreeParser parser = new ExpressionTreeParser(userFunctions, parameters);
+        String term = name + "(" + index + ")";
+        ExpressionNode recurrence = parseSequencePart(parser, sequence, term, (String) parts[2]);
+        Map<Integer, ExpressionNode> baseCaseNodes = new TreeMap<>();
+        for (Map.Entry<Integer, String> baseCase : baseCases.entrySet()) {
+            String baseTerm = name + "(" + baseCase.getKey() + ")";
+            baseCaseNodes.put(baseCase.getKey(), parseSequencePart(parser, sequence, baseTerm, baseCase.getValue()));
+        }
+        sequence.define(recurrence, baseCaseNodes, parameters);
+        return sequence;
     }
     
     /**
-     * Evaluate a constant expression (doesn't depend on x)
-     * This is useful for evaluating expressions like "f(4)" or "a+b" where
+     * Parse the recurrence or a base case of a sequence definition
+     * @param term The term it defines, to say where a syntax error is (e.g. {@code a(n)})
+     */
+    private static ExpressionNode parseSequencePart(ExpressionTreeParser parser, RecursiveSequence sequence,
+                                                    String term, String source) throws Exception {
+        try {
+            return parser.parseSequence(source, sequence);
+        } catch (ExpressionSyntaxException e) {
+            // Positions refer to the part, so say which part
+            throw new Exception("In " + term + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Check a recursive sequence definition without computing any term
+     * @param definition The whole definition
+     * @return The error message, or null if the definition is valid
+     */
+    public String validateSequence(String definition) {
+        try {
+            compileSequence(definition);
+            return null;
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+    
+    /**
+     * Evaluate the mathematical expression for a given value of {@code x}.
+     * Goes through {@link #compile}, so it follows the same parsing rules as
+     * plotted curves and reuses the cached compiled form.
+     * @param expression The function expression as a string
+     * @param x The value to bind to {@code x}
+     * @return The evaluated result ({@code double}), NaN or infinite outside the domain
+     * @throws Exception If the expression is invalid
+     */
+    public synchronized double evaluate(String expression, double x) throws Exception {
+        return compile(expression).evaluate(x);
+    }
+    
     /**
      * Evaluate an expression that doesn't depend on x (constant evaluation).
      * This is used for point coordinates like P=(3,f(3)) where we need to evaluate
@@ -63,62 +300,17 @@ public class ExpressionEvaluator {
      * - Function calls: "f(4)" → evaluate f at x=4
      * - Expressions: "a+f(4)" → evaluate with parameters and function calls
      * 
-     * Key difference from evaluate(expression, x):
-     * This method replaces parameters and evaluates function calls independently.
-     * For example, in P=(a,f(a)), if a=3:
-     * - a gets replaced with 3
-     * - f(a) becomes f(3) and gets evaluated at x=3
-     * 
-     * In contrast, evaluate(expression, x) substitutes a single x value everywhere.
+     * In contrast, evaluate(expression, x) binds a single x value everywhere.
      * For example, f(x)+g(x) at x=5 evaluates both f and g at 5.
-     * 
-     * Example scenarios:
-     * - P=(1,2): literal coordinates
-     * - P=(a,0): a is a parameter, a and b are parameters, but x is not involved.
      * @param expression The expression to evaluate
      * @return The evaluated result
-     * @throws Exception If the expression is invalid
+     * @throws Exception If the expression is invalid or depends on x
      */
-    public double evaluateConstant(String expression) throws Exception {
-        expression = expression.toLowerCase().trim();
-        
-        // Replace parameter names with their values
-        if (parameters != null) {
-            for (Map.Entry<String, Double> entry : parameters.entrySet()) {
-                String paramName = entry.getKey().toLowerCase();
-                String paramValue = String.valueOf(entry.getValue());
-                // Replace whole-word occurrences of parameter name
-                expression = expression.replaceAll("(?i)\\b" + paramName + "\\b", "(" + paramValue + ")");
-            }
+    public synchronized double evaluateConstant(String expression) throws Exception {
+        CompiledExpression compiled = compile(expression);
+        if (compiled.getDependencies().dependsOnX()) {
+            throw new Exception("Unknown variable: x");
         }
-        
-        // Don't replace x - let the parser handle it naturally
-        // Don't call handleFunctions() - it's empty and ExpressionParser already handles user functions
-        // This allows expressions like f(4) to work correctly
-        
-        // Evaluate the expression - parser will handle user functions
-        return evaluateExpression(expression);
-    }
-
-    /**
-     * Handle basic math functions in the expression
-     * @param expr The expression string
-     * @return The modified expression string ({@link String})
-     */
-    private String handleFunctions(String expr) {
-        // This is a placeholder for function handling
-        // You'll expand this to handle sin, cos, tan, log, etc.
-        return expr;
-    }
-    
-    /**
-     * Evaluate the mathematical expression
-     * @param expr The expression string
-     * @return The evaluated result ({@code double})
-     * @throws Exception If the expression is invalid
-     */
-    private double evaluateExpression(String expr) throws Exception {
-        // Pass both userFunctions and parameters to the parser
-        return new ExpressionParser(userFunctions, parameters).parse(expr);
+        return compiled.evaluate(0.0);
     }
 }
\ No newline at end of file
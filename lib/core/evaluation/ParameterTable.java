@@ -0,0 +1,231 @@
+package lib.core.evaluation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexed storage for parameter values (the {@code ConstantFunction} names).
+ * Every parameter gets a fixed {@code double} slot; compiled expressions read
+ * the slot directly, so changing a value is a single array write instead of
+ * re-substituting text or recompiling.
+ * Parameters without a slider can be marked fixed, which lets the optimizer
+ * fold their value into compiled expressions.
+ * 
+ * Values are copy-on-write: every write publishes a new array and never
+ * touches one a reader may hold, so expressions can be evaluated on other
+ * threads while the UI keeps writing. The slot layout is only changed by
+ * the owning {@link ExpressionEvaluator}, under its lock.
+ */
+public class ParameterTable {
+    
+    private static final int INITIAL_CAPACITY = 8;
+    
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Set<String> fixed = new HashSet<>();
+    private volatile double[] values = new double[INITIAL_CAPACITY];
+    private boolean[] fixedSlots = new boolean[INITIAL_CAPACITY];
+    private int nextSlot = 0;
+    private volatile long version = 0;
+    
+    /**
+     * Create an empty parameter table
+     */
+    public ParameterTable() {
+    }
+    
+    /**
+     * Create a parameter table holding the given values
+     * @param parameters Map of parameter name to value (may be null)
+     */
+    public ParameterTable(Map<String, Double> parameters) {
+        update(parameters);
+    }
+    
+    /**
+     * Get the slot assigned to a parameter
+     * @param name Parameter name (lowercase)
+     * @return The slot index, or -1 if the parameter is not defined
+     */
+    public synchronized int getSlot(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+    
+    /**
+     * Check if a parameter is defined
+     * @param name Parameter name (lowercase)
+     * @return true if the parameter has a slot
+     */
+    public synchronized boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+    
+    /**
+     * Check if a parameter holds a fixed value that compiled expressions may fold
+     * @param slot Slot index
+     * @return true if the parameter is fixed
+     */
+    public synchronized boolean isFixed(int slot) {
+        return fixedSlots[slot];
+    }
+    
+    /**
+     * Read the value stored in a slot. Lock-free: it reads the last
+     * published value array.
+     * @param slot Slot index
+     * @return The parameter value
+     */
+    public double get(int slot) {
+        return values[slot];
+    }
+    
+    /**
+     * Write the value stored in a slot and bump the version.
+     * Publishes a new value array; readers holding the old one are unaffected.
+     * @param slot Slot index
+     * @param value New parameter value
+     */
+    public synchronized void set(int slot, double value) {
+        double[] next = values.clone();
+        next[slot] = value;
+        values = next;
+        version++;
+    }
+    
+    /**
+     * Write the value of a parameter by name
+     * @param name Parameter name (lowercase)
+     * @param value New parameter value
+     * @return true if the parameter exists, false otherwise
+     */
+    public boolean set(String name, double value) {
+        int slot = getSlot(name);
+        if (slot < 0) return false;
+        set(slot, value);
+        return true;
+    }
+    
+    /**
+     * Replace the table contents with the given parameters.
+     * Parameters that already exist keep their slot, so compiled expressions
+     * stay valid unless the set of names changes.
+     * @param parameters Map of parameter name to value (may be null)
+     * @return true if parameters were added or removed, false if only values changed
+     */
+    public boolean update(Map<String, Double> parameters) {
+        return update(parameters, Collections.emptySet());
+    }
+    
+    /**
+     * Replace the table contents with the given parameters, some of them fixed.
+     * Changing a fixed value counts as a layout change, since compiled
+     * expressions may have folded the old value.
+     * @param parameters Map of parameter name to value (may be null)
+     * @param fixedNames Names of the parameters whose value is fixed
+     * @return true if parameters were added or removed, or fixed values changed
+     */
+    public synchronized boolean update(Map<String, Double> parameters, Set<String> fixedNames) {
+        Map<String, Double> newValues = parameters != null ? parameters : new HashMap<>();
+        Set<String> newFixed = new HashSet<>(fixedNames);
+        newFixed.retainAll(newValues.keySet());
+        
+        boolean layoutChanged = !slots.keySet().equals(newValues.keySet()) || !fixed.equals(newFixed);
+        for (String name : newFixed) {
+            Integer slot = slots.get(name);
+            if (slot != null && Double.compare(values[slot], newValues.get(name)) != 0) {
+                layoutChanged = true;
+            }
+        }
+        
+        double[] next = values.clone();
+        if (layoutChanged) {
+            // Slots of removed parameters are retired rather than reused, so a stale
+            // compiled expression can never read another parameter's value
+            slots.keySet().retainAll(newValues.keySet());
+            for (String name : newValues.keySet()) {
+                if (!slots.containsKey(name)) {
+                    next = allocateSlot(next);
+                    slots.put(name, nextSlot++);
+                }
+            }
+            fixed.clear();
+            fixed.addAll(newFixed);
+            Arrays.fill(fixedSlots, false);
+            for (String name : fixed) {
+                fixedSlots[slots.get(name)] = true;
+            }
+        }
+        
+        for (Map.Entry<String, Double> entry : newValues.entrySet()) {
+            next[slots.get(entry.getKey())] = entry.getValue();
+        }
+        values = next;
+        version++;
+        return layoutChanged;
+    }
+    
+    /**
+     * Get the value version. It changes on every write, so cached results
+     * computed with an older version are stale.
+     * @return The current version
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Copy the current values into a name-to-value map
+     * @return Map of parameter name to value
+     */
+    public synchronized Map<String, Double> toMap() {
+        double[] current = values;
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+            map.put(entry.getKey(), current[entry.getValue()]);
+        }
+        return map;
+    }
+    
+    /**
+     * Get the published value array. It is never written again, so it can be
+     * kept as part of an immutable snapshot; it must not be modified.
+     * @return The values indexed by slot
+     */
+    double[] publishedValues() {
+        return values;
+    }
+    
+    /**
+     * Copy the slot layout
+     * @return Map of parameter name to slot index
+     */
+    synchronized Map<String, Integer> copySlots() {
+        return new HashMap<>(slots);
+    }
+    
+    /**
+     * Copy the names of the fixed parameters
+     */
+    synchronized Set<String> copyFixed() {
+        return new HashSet<>(fixed);
+    }
+    
+    /**
+     * Make room for one more slot in a value array being built,
+     * growing it and the fixed flags if needed
+     * @param next The value array being built
+     * @return The array to keep building ({@code double[]})
+     */
+    private double[] allocateSlot(double[] next) {
+        if (nextSlot == next.length) {
+            next = Arrays.copyOf(next, next.length * 2);
+            fixedSlots = Arrays.copyOf(fixedSlots, fixedSlots.length * 2);
+        }
+        return next;
+    }
+}
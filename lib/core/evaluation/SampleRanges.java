@@ -0,0 +1,91 @@
+package lib.core.evaluation;
+
+import lib.constants.MathConstants;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits loops over independent samples across the common fork-join pool.
+ * A range of samples is halved until its work (samples times the cost of a
+ * sample) drops below {@link MathConstants#PARALLEL_SAMPLING_MIN_WORK}. Every
+ * sample is handled by exactly one part, which writes its result to the
+ * sample's own slot, so the outcome is the same as the sequential loop
+ * whatever the number of threads. Loops too small to pay for the tasks, and
+ * machines with a single worker thread, run inline on the caller's thread.
+ */
+public final class SampleRanges {
+    
+    // Prevent instantiation
+    private SampleRanges() {
+        throw new AssertionError("Cannot instantiate utility class");
+    }
+    
+    /**
+     * Work on a range of samples
+     */
+    @FunctionalInterface
+    public interface RangeAction {
+        /**
+         * Handle the samples of a range, writing only their own results
+         * @param from First sample of the range
+         * @param to End of the range (exclusive)
+         */
+        void apply(int from, int to);
+    }
+    
+    /**
+     * Check if a loop is large enough to be split across threads
+     * @param samples Number of samples
+     * @param cost Estimated cost of a sample, in tree nodes evaluated
+     * @return true if {@link #forEach} would split it
+     */
+    public static boolean isParallel(int samples, int cost) {
+        return samples > 1 && ForkJoinPool.getCommonPoolParallelism() > 1
+            && (long) samples * Math.max(1, cost) >= 2L * MathConstants.PARALLEL_SAMPLING_MIN_WORK;
+    }
+    
+    /**
+     * Run an action over the samples {@code 0} to {@code samples - 1},
+     * split into ranges run in parallel when the loop is large enough.
+     * Returns once every range is done, with all their writes visible.
+     * @param samples Number of samples
+     * @param cost Estimated cost of a sample, in tree nodes evaluated
+     * @param action The work on a range of samples
+     */
+    public static void forEach(int samples, int cost, RangeAction action) {
+        if (!isParallel(samples, cost)) {
+            if (samples > 0) action.apply(0, samples);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new RangeTask(action, 0, samples, Math.max(1, cost)));
+    }
+    
+    /**
+     * A range of samples, split in halves until each part is small enough to run on one thread
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final RangeAction action;
+        private final int from;
+        private final int to;
+        private final int cost;
+        
+        RangeTask(RangeAction action, int from, int to, int cost) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (long) (to - from) * cost >= 2L * MathConstants.PARALLEL_SAMPLING_MIN_WORK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(action, from, middle, cost), new RangeTask(action, middle, to, cost));
+                return;
+            }
+            action.apply(from, to);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package lib.core.evaluation;
+
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.optimizer.Differentiator;
+import lib.core.parser.ExpressionSyntaxException;
+import lib.core.parser.ExpressionTreeParser;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The user-defined functions (e.g. {@code f(x)=x^2}) an evaluator resolves calls against.
+ * Each body is compiled once into a shared tree that every call site links to,
+ * so calling a user function costs a direct call instead of re-parsing its body.
+ * Recursive definitions are detected while linking and reported as errors.
+ */
+public class UserFunctionTable {
+    
+    private final Map<String, String> definitions;
+    private final ParameterTable parameters;
+    private final Map<String, ExpressionNode> linked = new HashMap<>();
+    private final Map<String, String> errors = new HashMap<>();
+    private final List<String> resolving = new ArrayList<>();
+    
+    /**
+     * Create a table for the given definitions
+     * @param definitions Map of function name (lowercase) to function body (may be null)
+     * @param parameters Parameters the bodies can reference
+     */
+    public UserFunctionTable(Map<String, String> definitions, ParameterTable parameters) {
+        // Copied so that later changes to the caller's map cannot desynchronize the linked bodies
+        this.definitions = definitions != null ? new HashMap<>(definitions) : new HashMap<>();
+        this.parameters = parameters;
+    }
+    
+    /**
+     * Check if a user function is defined
+     * @param name Function name (lowercase)
+     * @return true if the function has a definition
+     */
+    public boolean contains(String name) {
+        return definitions.containsKey(name);
+    }
+    
+    /**
+     * Get the source definitions
+     * @return Map of function name to function body
+     */
+    public Map<String, String> getDefinitions() {
+        return definitions;
+    }
+    
+    /**
+     * Get the compiled body of a user function, compiling it on first use.
+     * The returned tree is shared by every call site.
+     * @param name Function name (lowercase)
+     * @return The compiled body ({@link ExpressionNode})
+     * @throws Exception If the body is invalid or the definition is recursive
+     */
+    public ExpressionNode resolve(String name) throws Exception {
+        ExpressionNode body = linked.get(name);
+        if (body != null) return body;
+        
+        String error = errors.get(name);
+        if (error != null) throw new Exception(error);
+        
+        int cycleStart = resolving.indexOf(name);
+        if (cycleStart >= 0) {
+            List<String> cycle = new ArrayList<>(resolving.subList(cycleStart, resolving.size()));
+            cycle.add(name);
+            throw new Exception("Recursive definition: " + String.join(" -> ", cycle));
+        }
+        
+        resolving.add(name);
+        try {
+            String source = definitions.get(name).toLowerCase().trim();
+            body = new ExpressionTreeParser(this, parameters).parse(source);
+            linked.put(name, body);
+            return body;
+        } catch (ExpressionSyntaxException e) {
+            // Positions refer to the body, so say which body
+            String message = "In " + name + "(x): " + e.getMessage();
+            errors.put(name, message);
+            throw new Exception(message);
+        } catch (Exception e) {
+            errors.put(name, e.getMessage());
+            throw e;
+        } finally {
+            resolving.remove(resolving.size() - 1);
+        }
+    }
+    
+    /**
+     * Get the derivative of a user function (e.g. {@code f''} for order 2),
+     * built symbolically from its compiled body on first use and kept
+     * alongside it, so every {@code f'(...)} call site shares one tree
+     * @param name Function name (lowercase)
+     * @param order Order of the derivative, at least 1
+     * @return The derivative body ({@link ExpressionNode})
+     * @throws Exception If the function body is invalid
+     */
+    public ExpressionNode resolveDerivative(String name, int order) throws Exception {
+        // Primes cannot appear in names, so the keys never clash with definitions
+        String key = name + "'".repeat(order);
+        ExpressionNode derivative = linked.get(key);
+        if (derivative != null) return derivative;
+        
+        ExpressionNode body = order == 1 ? resolve(name) : resolveDerivative(name, order - 1);
+        derivative = Differentiator.differentiate(body);
+        linked.put(key, derivative);
+        return derivative;
+    }
+    
+    /**
+     * Link every definition now so that errors such as recursive definitions
+     * are found when functions are defined rather than when they are plotted
+     * @return Map of function name to error message, empty if all definitions are valid
+     */
+    public Map<String, String> link() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String name : new TreeMap<>(definitions).keySet()) {
+            try {
+                resolve(name);
+            } catch (Exception e) {
+                result.put(name, e.getMessage());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Drop every compiled body, e.g. after parameters were added or removed
+     * (parameters shadow other names, so bodies may now compile differently)
+     */
+    public void invalidate() {
+        linked.clear();
+        errors.clear();
+    }
+}
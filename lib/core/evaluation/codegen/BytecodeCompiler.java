@@ -0,0 +1,747 @@
+package lib.core.evaluation.codegen;
+
+import lib.constants.MathConstants;
+import lib.core.evaluation.ParameterTable;
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.BinaryOperator;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.ConstantNode;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.IndexNode;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ParameterNode;
+import lib.core.evaluation.node.ReductionNode;
+import lib.core.evaluation.node.SharedNode;
+import lib.core.evaluation.node.VariableNode;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles an expression tree into JVM bytecode, straight-line except for
+ * the branches of conditionals and the loops of sums and products, whose
+ * index is a local variable.
+ * The tree is turned into a hidden class implementing {@link GeneratedCode},
+ * so the JIT can inline the {@code Math} calls and keep the whole evaluation in
+ * registers instead of walking the tree node by node.
+ * 
+ * User function calls are inlined; parameters are read from their
+ * {@link ParameterTable} slot, so slider changes need no recompilation.
+ * Shared subexpressions are computed once and kept in a local variable.
+ * The column method wraps the same code in a counted loop, with parameters
+ * loaded once before it, which gives C2 a plain loop to unroll and vectorize.
+ */
+public class BytecodeCompiler {
+    
+    // HotSpot does not JIT-compile methods above 8000 bytes (HugeMethodLimit),
+    // where interpreting the bytecode would be slower than walking the tree
+    private static final int MAX_CODE_LENGTH = 8000;
+    private static final int MAX_LOCALS = 255;
+    
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    // Java 5 class files need no StackMapTable, which keeps the emitter small
+    private static final int CLASS_FILE_MAJOR_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    
+    private static final String CLASS_NAME = "lib/core/evaluation/codegen/GeneratedExpression";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String MATH = "java/lang/Math";
+    private static final String GENERATED_CODE = "lib/core/evaluation/codegen/GeneratedCode";
+    private static final String TABLE = "lib/core/evaluation/ParameterTable";
+    private static final String TABLE_DESCRIPTOR = "L" + TABLE + ";";
+    private static final String UNARY_DESCRIPTOR = "(D)D";
+    private static final String BINARY_DESCRIPTOR = "(DD)D";
+    private static final String COLUMN_DESCRIPTOR = "([D[DI)V";
+    
+    // Locals of applyAsDouble: this, then x as a double
+    private static final int SCALAR_X_LOCAL = 1;
+    private static final int SCALAR_FIRST_FREE_LOCAL = 3;
+    // Locals of applyToColumn: this, xs, out, length
+    private static final int COLUMN_LENGTH_LOCAL = 3;
+    private static final int COLUMN_FIRST_FREE_LOCAL = 4;
+    
+    // Opcodes
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int ILOAD = 0x15;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int DALOAD = 0x31;
+    private static final int AALOAD = 0x32;
+    private static final int ISTORE = 0x36;
+    private static final int DSTORE = 0x39;
+    private static final int DASTORE = 0x52;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int IINC = 0x84;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    
+    private final ConstantPool pool = new ConstantPool();
+    private final List<ParameterTable> tables = new ArrayList<>();
+    
+    private BytecodeCompiler() {
+    }
+    
+    /**
+     * Compile an expression tree into bytecode
+     * @param root Root of the expression tree
+     * @return The generated code, or {@code null} if the tree cannot be
+     *         compiled (unsupported node, or too large to be JIT-compiled)
+     */
+    public static GeneratedCode compile(ExpressionNode root) {
+        try {
+            return new BytecodeCompiler().generate(root);
+        } catch (UnsupportedOperationException e) {
+            return null;
+        } catch (Throwable e) {
+            // Class definition failures leave the tree interpreter in charge
+            return null;
+        }
+    }
+    
+    /**
+     * Generate, define and instantiate the hidden class for a tree
+     */
+    private GeneratedCode generate(ExpressionNode root) throws Throwable {
+        MethodWriter scalar = new MethodWriter(SCALAR_FIRST_FREE_LOCAL);
+        scalar.emit(root, SCALAR_X_LOCAL);
+        scalar.op(DRETURN);
+        
+        MethodWriter column = writeColumnMethod(root);
+        if (scalar.size() > MAX_CODE_LENGTH || column.size() > MAX_CODE_LENGTH) {
+            throw new UnsupportedOperationException("Expression too large for bytecode compilation");
+        }
+        
+        byte[] classFile = writeClassFile(scalar, column);
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+        MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+            MethodType.methodType(void.class, ParameterTable[].class));
+        return (GeneratedCode) constructor.invoke(tables.toArray(new ParameterTable[0]));
+    }
+    
+    /**
+     * Write {@code applyToColumn}: load the parameters, then
+     * {@code for (i = 0; i < length; i++) out[i] = f(xs[i]);}
+     */
+    private MethodWriter writeColumnMethod(ExpressionNode root) {
+        MethodWriter method = new MethodWriter(COLUMN_FIRST_FREE_LOCAL);
+        int index = method.allocateLocal(1);
+        int x = method.allocateLocal(2);
+        
+        // Parameters cannot change during one call, so read each slot once
+        Set<ParameterNode> parameters = new LinkedHashSet<>();
+        collectParameters(root, parameters);
+        method.loadParameters(parameters);
+        
+        method.op(ICONST_0);
+        method.push(1);
+        method.localOp(ISTORE, index);
+        method.pop(1);
+        
+        int loopStart = method.size();
+        method.localOp(ILOAD, index);
+        method.localOp(ILOAD, COLUMN_LENGTH_LOCAL);
+        method.push(2);
+        int exitBranch = method.size();
+        method.op(IF_ICMPGE);
+        method.u2(0); // patched below
+        method.pop(2);
+        
+        // Stack: out, i (consumed by dastore once the value is on top)
+        method.op(ALOAD_2);
+        method.localOp(ILOAD, index);
+        method.push(2);
+        
+        method.op(ALOAD_1);
+        method.localOp(ILOAD, index);
+        method.push(2);
+        method.op(DALOAD);
+        method.localOp(DSTORE, x);
+        method.pop(2);
+        
+        method.emit(root, x);
+        method.op(DASTORE);
+        method.pop(4);
+        
+        method.op(IINC);
+        method.u1(index);
+        method.u1(1);
+        int gotoPosition = method.size();
+        method.op(GOTO);
+        method.u2(loopStart - gotoPosition);
+        
+        method.patchBranch(exitBranch, method.size() - exitBranch);
+        method.op(RETURN);
+        return method;
+    }
+    
+    /**
+     * Collect the distinct parameters of a tree, including inside call bodies
+     */
+    private static void collectParameters(ExpressionNode node, Set<ParameterNode> parameters) {
+        if (node instanceof ParameterNode) {
+            parameters.add((ParameterNode) node);
+        } else if (node instanceof NegateNode) {
+            collectParameters(((NegateNode) node).getOperand(), parameters);
+        } else if (node instanceof FunctionNode) {
+            collectParameters(((FunctionNode) node).getArgument(), parameters);
+        } else if (node instanceof SharedNode) {
+            collectParameters(((SharedNode) node).getValue(), parameters);
+        } else if (node instanceof CallNode) {
+            collectParameters(((CallNode) node).getArgument(), parameters);
+            collectParameters(((CallNode) node).getBody(), parameters);
+        } else if (node instanceof BinaryNode) {
+            collectParameters(((BinaryNode) node).getLeft(), parameters);
+            collectParameters(((BinaryNode) node).getRight(), parameters);
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            collectParameters(conditional.getLeft(), parameters);
+            collectParameters(conditional.getRight(), parameters);
+            collectParameters(conditional.getWhenTrue(), parameters);
+            collectParameters(conditional.getWhenFalse(), parameters);
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            collectParameters(reduction.getFrom(), parameters);
+            collectParameters(reduction.getTo(), parameters);
+            collectParameters(reduction.getBody(), parameters);
+        }
+    }
+    
+    /**
+     * Get the name of the field holding a parameter table, adding one if needed
+     */
+    private String tableField(ParameterTable table) {
+        int index = tables.indexOf(table);
+        if (index < 0) {
+            index = tables.size();
+            tables.add(table);
+        }
+        return "table" + index;
+    }
+    
+    private static String mathMethodName(FunctionNode function) {
+        switch (function.getFunction()) {
+            case SQRT: return "sqrt";
+            case SIN: return "sin";
+            case COS: return "cos";
+            case TAN: return "tan";
+            case LOG: return "log10";
+            case LN: return "log";
+            case ABS: return "abs";
+            case EXP: return "exp";
+            case FLOOR: return "floor";
+            case CEIL: return "ceil";
+            case SIGN: return "signum";
+            default:
+                throw new UnsupportedOperationException("Unsupported function: " + function.getFunction());
+        }
+    }
+    
+    /**
+     * Emitter for the code of one method, tracking its stack depth and locals
+     */
+    private class MethodWriter {
+        
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final Map<List<Object>, Integer> sharedLocals = new HashMap<>();
+        private final Map<List<Object>, Integer> parameterLocals = new HashMap<>();
+        private final Map<IndexNode, Integer> indexLocals = new IdentityHashMap<>();
+        private int stackDepth = 0;
+        private int maxStack = 0;
+        private int nextLocal;
+        
+        MethodWriter(int firstFreeLocal) {
+            this.nextLocal = firstFreeLocal;
+        }
+        
+        /**
+         * Emit the code evaluating a node, leaving its double value on the stack
+         * @param node The node to compile
+         * @param xLocal Local variable slot holding the current value of {@code x}
+         */
+        void emit(ExpressionNode node, int xLocal) {
+            if (node instanceof ConstantNode) {
+                op(LDC2_W);
+                u2(pool.doubleConstant(((ConstantNode) node).getValue()));
+                push(2);
+            } else if (node instanceof VariableNode) {
+                localOp(DLOAD, xLocal);
+                push(2);
+            } else if (node instanceof ParameterNode) {
+                emitParameter((ParameterNode) node);
+            } else if (node instanceof NegateNode) {
+                emit(((NegateNode) node).getOperand(), xLocal);
+                op(DNEG);
+            } else if (node instanceof BinaryNode) {
+                emitBinary((BinaryNode) node, xLocal);
+            } else if (node instanceof FunctionNode) {
+                FunctionNode function = (FunctionNode) node;
+                emit(function.getArgument(), xLocal);
+                invokeMath(mathMethodName(function), UNARY_DESCRIPTOR);
+            } else if (node instanceof CallNode) {
+                // Inline the callee: bind the argument to a fresh local used as its x
+                CallNode call = (CallNode) node;
+                emit(call.getArgument(), xLocal);
+                int argumentLocal = allocateLocal(2);
+                localOp(DSTORE, argumentLocal);
+                pop(2);
+                emit(call.getBody(), argumentLocal);
+            } else if (node instanceof SharedNode) {
+                emitShared((SharedNode) node, xLocal);
+            } else if (node instanceof ConditionalNode) {
+                emitConditional((ConditionalNode) node, xLocal);
+            } else if (node instanceof ReductionNode) {
+                emitReduction((ReductionNode) node, xLocal);
+            } else if (node instanceof IndexNode && indexLocals.containsKey(node)) {
+                localOp(DLOAD, indexLocals.get(node));
+                push(2);
+            } else {
+                throw new UnsupportedOperationException("Unsupported node: " + node.getClass().getSimpleName());
+            }
+        }
+        
+        /**
+         * Emit a shared subexpression: the first occurrence computes it and keeps a
+         * copy in a local, later ones load that local. Outside conditional branches
+         * the code is straight-line, so the first occurrence always runs before the others.
+         */
+        private void emitShared(SharedNode shared, int xLocal) {
+            // Inside an inlined call the same node sees another x, hence another value
+            List<Object> key = Arrays.asList(shared, xLocal);
+            Integer local = sharedLocals.get(key);
+            if (local != null) {
+                localOp(DLOAD, local);
+                push(2);
+                return;
+            }
+            
+            emit(shared.getValue(), xLocal);
+            op(DUP2);
+            push(2);
+            local = allocateLocal(2);
+            localOp(DSTORE, local);
+            pop(2);
+            sharedLocals.put(key, local);
+        }
+        
+        /**
+         * Emit a conditional as a real branch: the comparison jumps over the
+         * true branch when it fails (including on NaN operands), and the true
+         * branch jumps over the false one, so only the selected branch runs
+         */
+        private void emitConditional(ConditionalNode conditional, int xLocal) {
+            emit(conditional.getLeft(), xLocal);
+            emit(conditional.getRight(), xLocal);
+            // dcmpg yields 1 and dcmpl -1 on NaN: pick the one that makes the jump taken
+            switch (conditional.getComparison()) {
+                case LESS:
+                case LESS_EQUAL:
+                    op(DCMPG);
+                    break;
+                default:
+                    op(DCMPL);
+                    break;
+            }
+            pop(4);
+            push(1);
+            int falseBranch = size();
+            switch (conditional.getComparison()) {
+                case LESS: op(IFGE); break;
+                case LESS_EQUAL: op(IFGT); break;
+                case GREATER: op(IFLE); break;
+                case GREATER_EQUAL: op(IFLT); break;
+                case EQUAL: op(IFNE); break;
+                default:
+                    throw new UnsupportedOperationException("Unsupported comparison: " + conditional.getComparison());
+            }
+            u2(0); // patched below
+            pop(1);
+            
+            // Values shared inside a branch are not computed on the other path
+            Map<List<Object>, Integer> outside = new HashMap<>(sharedLocals);
+            emit(conditional.getWhenTrue(), xLocal);
+            int exit = size();
+            op(GOTO);
+            u2(0); // patched below
+            pop(2);
+            sharedLocals.clear();
+            sharedLocals.putAll(outside);
+            
+            patchBranch(falseBranch, size() - falseBranch);
+            emit(conditional.getWhenFalse(), xLocal);
+            sharedLocals.clear();
+            sharedLocals.putAll(outside);
+            patchBranch(exit, size() - exit);
+        }
+        
+        /**
+         * Emit a sum or product as a counted loop over its index:
+         * {@code for (k = rint(from); k <= rint(to); k++) result = result op body}.
+         * Too many terms or undefined bounds give NaN, as on the tree.
+         */
+        private void emitReduction(ReductionNode reduction, int xLocal) {
+            emit(reduction.getFrom(), xLocal);
+            invokeMath("rint", UNARY_DESCRIPTOR);
+            int index = allocateLocal(2);
+            localOp(DSTORE, index);
+            pop(2);
+            emit(reduction.getTo(), xLocal);
+            invokeMath("rint", UNARY_DESCRIPTOR);
+            int last = allocateLocal(2);
+            localOp(DSTORE, last);
+            pop(2);
+            int result = allocateLocal(2);
+            
+            // if (!(last - index < MAX_REDUCTION_TERMS)) value = NaN, where dcmpg yields 1 on NaN
+            localOp(DLOAD, last);
+            push(2);
+            localOp(DLOAD, index);
+            push(2);
+            op(DSUB);
+            pop(2);
+            op(LDC2_W);
+            u2(pool.doubleConstant(MathConstants.MAX_REDUCTION_TERMS));
+            push(2);
+            op(DCMPG);
+            pop(4);
+            push(1);
+            int definedBranch = size();
+            op(IFLT);
+            u2(0); // patched below
+            pop(1);
+            op(LDC2_W);
+            u2(pool.doubleConstant(Double.NaN));
+            push(2);
+            int undefinedExit = size();
+            op(GOTO);
+            u2(0); // patched below
+            pop(2);
+            patchBranch(definedBranch, size() - definedBranch);
+            
+            op(LDC2_W);
+            u2(pool.doubleConstant(reduction.getOperator() == BinaryOperator.MULTIPLY ? 1.0 : 0.0));
+            push(2);
+            localOp(DSTORE, result);
+            pop(2);
+            
+            int loopStart = size();
+            localOp(DLOAD, index);
+            push(2);
+            localOp(DLOAD, last);
+            push(2);
+            op(DCMPG);
+            pop(4);
+            push(1);
+            int exitBranch = size();
+            op(IFGT);
+            u2(0); // patched below
+            pop(1);
+            
+            // Values shared inside the loop are not computed when it runs zero times
+            Map<List<Object>, Integer> outside = new HashMap<>(sharedLocals);
+            Integer enclosing = indexLocals.put(reduction.getIndex(), index);
+            localOp(DLOAD, result);
+            push(2);
+            emit(reduction.getBody(), xLocal);
+            op(reduction.getOperator() == BinaryOperator.MULTIPLY ? DMUL : DADD);
+            pop(2);
+            localOp(DSTORE, result);
+            pop(2);
+            if (enclosing != null) {
+                indexLocals.put(reduction.getIndex(), enclosing);
+            } else {
+                indexLocals.remove(reduction.getIndex());
+            }
+            sharedLocals.clear();
+            sharedLocals.putAll(outside);
+            
+            localOp(DLOAD, index);
+            push(2);
+            op(DCONST_1);
+            push(2);
+            op(DADD);
+            pop(2);
+            localOp(DSTORE, index);
+            pop(2);
+            int gotoPosition = size();
+            op(GOTO);
+            u2(loopStart - gotoPosition);
+            
+            patchBranch(exitBranch, size() - exitBranch);
+            localOp(DLOAD, result);
+            push(2);
+            patchBranch(undefinedExit, size() - undefinedExit);
+        }
+        
+        private void emitParameter(ParameterNode parameter) {
+            Integer local = parameterLocals.get(parameterKey(parameter));
+            if (local != null) {
+                localOp(DLOAD, local);
+                push(2);
+                return;
+            }
+            
+            op(ALOAD_0);
+            op(GETFIELD);
+            u2(pool.fieldRef(CLASS_NAME, tableField(parameter.getTable()), TABLE_DESCRIPTOR));
+            push(1);
+            pushInt(parameter.getSlot());
+            op(INVOKEVIRTUAL);
+            u2(pool.methodRef(TABLE, "get", "(I)D"));
+            pop(2);
+            push(2);
+        }
+        
+        /**
+         * Read each parameter into a local, used instead of the table from then on
+         */
+        void loadParameters(Set<ParameterNode> parameters) {
+            for (ParameterNode parameter : parameters) {
+                if (parameterLocals.containsKey(parameterKey(parameter))) continue;
+                emitParameter(parameter);
+                int local = allocateLocal(2);
+                localOp(DSTORE, local);
+                pop(2);
+                parameterLocals.put(parameterKey(parameter), local);
+            }
+        }
+        
+        private List<Object> parameterKey(ParameterNode parameter) {
+            return Arrays.asList(parameter.getTable(), parameter.getSlot());
+        }
+        
+        private void emitBinary(BinaryNode binary, int xLocal) {
+            emit(binary.getLeft(), xLocal);
+            emit(binary.getRight(), xLocal);
+            switch (binary.getOperator()) {
+                case ADD: op(DADD); break;
+                case SUBTRACT: op(DSUB); break;
+                case MULTIPLY: op(DMUL); break;
+                case DIVIDE: op(DDIV); break;
+                case POWER:
+                    invokeMath("pow", BINARY_DESCRIPTOR);
+                    return;
+                case MIN:
+                    invokeMath("min", BINARY_DESCRIPTOR);
+                    return;
+                case MAX:
+                    invokeMath("max", BINARY_DESCRIPTOR);
+                    return;
+                default:
+                    throw new UnsupportedOperationException("Unsupported operator: " + binary.getOperator());
+            }
+            pop(2);
+        }
+        
+        /**
+         * Call a static {@code java.lang.Math} method taking and returning doubles
+         */
+        private void invokeMath(String name, String descriptor) {
+            op(INVOKESTATIC);
+            u2(pool.methodRef(MATH, name, descriptor));
+            pop(BINARY_DESCRIPTOR.equals(descriptor) ? 4 : 2);
+            push(2);
+        }
+        
+        private void pushInt(int value) {
+            if (value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                u1(value);
+            } else {
+                op(SIPUSH);
+                u2(value);
+            }
+            push(1);
+        }
+        
+        int allocateLocal(int slots) {
+            int local = nextLocal;
+            nextLocal += slots;
+            if (nextLocal > MAX_LOCALS) {
+                throw new UnsupportedOperationException("Too many locals for bytecode compilation");
+            }
+            return local;
+        }
+        
+        void push(int slots) {
+            stackDepth += slots;
+            maxStack = Math.max(maxStack, stackDepth);
+        }
+        
+        void pop(int slots) {
+            stackDepth -= slots;
+        }
+        
+        void op(int opcode) {
+            code.write(opcode);
+        }
+        
+        void localOp(int opcode, int local) {
+            code.write(opcode);
+            code.write(local);
+        }
+        
+        void u1(int value) {
+            code.write(value);
+        }
+        
+        void u2(int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+        
+        /**
+         * Fill in the 16-bit offset of the branch instruction at the given position
+         */
+        void patchBranch(int position, int offset) {
+            byte[] bytes = code.toByteArray();
+            bytes[position + 1] = (byte) (offset >>> 8);
+            bytes[position + 2] = (byte) offset;
+            code.reset();
+            code.write(bytes, 0, bytes.length);
+        }
+        
+        int size() {
+            return code.size();
+        }
+        
+        byte[] toByteArray() {
+            return code.toByteArray();
+        }
+    }
+    
+    /**
+     * Assemble the class file: one final field per parameter table, a
+     * constructor taking the tables, {@code applyAsDouble} and {@code applyToColumn}
+     */
+    private byte[] writeClassFile(MethodWriter scalar, MethodWriter column) throws IOException {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef(OBJECT);
+        int codeInterface = pool.classRef(GENERATED_CODE);
+        int codeAttribute = pool.utf8("Code");
+        byte[] constructorCode = writeConstructorCode();
+        int constructorName = pool.utf8("<init>");
+        int constructorDescriptor = pool.utf8("([" + TABLE_DESCRIPTOR + ")V");
+        int scalarName = pool.utf8("applyAsDouble");
+        int scalarDescriptor = pool.utf8(UNARY_DESCRIPTOR);
+        int columnName = pool.utf8("applyToColumn");
+        int columnDescriptor = pool.utf8(COLUMN_DESCRIPTOR);
+        int tableDescriptor = pool.utf8(TABLE_DESCRIPTOR);
+        int[] fieldNames = new int[tables.size()];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = pool.utf8("table" + i);
+        }
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CLASS_FILE_MAGIC);
+        out.writeShort(0);
+        out.writeShort(CLASS_FILE_MAJOR_VERSION);
+        pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(codeInterface);
+        
+        out.writeShort(fieldNames.length);
+        for (int fieldName : fieldNames) {
+            out.writeShort(ACC_PRIVATE | ACC_FINAL);
+            out.writeShort(fieldName);
+            out.writeShort(tableDescriptor);
+            out.writeShort(0);
+        }
+        
+        out.writeShort(3);
+        writeMethod(out, constructorName, constructorDescriptor, codeAttribute, constructorCode, 3, 2);
+        writeMethod(out, scalarName, scalarDescriptor, codeAttribute, scalar.toByteArray(),
+                    scalar.maxStack, scalar.nextLocal);
+        writeMethod(out, columnName, columnDescriptor, codeAttribute, column.toByteArray(),
+                    column.maxStack, column.nextLocal);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Constructor body: call {@code Object()} then store each table in its field
+     */
+    private byte[] writeConstructorCode() {
+        ByteArrayOutputStream constructor = new ByteArrayOutputStream();
+        constructor.write(ALOAD_0);
+        constructor.write(INVOKESPECIAL);
+        int objectInit = pool.methodRef(OBJECT, "<init>", "()V");
+        constructor.write(objectInit >>> 8);
+        constructor.write(objectInit);
+        for (int i = 0; i < tables.size(); i++) {
+            constructor.write(ALOAD_0);
+            constructor.write(ALOAD_1);
+            constructor.write(BIPUSH);
+            constructor.write(i);
+            constructor.write(AALOAD);
+            constructor.write(PUTFIELD);
+            int field = pool.fieldRef(CLASS_NAME, "table" + i, TABLE_DESCRIPTOR);
+            constructor.write(field >>> 8);
+            constructor.write(field);
+        }
+        constructor.write(RETURN);
+        return constructor.toByteArray();
+    }
+    
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+                                    byte[] body, int maxStack, int maxLocals) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+}
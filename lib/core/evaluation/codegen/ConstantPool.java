@@ -0,0 +1,131 @@
+package lib.core.evaluation.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constant pool of a generated class file.
+ * Entries are deduplicated, so asking twice for the same constant yields the same index.
+ */
+class ConstantPool {
+    
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_CLASS = 7;
+    private static final int TAG_FIELDREF = 9;
+    private static final int TAG_METHODREF = 10;
+    private static final int TAG_NAME_AND_TYPE = 12;
+    
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> indices = new HashMap<>();
+    private int count = 1; // Index 0 is reserved
+    
+    /**
+     * Get the index of a UTF-8 string constant
+     */
+    int utf8(String value) {
+        String key = "U" + value;
+        Integer index = indices.get(key);
+        if (index != null) return index;
+        write(TAG_UTF8, () -> out.writeUTF(value));
+        return register(key, 1);
+    }
+    
+    /**
+     * Get the index of a class reference
+     * @param internalName Class name in internal form (e.g. {@code java/lang/Math})
+     */
+    int classRef(String internalName) {
+        String key = "C" + internalName;
+        Integer index = indices.get(key);
+        if (index != null) return index;
+        int nameIndex = utf8(internalName);
+        write(TAG_CLASS, () -> out.writeShort(nameIndex));
+        return register(key, 1);
+    }
+    
+    /**
+     * Get the index of a {@code double} constant (usable with {@code ldc2_w})
+     */
+    int doubleConstant(double value) {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = indices.get(key);
+        if (index != null) return index;
+        write(TAG_DOUBLE, () -> out.writeDouble(value));
+        // Doubles take two constant pool entries
+        return register(key, 2);
+    }
+    
+    /**
+     * Get the index of a field reference
+     */
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(TAG_FIELDREF, owner, name, descriptor);
+    }
+    
+    /**
+     * Get the index of a (non-interface) method reference
+     */
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(TAG_METHODREF, owner, name, descriptor);
+    }
+    
+    /**
+     * Write the constant pool count followed by the entries
+     */
+    void writeTo(DataOutputStream classFile) throws IOException {
+        classFile.writeShort(count);
+        bytes.writeTo(classFile);
+    }
+    
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = "M" + tag + owner + "." + name + descriptor;
+        Integer index = indices.get(key);
+        if (index != null) return index;
+        int classIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        write(tag, () -> {
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+        return register(key, 1);
+    }
+    
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + descriptor;
+        Integer index = indices.get(key);
+        if (index != null) return index;
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(TAG_NAME_AND_TYPE, () -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return register(key, 1);
+    }
+    
+    private int register(String key, int slots) {
+        int index = count;
+        indices.put(key, index);
+        count += slots;
+        return index;
+    }
+    
+    private void write(int tag, EntryWriter writer) {
+        try {
+            out.writeByte(tag);
+            writer.write();
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream cannot fail
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private interface EntryWriter {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,19 @@
+package lib.core.evaluation.codegen;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Bytecode generated for an expression by {@link BytecodeCompiler}.
+ * Evaluates single values as a {@link DoubleUnaryOperator}, or whole sample
+ * columns in one generated loop.
+ */
+public interface GeneratedCode extends DoubleUnaryOperator {
+    
+    /**
+     * Evaluate the expression for a column of {@code x} values
+     * @param xs The values bound to {@code x}
+     * @param out Column receiving the results (may be {@code xs} itself)
+     * @param length Number of samples to evaluate
+     */
+    void applyToColumn(double[] xs, double[] out, int length);
+}
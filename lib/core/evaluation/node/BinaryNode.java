@@ -0,0 +1,88 @@
+package lib.core.evaluation.node;
+
+/**
+ * A binary arithmetic operation (e.g. {@code a + b}, {@code a ^ b})
+ */
+public class BinaryNode extends ExpressionNode {
+    
+    private final BinaryOperator operator;
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+    
+    /**
+     * Create a binary operation node
+     * @param operator The operator to apply
+     * @param left Left operand
+     * @param right Right operand
+     */
+    public BinaryNode(BinaryOperator operator, ExpressionNode left, ExpressionNode right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+    
+    public BinaryOperator getOperator() {
+        return operator;
+    }
+    
+    public ExpressionNode getLeft() {
+        return left;
+    }
+    
+    public ExpressionNode getRight() {
+        return right;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return operator.apply(left.evaluate(x), right.evaluate(x));
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return operator.apply(left.evaluateDual(x), right.evaluateDual(x));
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        Interval operand = left.evaluateInterval(x);
+        if (operator == BinaryOperator.MULTIPLY && left == right) {
+            // u*u is a square, never negative: bounding it as a product of two
+            // unrelated ranges would lose that (x*x over [-1, 2] is not [-2, 4])
+            return operand.pow(Interval.point(2.0));
+        }
+        return operator.apply(operand, right.evaluateInterval(x));
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        left.evaluateDoubleDouble(xHi, xLo, out);
+        double leftHi = out[0];
+        double leftLo = out[1];
+        right.evaluateDoubleDouble(xHi, xLo, out);
+        operator.apply(leftHi, leftLo, out[0], out[1], out);
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        left.evaluate(xs, out, length, frame);
+        boolean fastPower = operator == BinaryOperator.POWER && frame.isFastMath();
+        if (right instanceof ConstantNode || right instanceof ParameterNode) {
+            // Uniform right operand: broadcast it instead of filling a column
+            double operand = right.evaluate(0.0);
+            if (fastPower) {
+                for (int i = 0; i < length; i++) out[i] = FastMath.pow(out[i], operand);
+            } else {
+                operator.apply(out, operand, length);
+            }
+        } else {
+            double[] operands = new double[length];
+            right.evaluate(xs, operands, length, frame);
+            if (fastPower) {
+                for (int i = 0; i < length; i++) out[i] = FastMath.pow(out[i], operands[i]);
+            } else {
+                operator.apply(out, operands, length);
+            }
+        }
+    }
+}
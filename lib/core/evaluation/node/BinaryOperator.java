@@ -0,0 +1,190 @@
+package lib.core.evaluation.node;
+
+/**
+ * Binary arithmetic operators supported in expressions, including the
+ * two-argument functions {@code min} and {@code max}
+ */
+public enum BinaryOperator {
+    ADD("+"),
+    SUBTRACT("-"),
+    MULTIPLY("*"),
+    DIVIDE("/"),
+    POWER("^"),
+    MIN("min"),
+    MAX("max");
+    
+    private final String symbol;
+    
+    BinaryOperator(String symbol) {
+        this.symbol = symbol;
+    }
+    
+    /**
+     * Get the operator symbol (or function name) as written in expressions
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+    
+    /**
+     * Apply the operator to two operands
+     * @param a Left operand
+     * @param b Right operand
+     * @return The result ({@code double})
+     */
+    public double apply(double a, double b) {
+        switch (this) {
+            case ADD: return a + b;
+            case SUBTRACT: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return a / b;
+            case POWER: return Math.pow(a, b);
+            case MIN: return Math.min(a, b);
+            case MAX: return Math.max(a, b);
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Apply the operator to two operands and propagate their derivatives
+     * @param a Left operand and its derivative
+     * @param b Right operand and its derivative
+     * @return The result and its derivative ({@link DualNumber})
+     */
+    public DualNumber apply(DualNumber a, DualNumber b) {
+        double u = a.getValue();
+        double du = a.getDerivative();
+        double v = b.getValue();
+        double dv = b.getDerivative();
+        switch (this) {
+            case ADD: return new DualNumber(u + v, du + dv);
+            case SUBTRACT: return new DualNumber(u - v, du - dv);
+            case MULTIPLY: return new DualNumber(u * v, du * v + u * dv);
+            case DIVIDE: return new DualNumber(u / v, (du * v - u * dv) / (v * v));
+            case POWER: {
+                double power = Math.pow(u, v);
+                if (dv == 0.0) {
+                    // Constant exponent: also valid for negative bases (e.g. x^3 at x < 0)
+                    double derivative = v == 0.0 || du == 0.0 ? 0.0 : v * Math.pow(u, v - 1.0) * du;
+                    return new DualNumber(power, derivative);
+                }
+                // d(u^v) = u^v * (v' ln u + v u'/u)
+                double derivative = du == 0.0
+                    ? power * Math.log(u) * dv
+                    : power * (dv * Math.log(u) + v * du / u);
+                return new DualNumber(power, derivative);
+            }
+            // The derivative of the operand that is selected
+            case MIN: return new DualNumber(Math.min(u, v), u <= v ? du : dv);
+            case MAX: return new DualNumber(Math.max(u, v), u >= v ? du : dv);
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Apply the operator to two ranges of operands
+     * @param a Range of the left operand
+     * @param b Range of the right operand
+     * @return An enclosure of the results ({@link Interval})
+     */
+    public Interval apply(Interval a, Interval b) {
+        switch (this) {
+            case ADD: return a.add(b);
+            case SUBTRACT: return a.subtract(b);
+            case MULTIPLY: return a.multiply(b);
+            case DIVIDE: return a.divide(b);
+            case POWER: return a.pow(b);
+            case MIN: return a.min(b);
+            case MAX: return a.max(b);
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Apply the operator in double-double precision
+     * @param aHi High part of the left operand
+     * @param aLo Low part of the left operand
+     * @param bHi High part of the right operand
+     * @param bLo Low part of the right operand
+     * @param out Receives the high and low parts of the result
+     */
+    public void apply(double aHi, double aLo, double bHi, double bLo, double[] out) {
+        switch (this) {
+            case ADD: DoubleDouble.add(aHi, aLo, bHi, bLo, out); break;
+            case SUBTRACT: DoubleDouble.subtract(aHi, aLo, bHi, bLo, out); break;
+            case MULTIPLY: DoubleDouble.multiply(aHi, aLo, bHi, bLo, out); break;
+            case DIVIDE: DoubleDouble.divide(aHi, aLo, bHi, bLo, out); break;
+            case POWER: DoubleDouble.pow(aHi, aLo, bHi, bLo, out); break;
+            case MIN: DoubleDouble.min(aHi, aLo, bHi, bLo, out); break;
+            case MAX: DoubleDouble.max(aHi, aLo, bHi, bLo, out); break;
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Apply the operator element-wise, storing the result in the left column.
+     * Each operator gets its own flat loop so that the JIT can vectorize it.
+     * @param a Left operands, overwritten with the results
+     * @param b Right operands
+     * @param length Number of elements
+     */
+    public void apply(double[] a, double[] b, int length) {
+        switch (this) {
+            case ADD:
+                for (int i = 0; i < length; i++) a[i] += b[i];
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < length; i++) a[i] -= b[i];
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < length; i++) a[i] *= b[i];
+                break;
+            case DIVIDE:
+                for (int i = 0; i < length; i++) a[i] /= b[i];
+                break;
+            case POWER:
+                for (int i = 0; i < length; i++) a[i] = Math.pow(a[i], b[i]);
+                break;
+            case MIN:
+                for (int i = 0; i < length; i++) a[i] = Math.min(a[i], b[i]);
+                break;
+            case MAX:
+                for (int i = 0; i < length; i++) a[i] = Math.max(a[i], b[i]);
+                break;
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Apply the operator element-wise with the same right operand for every element
+     * @param a Left operands, overwritten with the results
+     * @param b Right operand
+     * @param length Number of elements
+     */
+    public void apply(double[] a, double b, int length) {
+        switch (this) {
+            case ADD:
+                for (int i = 0; i < length; i++) a[i] += b;
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < length; i++) a[i] -= b;
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < length; i++) a[i] *= b;
+                break;
+            case DIVIDE:
+                for (int i = 0; i < length; i++) a[i] /= b;
+                break;
+            case POWER:
+                for (int i = 0; i < length; i++) a[i] = Math.pow(a[i], b);
+                break;
+            case MIN:
+                for (int i = 0; i < length; i++) a[i] = Math.min(a[i], b);
+                break;
+            case MAX:
+                for (int i = 0; i < length; i++) a[i] = Math.max(a[i], b);
+                break;
+            default: throw new AssertionError(this);
+        }
+    }
+}
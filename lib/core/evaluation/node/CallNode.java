@@ -0,0 +1,70 @@
+package lib.core.evaluation.node;
+
+/**
+ * Call of a user-defined function (e.g. {@code f(x+1)} with {@code f(x)=x^2}).
+ * The callee body is compiled along with the caller, so a call is a direct
+ * evaluation of the body with the argument bound to {@code x}.
+ */
+public class CallNode extends ExpressionNode {
+    
+    private final String functionName;
+    private final ExpressionNode body;
+    private final ExpressionNode argument;
+    
+    /**
+     * Create a user function call node
+     * @param functionName Name of the called function
+     * @param body Compiled body of the called function
+     * @param argument The argument sub-expression
+     */
+    public CallNode(String functionName, ExpressionNode body, ExpressionNode argument) {
+        this.functionName = functionName;
+        this.body = body;
+        this.argument = argument;
+    }
+    
+    public String getFunctionName() {
+        return functionName;
+    }
+    
+    public ExpressionNode getBody() {
+        return body;
+    }
+    
+    public ExpressionNode getArgument() {
+        return argument;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return body.evaluate(argument.evaluate(x));
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        // The argument's derivative carries the chain rule into the body
+        return body.evaluateDual(argument.evaluateDual(x));
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return body.evaluateInterval(argument.evaluateInterval(x));
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        argument.evaluateDoubleDouble(xHi, xLo, out);
+        body.evaluateDoubleDouble(out[0], out[1], out);
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        // f(x) on a curve's samples may have been computed by another curve already
+        if (argument instanceof VariableNode && frame.evaluateShared(functionName, body, xs, out, length)) return;
+        
+        // The argument column becomes the callee's x column
+        double[] arguments = new double[length];
+        argument.evaluate(xs, arguments, length, frame);
+        body.evaluate(arguments, out, length, frame);
+    }
+}
@@ -0,0 +1,100 @@
+package lib.core.evaluation.node;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Scratch state of one batch evaluation.
+ * Remembers the column computed for each {@link SharedNode}, so a common
+ * subexpression is evaluated once per column however many parents use it.
+ * Columns are keyed by the {@code x} column they were computed for, since the
+ * same shared node inside a user function body sees a different {@code x} at
+ * every call site.
+ * A frame can also select fast-math evaluation, which replaces the
+ * transcendental functions with the approximations of {@link FastMath}, and
+ * evaluate a curve's samples through a {@link SampleColumnCache}, which lets
+ * curves sampled on the same grid share the columns of user function calls.
+ */
+public class ColumnFrame {
+    
+    private final Map<SharedNode, Map<double[], double[]>> columns = new IdentityHashMap<>();
+    private final boolean fastMath;
+    private final SampleColumnCache sampleColumns;
+    private final double[] samples;
+    private final int[] sampleIndices;
+    
+    /**
+     * Create a frame for exact evaluation
+     */
+    public ColumnFrame() {
+        this(false);
+    }
+    
+    /**
+     * Create a frame
+     * @param fastMath true to evaluate transcendental functions with {@link FastMath}
+     */
+    public ColumnFrame(boolean fastMath) {
+        this(fastMath, null, null, null);
+    }
+    
+    /**
+     * Create a frame evaluating grid samples, sharing user function columns
+     * with the other curves of the frame
+     * @param fastMath true to evaluate transcendental functions with {@link FastMath}
+     * @param sampleColumns Cache prepared for the grid (may be null)
+     * @param samples The sample column the expression is evaluated for
+     * @param sampleIndices Grid index of each sample
+     */
+    public ColumnFrame(boolean fastMath, SampleColumnCache sampleColumns, double[] samples, int[] sampleIndices) {
+        this.fastMath = fastMath;
+        this.sampleColumns = sampleColumns;
+        this.samples = samples;
+        this.sampleIndices = sampleIndices;
+    }
+    
+    /**
+     * Check if this evaluation uses the fast-math approximations
+     */
+    public boolean isFastMath() {
+        return fastMath;
+    }
+    
+    /**
+     * Evaluate a user function called on {@code x} through the sample column
+     * cache. Only calls evaluated on the frame's own sample column qualify:
+     * inside other calls {@code x} is bound to other values.
+     * @param function Name of the user function
+     * @param body Body of the user function
+     * @param xs The values bound to {@code x}
+     * @param out Column receiving the results
+     * @param length Number of samples to evaluate
+     * @return true if the call was evaluated, false if the caller has to evaluate it
+     */
+    public boolean evaluateShared(String function, ExpressionNode body, double[] xs, double[] out, int length) {
+        if (sampleColumns == null || xs != samples) return false;
+        sampleColumns.evaluate(function, body, sampleIndices, xs, out, length, this);
+        return true;
+    }
+    
+    /**
+     * Get the column already computed for a shared node
+     * @param node The shared node
+     * @param xs The {@code x} column it was evaluated for
+     * @return The computed column, or null if not computed yet
+     */
+    public double[] get(SharedNode node, double[] xs) {
+        Map<double[], double[]> byInput = columns.get(node);
+        return byInput != null ? byInput.get(xs) : null;
+    }
+    
+    /**
+     * Remember the column computed for a shared node
+     * @param node The shared node
+     * @param xs The {@code x} column it was evaluated for
+     * @param column The computed column
+     */
+    public void put(SharedNode node, double[] xs, double[] column) {
+        columns.computeIfAbsent(node, n -> new IdentityHashMap<>()).put(xs, column);
+    }
+}
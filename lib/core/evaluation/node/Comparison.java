@@ -0,0 +1,142 @@
+package lib.core.evaluation.node;
+
+/**
+ * Comparison operators of conditions (e.g. {@code x < 0} in {@code if(x<0, -x, x)}).
+ * A comparison with an undefined (NaN) operand is false, so an undefined
+ * condition selects the other branch.
+ */
+public enum Comparison {
+    LESS("<"),
+    LESS_EQUAL("<="),
+    GREATER(">"),
+    GREATER_EQUAL(">="),
+    EQUAL("==");
+    
+    private final String symbol;
+    
+    Comparison(String symbol) {
+        this.symbol = symbol;
+    }
+    
+    /**
+     * Get the operator symbol as written in expressions
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+    
+    /**
+     * Compare two values
+     * @param a Left operand
+     * @param b Right operand
+     * @return true if the comparison holds, false if not or if an operand is NaN
+     */
+    public boolean test(double a, double b) {
+        switch (this) {
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case EQUAL: return a == b;
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Compare two double-double values
+     * @param aHi High part of the left operand
+     * @param aLo Low part of the left operand
+     * @param bHi High part of the right operand
+     * @param bLo Low part of the right operand
+     * @return true if the comparison holds, false if not or if an operand is NaN
+     */
+    public boolean test(double aHi, double aLo, double bHi, double bLo) {
+        return test(DoubleDouble.compare(aHi, aLo, bHi, bLo), 0.0);
+    }
+    
+    /**
+     * Compare two columns element-wise. Each comparison is its own flat loop
+     * without branches, which the JIT can vectorize.
+     * @param a Left operands
+     * @param b Right operands
+     * @param result Receives the outcome of each comparison
+     * @param length Number of elements
+     * @return The number of comparisons that hold
+     */
+    public int test(double[] a, double[] b, boolean[] result, int length) {
+        switch (this) {
+            case LESS:
+                for (int i = 0; i < length; i++) result[i] = a[i] < b[i];
+                break;
+            case LESS_EQUAL:
+                for (int i = 0; i < length; i++) result[i] = a[i] <= b[i];
+                break;
+            case GREATER:
+                for (int i = 0; i < length; i++) result[i] = a[i] > b[i];
+                break;
+            case GREATER_EQUAL:
+                for (int i = 0; i < length; i++) result[i] = a[i] >= b[i];
+                break;
+            case EQUAL:
+                for (int i = 0; i < length; i++) result[i] = a[i] == b[i];
+                break;
+            default: throw new AssertionError(this);
+        }
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (result[i]) count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Check if the comparison holds for every pair of values of two ranges
+     * @param a Range of the left operand
+     * @param b Range of the right operand
+     * @return true if it holds everywhere (false when in doubt)
+     */
+    public boolean holdsEverywhere(Interval a, Interval b) {
+        if (a.isEmpty() || b.isEmpty()) return false;
+        switch (this) {
+            case LESS: return a.getHi() < b.getLo();
+            case LESS_EQUAL: return a.getHi() <= b.getLo();
+            case GREATER: return a.getLo() > b.getHi();
+            case GREATER_EQUAL: return a.getLo() >= b.getHi();
+            case EQUAL: return a.getLo() == a.getHi() && b.getLo() == b.getHi() && a.getLo() == b.getLo();
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Check if the comparison fails for every pair of values of two ranges
+     * @param a Range of the left operand
+     * @param b Range of the right operand
+     * @return true if it holds nowhere (false when in doubt)
+     */
+    public boolean holdsNowhere(Interval a, Interval b) {
+        // Undefined operands make every comparison false
+        if (a.isEmpty() || b.isEmpty()) return true;
+        switch (this) {
+            case LESS: return a.getLo() >= b.getHi();
+            case LESS_EQUAL: return a.getLo() > b.getHi();
+            case GREATER: return a.getHi() <= b.getLo();
+            case GREATER_EQUAL: return a.getHi() < b.getLo();
+            case EQUAL: return a.getHi() < b.getLo() || a.getLo() > b.getHi();
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Look up a comparison by symbol
+     * @param symbol The symbol as written in expressions
+     * @return The matching comparison, or {@code null} if there is none
+     */
+    public static Comparison fromSymbol(String symbol) {
+        for (Comparison comparison : values()) {
+            if (comparison.symbol.equals(symbol)) {
+                return comparison;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,151 @@
+package lib.core.evaluation.node;
+
+/**
+ * A conditional expression: {@code if(left < right, whenTrue, whenFalse)}.
+ * Piecewise definitions are chains of conditionals.
+ * Only the selected branch is evaluated; column evaluation splits the column
+ * by the condition, evaluates each branch on its own samples only and merges
+ * the results with a branchless select.
+ */
+public class ConditionalNode extends ExpressionNode {
+    
+    private final Comparison comparison;
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+    private final ExpressionNode whenTrue;
+    private final ExpressionNode whenFalse;
+    
+    /**
+     * Create a conditional node
+     * @param comparison The comparison of the condition
+     * @param left Left operand of the condition
+     * @param right Right operand of the condition
+     * @param whenTrue Value where the condition holds
+     * @param whenFalse Value where it does not (or is undefined)
+     */
+    public ConditionalNode(Comparison comparison, ExpressionNode left, ExpressionNode right,
+                           ExpressionNode whenTrue, ExpressionNode whenFalse) {
+        this.comparison = comparison;
+        this.left = left;
+        this.right = right;
+        this.whenTrue = whenTrue;
+        this.whenFalse = whenFalse;
+    }
+    
+    public Comparison getComparison() {
+        return comparison;
+    }
+    
+    public ExpressionNode getLeft() {
+        return left;
+    }
+    
+    public ExpressionNode getRight() {
+        return right;
+    }
+    
+    public ExpressionNode getWhenTrue() {
+        return whenTrue;
+    }
+    
+    public ExpressionNode getWhenFalse() {
+        return whenFalse;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return comparison.test(left.evaluate(x), right.evaluate(x)) ? whenTrue.evaluate(x) : whenFalse.evaluate(x);
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        // The derivative of the selected branch (one-sided at the boundary)
+        boolean holds = comparison.test(left.evaluate(x.getValue()), right.evaluate(x.getValue()));
+        return holds ? whenTrue.evaluateDual(x) : whenFalse.evaluateDual(x);
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        Interval a = left.evaluateInterval(x);
+        Interval b = right.evaluateInterval(x);
+        if (comparison.holdsEverywhere(a, b)) return whenTrue.evaluateInterval(x);
+        if (comparison.holdsNowhere(a, b)) return whenFalse.evaluateInterval(x);
+        // Each branch is selected somewhere in the range
+        return whenTrue.evaluateInterval(x).union(whenFalse.evaluateInterval(x));
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        left.evaluateDoubleDouble(xHi, xLo, out);
+        double leftHi = out[0];
+        double leftLo = out[1];
+        right.evaluateDoubleDouble(xHi, xLo, out);
+        if (comparison.test(leftHi, leftLo, out[0], out[1])) {
+            whenTrue.evaluateDoubleDouble(xHi, xLo, out);
+        } else {
+            whenFalse.evaluateDoubleDouble(xHi, xLo, out);
+        }
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        double[] a = new double[length];
+        double[] b = new double[length];
+        left.evaluate(xs, a, length, frame);
+        right.evaluate(xs, b, length, frame);
+        boolean[] holds = new boolean[length];
+        int selected = comparison.test(a, b, holds, length);
+        
+        // Most columns lie on one side of the condition: evaluate that branch only
+        if (selected == length) {
+            whenTrue.evaluate(xs, out, length, frame);
+            return;
+        }
+        if (selected == 0) {
+            whenFalse.evaluate(xs, out, length, frame);
+            return;
+        }
+        
+        // The operand columns are no longer needed and hold the branch values
+        evaluateWhere(whenTrue, xs, holds, true, selected, a, length, frame);
+        evaluateWhere(whenFalse, xs, holds, false, length - selected, b, length, frame);
+        for (int i = 0; i < length; i++) {
+            out[i] = holds[i] ? a[i] : b[i];
+        }
+    }
+    
+    /**
+     * Evaluate a branch on the samples that select it, leaving the other
+     * positions of the result unspecified. Leaves cost less than gathering
+     * their samples, so they are evaluated on the whole column.
+     * @param branch The branch to evaluate
+     * @param xs The values bound to {@code x}
+     * @param holds Outcome of the condition for each sample
+     * @param selecting Outcome that selects this branch
+     * @param count Number of samples selecting this branch
+     * @param result Column receiving the branch values
+     * @param length Number of samples
+     * @param frame Columns already computed during this evaluation
+     */
+    private static void evaluateWhere(ExpressionNode branch, double[] xs, boolean[] holds, boolean selecting,
+                                      int count, double[] result, int length, ColumnFrame frame) {
+        if (branch instanceof ConstantNode || branch instanceof ParameterNode || branch instanceof VariableNode) {
+            branch.evaluate(xs, result, length, frame);
+            return;
+        }
+        int[] positions = new int[count];
+        double[] subset = new double[count];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (holds[i] == selecting) {
+                positions[n] = i;
+                subset[n++] = xs[i];
+            }
+        }
+        double[] values = new double[count];
+        branch.evaluate(subset, values, count, frame);
+        for (int i = 0; i < count; i++) {
+            result[positions[i]] = values[i];
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package lib.core.evaluation.node;
+
+import java.util.Arrays;
+
+/**
+ * A numeric literal or a value fixed at compile time (e.g. {@code pi}, {@code e})
+ */
+public class ConstantNode extends ExpressionNode {
+    
+    private final double value;
+    
+    /**
+     * Create a constant node
+     * @param value The constant value
+     */
+    public ConstantNode(double value) {
+        this.value = value;
+    }
+    
+    /**
+     * Get the constant value
+     */
+    public double getValue() {
+        return value;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return value;
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return DualNumber.constant(value);
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return Interval.point(value);
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        out[0] = value;
+        out[1] = 0.0;
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        Arrays.fill(out, 0, length, value);
+    }
+}
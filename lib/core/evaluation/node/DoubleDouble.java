@@ -0,0 +1,353 @@
+package lib.core.evaluation.node;
+
+/**
+ * Arithmetic on double-double numbers: the unevaluated sum {@code hi + lo} of
+ * two doubles, with {@code lo} below half an ulp of {@code hi}, which gives
+ * about 106 bits (32 digits) of precision.
+ * Operands are passed as pairs of doubles and every result is written to
+ * {@code out[0]} (hi) and {@code out[1]} (lo), so evaluation allocates nothing.
+ * Functions are computed to full double-double precision by argument reduction
+ * and Taylor series; NaN and infinities propagate as in {@link Math}.
+ */
+public final class DoubleDouble {
+    
+    // Constants split into a double and the rounding error of that double
+    private static final double HALF_PI_HI = 1.5707963267948966;
+    private static final double HALF_PI_LO = 6.123233995736766e-17;
+    private static final double LN2_HI = 0.6931471805599453;
+    private static final double LN2_LO = 2.3190468138462996e-17;
+    private static final double LN10_HI = 2.302585092994046;
+    private static final double LN10_LO = -2.1707562233822494e-16;
+    
+    // Series terms below this, relative to the sum, no longer change it
+    private static final double SERIES_EPSILON = 1e-34;
+    private static final int MAX_SERIES_TERMS = 30;
+    // exp reduces its argument by 2^EXP_SQUARINGS, then squares the result back
+    private static final int EXP_SQUARINGS = 8;
+    private static final int MAX_INTEGER_POWER = 1024;
+    
+    private DoubleDouble() {
+    }
+    
+    // ===== Arithmetic =====
+    
+    public static void add(double ah, double al, double bh, double bl, double[] out) {
+        // Exact sums of the high and low parts (two-sum), then renormalize
+        double s = ah + bh;
+        double v = s - ah;
+        double e = (ah - (s - v)) + (bh - v);
+        double t = al + bl;
+        double w = t - al;
+        double f = (al - (t - w)) + (bl - w);
+        e += t;
+        double h = s + e;
+        e -= h - s;
+        set(h, e + f, out);
+    }
+    
+    public static void subtract(double ah, double al, double bh, double bl, double[] out) {
+        add(ah, al, -bh, -bl, out);
+    }
+    
+    public static void multiply(double ah, double al, double bh, double bl, double[] out) {
+        double p = ah * bh;
+        // fma gives the exact rounding error of the product
+        set(p, Math.fma(ah, bh, -p) + (ah * bl + al * bh), out);
+    }
+    
+    public static void divide(double ah, double al, double bh, double bl, double[] out) {
+        double q = ah / bh;
+        // Remainder a - q * b, then one correction step
+        double p = q * bh;
+        double pe = Math.fma(q, bh, -p) + q * bl;
+        double s = ah - p;
+        double v = s - ah;
+        double se = (ah - (s - v)) + (-p - v);
+        double r = s + (se - pe + al);
+        set(q, r / bh, out);
+    }
+    
+    public static void negate(double ah, double al, double[] out) {
+        out[0] = -ah;
+        out[1] = -al;
+    }
+    
+    public static void pow(double ah, double al, double bh, double bl, double[] out) {
+        if (bl == 0.0 && bh == Math.rint(bh) && Math.abs(bh) <= MAX_INTEGER_POWER) {
+            powInteger(ah, al, (long) bh, out);
+        } else if (ah > 0.0) {
+            // a^b = exp(b * ln a)
+            ln(ah, al, out);
+            multiply(bh, bl, out[0], out[1], out);
+            exp(out[0], out[1], out);
+        } else {
+            // Zero or negative bases: only the special cases of Math.pow remain
+            out[0] = Math.pow(ah, bh);
+            out[1] = 0.0;
+        }
+    }
+    
+    /**
+     * Integer power by repeated squaring
+     */
+    private static void powInteger(double ah, double al, long n, double[] out) {
+        double rh = 1.0;
+        double rl = 0.0;
+        double bh = ah;
+        double bl = al;
+        for (long k = Math.abs(n); k > 0; k >>= 1) {
+            if ((k & 1) != 0) {
+                multiply(rh, rl, bh, bl, out);
+                rh = out[0];
+                rl = out[1];
+            }
+            if (k > 1) {
+                multiply(bh, bl, bh, bl, out);
+                bh = out[0];
+                bl = out[1];
+            }
+        }
+        if (n < 0) {
+            divide(1.0, 0.0, rh, rl, out);
+        } else {
+            out[0] = rh;
+            out[1] = rl;
+        }
+    }
+    
+    /**
+     * Compare two double-double numbers
+     * @return Negative, zero or positive as {@code a} is below, equal to or
+     *         above {@code b}; NaN if either is NaN
+     */
+    public static double compare(double ah, double al, double bh, double bl) {
+        // Normalized pairs order by their high parts first
+        if (ah != bh) return ah - bh;
+        return al - bl;
+    }
+    
+    public static void min(double ah, double al, double bh, double bl, double[] out) {
+        select(ah, al, bh, bl, compare(ah, al, bh, bl) <= 0.0, out);
+    }
+    
+    public static void max(double ah, double al, double bh, double bl, double[] out) {
+        select(ah, al, bh, bl, compare(ah, al, bh, bl) >= 0.0, out);
+    }
+    
+    /**
+     * Write {@code a} if {@code first} holds, {@code b} otherwise; NaN if either is NaN, as {@link Math#min}
+     */
+    private static void select(double ah, double al, double bh, double bl, boolean first, double[] out) {
+        if (Double.isNaN(ah) || Double.isNaN(bh)) {
+            out[0] = Double.NaN;
+            out[1] = 0.0;
+        } else if (first) {
+            out[0] = ah;
+            out[1] = al;
+        } else {
+            out[0] = bh;
+            out[1] = bl;
+        }
+    }
+    
+    // ===== Functions =====
+    
+    public static void abs(double ah, double al, double[] out) {
+        if (ah < 0.0) {
+            negate(ah, al, out);
+        } else {
+            out[0] = ah;
+            out[1] = al;
+        }
+    }
+    
+    public static void floor(double ah, double al, double[] out) {
+        double fh = Math.floor(ah);
+        if (fh != ah) {
+            // The high part is not an integer, so the low part cannot reach the next one
+            out[0] = fh;
+            out[1] = 0.0;
+            return;
+        }
+        set(fh, Math.floor(al), out);
+    }
+    
+    public static void ceil(double ah, double al, double[] out) {
+        double ch = Math.ceil(ah);
+        if (ch != ah) {
+            out[0] = ch;
+            out[1] = 0.0;
+            return;
+        }
+        set(ch, Math.ceil(al), out);
+    }
+    
+    public static void sign(double ah, double al, double[] out) {
+        // A normalized pair is zero only if its high part is
+        out[0] = Math.signum(ah);
+        out[1] = 0.0;
+    }
+    
+    public static void sqrt(double ah, double al, double[] out) {
+        if (!(ah > 0.0) || Double.isInfinite(ah)) {
+            out[0] = Math.sqrt(ah);
+            out[1] = 0.0;
+            return;
+        }
+        // One Newton step from the double square root: q + (a - q^2) / 2q
+        double q = Math.sqrt(ah);
+        double p = q * q;
+        double d = ((ah - p) - Math.fma(q, q, -p)) + al;
+        set(q, d / (2.0 * q), out);
+    }
+    
+    public static void exp(double ah, double al, double[] out) {
+        if (!(ah > -746.0)) {
+            // NaN stays NaN; large negative arguments underflow to zero
+            out[0] = Double.isNaN(ah) ? ah : 0.0;
+            out[1] = 0.0;
+            return;
+        }
+        if (ah > 709.8) {
+            out[0] = Double.POSITIVE_INFINITY;
+            out[1] = 0.0;
+            return;
+        }
+        
+        // x = k ln 2 + r, then scale r down so that the series converges fast
+        double k = Math.rint(ah / LN2_HI);
+        double p = k * LN2_HI;
+        add(ah, al, -p, -(Math.fma(k, LN2_HI, -p) + k * LN2_LO), out);
+        double scale = Math.scalb(1.0, -EXP_SQUARINGS);
+        double rh = out[0] * scale;
+        double rl = out[1] * scale;
+        
+        // s = e^r - 1 = r + r^2/2! + r^3/3! + ...
+        double sh = rh;
+        double sl = rl;
+        double th = rh;
+        double tl = rl;
+        for (int n = 2; n < MAX_SERIES_TERMS; n++) {
+            multiply(th, tl, rh, rl, out);
+            divide(out[0], out[1], n, 0.0, out);
+            th = out[0];
+            tl = out[1];
+            add(sh, sl, th, tl, out);
+            sh = out[0];
+            sl = out[1];
+            if (Math.abs(th) <= SERIES_EPSILON * Math.abs(sh)) break;
+        }
+        
+        // Undo the scaling on e^r - 1, which keeps small results accurate: e^2r - 1 = s (s + 2)
+        for (int i = 0; i < EXP_SQUARINGS; i++) {
+            add(sh, sl, 2.0, 0.0, out);
+            multiply(sh, sl, out[0], out[1], out);
+            sh = out[0];
+            sl = out[1];
+        }
+        
+        add(1.0, 0.0, sh, sl, out);
+        out[0] = Math.scalb(out[0], (int) k);
+        out[1] = Math.scalb(out[1], (int) k);
+    }
+    
+    public static void ln(double ah, double al, double[] out) {
+        if (!(ah > 0.0) || Double.isInfinite(ah)) {
+            out[0] = Math.log(ah);
+            out[1] = 0.0;
+            return;
+        }
+        // One Newton step on exp from the double logarithm: y + a e^-y - 1
+        double y = Math.log(ah);
+        exp(-y, 0.0, out);
+        multiply(ah, al, out[0], out[1], out);
+        add(out[0], out[1], -1.0, 0.0, out);
+        add(y, 0.0, out[0], out[1], out);
+    }
+    
+    public static void log10(double ah, double al, double[] out) {
+        ln(ah, al, out);
+        divide(out[0], out[1], LN10_HI, LN10_LO, out);
+    }
+    
+    public static void sin(double ah, double al, double[] out) {
+        sinCos(ah, al, true, out);
+    }
+    
+    public static void cos(double ah, double al, double[] out) {
+        sinCos(ah, al, false, out);
+    }
+    
+    public static void tan(double ah, double al, double[] out) {
+        sinCos(ah, al, true, out);
+        double sh = out[0];
+        double sl = out[1];
+        sinCos(ah, al, false, out);
+        divide(sh, sl, out[0], out[1], out);
+    }
+    
+    /**
+     * Sine or cosine: reduce the argument to {@code |r| <= pi/4} around a
+     * multiple of {@code pi/2}, then pick the series and sign by quadrant
+     */
+    private static void sinCos(double ah, double al, boolean sine, double[] out) {
+        if (Double.isNaN(ah) || Double.isInfinite(ah)) {
+            out[0] = Double.NaN;
+            out[1] = 0.0;
+            return;
+        }
+        
+        double k = Math.rint(ah / HALF_PI_HI);
+        double p = k * HALF_PI_HI;
+        add(ah, al, -p, -(Math.fma(k, HALF_PI_HI, -p) + k * HALF_PI_LO), out);
+        double rh = out[0];
+        double rl = out[1];
+        
+        int quadrant = (int) ((long) k & 3);
+        // sin(r + pi/2) = cos(r), cos(r + pi/2) = -sin(r), and so on
+        boolean sineSeries = sine == (quadrant % 2 == 0);
+        boolean negative = sine ? quadrant >= 2 : quadrant == 1 || quadrant == 2;
+        
+        multiply(rh, rl, rh, rl, out);
+        double r2h = out[0];
+        double r2l = out[1];
+        
+        // sin r = r - r^3/3! + ...; cos r = 1 - r^2/2! + ...
+        double th = sineSeries ? rh : 1.0;
+        double tl = sineSeries ? rl : 0.0;
+        double sh = th;
+        double sl = tl;
+        for (int n = sineSeries ? 2 : 1; n < MAX_SERIES_TERMS; n += 2) {
+            multiply(th, tl, r2h, r2l, out);
+            divide(-out[0], -out[1], (double) n * (n + 1), 0.0, out);
+            th = out[0];
+            tl = out[1];
+            add(sh, sl, th, tl, out);
+            sh = out[0];
+            sl = out[1];
+            if (Math.abs(th) <= SERIES_EPSILON * Math.abs(sh)) break;
+        }
+        
+        if (negative) {
+            negate(sh, sl, out);
+        } else {
+            out[0] = sh;
+            out[1] = sl;
+        }
+    }
+    
+    /**
+     * Renormalize {@code hi + lo} into out (fast two-sum)
+     */
+    private static void set(double hi, double lo, double[] out) {
+        double s = hi + lo;
+        if (Double.isNaN(s) || Double.isInfinite(s)) {
+            // Overflow or NaN: the error term is meaningless
+            out[0] = Double.isNaN(hi) || Double.isInfinite(hi) ? hi : s;
+            out[1] = 0.0;
+            return;
+        }
+        out[0] = s;
+        out[1] = lo - (s - hi);
+    }
+}
@@ -0,0 +1,52 @@
+package lib.core.evaluation.node;
+
+/**
+ * A value paired with its derivative with respect to {@code x}.
+ * Evaluating a tree on dual numbers applies the chain rule at every node
+ * (forward-mode automatic differentiation), giving {@code f(x)} and
+ * {@code f'(x)} exactly in one pass instead of by finite differences.
+ */
+public final class DualNumber {
+    
+    private final double value;
+    private final double derivative;
+    
+    /**
+     * Create a dual number
+     * @param value The value
+     * @param derivative The derivative of the value with respect to {@code x}
+     */
+    public DualNumber(double value, double derivative) {
+        this.value = value;
+        this.derivative = derivative;
+    }
+    
+    /**
+     * Create a value that does not depend on {@code x}
+     * @param value The constant value
+     */
+    public static DualNumber constant(double value) {
+        return new DualNumber(value, 0.0);
+    }
+    
+    /**
+     * Create the variable {@code x} itself, whose derivative is 1
+     * @param x The value bound to {@code x}
+     */
+    public static DualNumber variable(double x) {
+        return new DualNumber(x, 1.0);
+    }
+    
+    public double getValue() {
+        return value;
+    }
+    
+    public double getDerivative() {
+        return derivative;
+    }
+    
+    @Override
+    public String toString() {
+        return value + " (d/dx " + derivative + ")";
+    }
+}
@@ -0,0 +1,66 @@
+package lib.core.evaluation.node;
+
+/**
+ * Base class for the nodes of a compiled expression tree.
+ * An expression is parsed once into an immutable tree of nodes, which can then
+ * be evaluated for any number of {@code x} values without touching the source text.
+ */
+public abstract class ExpressionNode {
+    
+    /**
+     * Evaluate this node for a given value of {@code x}
+     * @param x The value bound to the variable {@code x}
+     * @return The evaluated result ({@code double})
+     */
+    public abstract double evaluate(double x);
+    
+    /**
+     * Evaluate this node and its derivative with respect to {@code x}
+     * @param x The value bound to {@code x}, with its derivative
+     *          (1 at the top level, the argument's derivative inside a call)
+     * @return The value and derivative of this node ({@link DualNumber})
+     */
+    public abstract DualNumber evaluateDual(DualNumber x);
+    
+    /**
+     * Bound this node over a whole range of {@code x} values
+     * @param x The range of values bound to {@code x}
+     * @return An interval holding every defined value of this node over the range ({@link Interval})
+     */
+    public abstract Interval evaluateInterval(Interval x);
+    
+    /**
+     * Evaluate this node in double-double precision ({@link DoubleDouble}),
+     * for deep zoom where sample positions differ by less than an ulp
+     * @param xHi High part of the value bound to {@code x}
+     * @param xLo Low part of the value bound to {@code x}
+     * @param out Receives the high ({@code out[0]}) and low ({@code out[1]}) parts of the result
+     */
+    public abstract void evaluateDoubleDouble(double xHi, double xLo, double[] out);
+    
+    /**
+     * Evaluate this node for a whole column of {@code x} values.
+     * The default evaluates sample by sample; arithmetic nodes override it with
+     * flat loops over the column, which the JIT can vectorize.
+     * @param xs The values bound to {@code x}
+     * @param out Column receiving the results (may not alias {@code xs})
+     * @param length Number of samples to evaluate
+     */
+    public final void evaluate(double[] xs, double[] out, int length) {
+        evaluate(xs, out, length, new ColumnFrame());
+    }
+    
+    /**
+     * Evaluate this node for a whole column of {@code x} values within a frame
+     * that remembers the columns of shared subexpressions
+     * @param xs The values bound to {@code x}
+     * @param out Column receiving the results (may not alias {@code xs})
+     * @param length Number of samples to evaluate
+     * @param frame Columns already computed during this evaluation
+     */
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        for (int i = 0; i < length; i++) {
+            out[i] = evaluate(xs[i]);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package lib.core.evaluation.node;
+
+/**
+ * Fast approximations of the transcendental functions, for preview frames
+ * drawn while the user pans or drags a slider.
+ * Each function reduces its argument exactly enough and evaluates a short
+ * polynomial; the truncation error is at most
+ * {@link lib.constants.MathConstants#FAST_MATH_MAX_ERROR}, absolute for
+ * {@code sin}, {@code cos} and the logarithms, relative for {@code tan}
+ * and {@code exp}. Arguments outside the reduced ranges (huge, non-finite,
+ * non-positive logarithms) fall back to {@link Math}.
+ * {@code sqrt} and {@code abs} are not approximated: they are single
+ * instructions already.
+ */
+public final class FastMath {
+    
+    // pi/2 split so that k * PIO2_HI is exact for |k| < 2^20 (fdlibm's pio2_1 / pio2_1t)
+    private static final double PIO2_HI = 1.57079632673412561417e+00;
+    private static final double PIO2_LO = 6.07710050650619224932e-11;
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    // Largest argument reduced here; beyond it the reduction loses accuracy
+    private static final double MAX_TRIG_ARGUMENT = 1.0e5;
+    
+    // ln 2 split so that k * LN2_HI is exact for every exponent k (fdlibm's ln2_hi / ln2_lo)
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double INV_LN2 = 1.44269504088896338700e+00;
+    private static final double INV_LN10 = 0.43429448190325182765;
+    private static final double SQRT2 = 1.41421356237309504880;
+    private static final long MANTISSA_MASK = 0x000fffffffffffffL;
+    private static final long ONE_BITS = 0x3ff0000000000000L;
+    
+    // Largest integer exponent evaluated by repeated squaring
+    private static final int MAX_INTEGER_POWER = 64;
+    
+    // Prevent instantiation
+    private FastMath() {
+        throw new AssertionError("Cannot instantiate utility class");
+    }
+    
+    /**
+     * Approximate sine, absolute error below 2e-9
+     * @param x The argument in radians
+     * @return The sine ({@code double})
+     */
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) return Math.sin(x);
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = x - k * PIO2_HI - k * PIO2_LO;
+        // Quadrant selection without branches: samples of a curve cross quadrants constantly
+        int quadrant = (int) k;
+        double value = (quadrant & 1) == 0 ? sinReduced(r) : cosReduced(r);
+        return (quadrant & 2) == 0 ? value : -value;
+    }
+    
+    /**
+     * Approximate cosine, absolute error below 2e-9
+     * @param x The argument in radians
+     * @return The cosine ({@code double})
+     */
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) return Math.cos(x);
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = x - k * PIO2_HI - k * PIO2_LO;
+        int quadrant = (int) k + 1;
+        double value = (quadrant & 1) == 0 ? sinReduced(r) : cosReduced(r);
+        return (quadrant & 2) == 0 ? value : -value;
+    }
+    
+    /**
+     * Approximate tangent, relative error below 1e-8 away from the poles
+     * @param x The argument in radians
+     * @return The tangent ({@code double})
+     */
+    public static double tan(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) return Math.tan(x);
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = x - k * PIO2_HI - k * PIO2_LO;
+        double sin = sinReduced(r);
+        double cos = cosReduced(r);
+        // tan(r + pi/2) = -cot(r)
+        return ((int) k & 1) == 0 ? sin / cos : -cos / sin;
+    }
+    
+    /**
+     * Natural logarithm, absolute error below 1e-10
+     * @param x The argument
+     * @return The logarithm ({@code double}), NaN below zero and -infinity at zero
+     */
+    public static double ln(double x) {
+        if (!(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY)) return Math.log(x);
+        // Split x = m * 2^exponent from its bits, with m in [sqrt(2)/2, sqrt(2))
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int) (bits >>> 52) - 1023;
+        double m = Double.longBitsToDouble((bits & MANTISSA_MASK) | ONE_BITS);
+        if (m > SQRT2) {
+            m *= 0.5;
+            exponent++;
+        }
+        // ln m = 2 atanh(s) with |s| <= 3 - 2 sqrt(2) < 0.172
+        double s = (m - 1.0) / (m + 1.0);
+        double s2 = s * s;
+        double series = 1.0 + s2 * (1.0 / 3 + s2 * (1.0 / 5 + s2 * (1.0 / 7 + s2 * (1.0 / 9 + s2 * (1.0 / 11)))));
+        return exponent * LN2_HI + (2.0 * s * series + exponent * LN2_LO);
+    }
+    
+    /**
+     * Base-10 logarithm, absolute error below 1e-10
+     * @param x The argument
+     * @return The logarithm ({@code double}), NaN below zero and -infinity at zero
+     */
+    public static double log10(double x) {
+        return ln(x) * INV_LN10;
+    }
+    
+    /**
+     * Exponential, relative error below 1e-11
+     * @param x The exponent
+     * @return {@code e^x} ({@code double})
+     */
+    public static double exp(double x) {
+        if (!(Math.abs(x) <= 700.0)) return Math.exp(x);
+        double k = Math.rint(x * INV_LN2);
+        // |r| <= ln(2)/2
+        double r = x - k * LN2_HI - k * LN2_LO;
+        double p = 1.0 + r * (1.0 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120
+            + r * (1.0 / 720 + r * (1.0 / 5040 + r * (1.0 / 40320 + r * (1.0 / 362880)))))))));
+        // |k| <= 1010, so 2^k is a normal double built from its exponent bits
+        return p * Double.longBitsToDouble((long) ((int) k + 1023) << 52);
+    }
+    
+    /**
+     * Power {@code a^b}. Integer exponents up to 64 are evaluated by repeated
+     * squaring, relative error a few ulps; other exponents use {@link Math#pow},
+     * which {@code exp(b ln a)} measured no faster than
+     * @param a The base
+     * @param b The exponent
+     * @return {@code a^b} ({@code double})
+     */
+    public static double pow(double a, double b) {
+        if (!(b == Math.rint(b) && Math.abs(b) <= MAX_INTEGER_POWER)) return Math.pow(a, b);
+        int n = (int) Math.abs(b);
+        double result = 1.0;
+        double square = a;
+        while (n > 0) {
+            if ((n & 1) != 0) result *= square;
+            square *= square;
+            n >>= 1;
+        }
+        return b < 0 ? 1.0 / result : result;
+    }
+    
+    /**
+     * Sine on [-pi/4, pi/4] by its Taylor series up to x^9 (error below x^11/11!)
+     */
+    private static double sinReduced(double r) {
+        double r2 = r * r;
+        return r + r * r2 * (-1.0 / 6 + r2 * (1.0 / 120 + r2 * (-1.0 / 5040 + r2 * (1.0 / 362880))));
+    }
+    
+    /**
+     * Cosine on [-pi/4, pi/4] by its Taylor series up to x^10 (error below x^12/12!)
+     */
+    private static double cosReduced(double r) {
+        double r2 = r * r;
+        return 1.0 + r2 * (-0.5 + r2 * (1.0 / 24 + r2 * (-1.0 / 720 + r2 * (1.0 / 40320 + r2 * (-1.0 / 3628800)))));
+    }
+}
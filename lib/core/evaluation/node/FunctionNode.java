@@ -0,0 +1,64 @@
+package lib.core.evaluation.node;
+
+/**
+ * Application of a built-in math function (e.g. {@code sin(x)})
+ */
+public class FunctionNode extends ExpressionNode {
+    
+    private final MathFunction function;
+    private final ExpressionNode argument;
+    
+    /**
+     * Create a function application node
+     * @param function The built-in function
+     * @param argument The argument sub-expression
+     */
+    public FunctionNode(MathFunction function, ExpressionNode argument) {
+        this.function = function;
+        this.argument = argument;
+    }
+    
+    public MathFunction getFunction() {
+        return function;
+    }
+    
+    public ExpressionNode getArgument() {
+        return argument;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return function.apply(argument.evaluate(x));
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return function.apply(argument.evaluateDual(x));
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return function.apply(argument.evaluateInterval(x));
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        argument.evaluateDoubleDouble(xHi, xLo, out);
+        function.apply(out[0], out[1], out);
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        // Transcendental functions have no vector form: apply them per sample
+        argument.evaluate(xs, out, length, frame);
+        if (frame.isFastMath()) {
+            for (int i = 0; i < length; i++) {
+                out[i] = function.applyFast(out[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            out[i] = function.apply(out[i]);
+        }
+    }
+}
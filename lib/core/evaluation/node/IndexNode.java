@@ -0,0 +1,62 @@
+package lib.core.evaluation.node;
+
+import java.util.Arrays;
+
+/**
+ * The index variable of a sum or product (e.g. {@code k} in
+ * {@code sum(k, 1, n, sin(k*x)/k)}), bound by its {@link ReductionNode}.
+ * The bound value lives in a per-thread cell, so the same tree can be
+ * evaluated by several threads, and by the parallel tasks of a large sum, at once.
+ */
+public class IndexNode extends ExpressionNode {
+    
+    private final String name;
+    private final ThreadLocal<double[]> value = ThreadLocal.withInitial(() -> new double[1]);
+    
+    /**
+     * Create an index variable node
+     * @param name Name of the index as written in the expression
+     */
+    public IndexNode(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Get the cell holding the current thread's value of the index, written
+     * by the reduction binding it
+     */
+    double[] cell() {
+        return value.get();
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return value.get()[0];
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return DualNumber.constant(value.get()[0]);
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return Interval.point(value.get()[0]);
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        // Indices are integers, exact in a double
+        out[0] = value.get()[0];
+        out[1] = 0.0;
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        Arrays.fill(out, 0, length, value.get()[0]);
+    }
+}
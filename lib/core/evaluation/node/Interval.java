@@ -0,0 +1,280 @@
+package lib.core.evaluation.node;
+
+/**
+ * A closed range of values {@code [lo, hi]}, used to bound an expression over
+ * a whole range of {@code x} at once (interval arithmetic).
+ * Every operation returns an enclosure: each value the exact expression takes
+ * for an input in the range lies inside the result, where it is defined.
+ * Bounds are rounded outward by one ulp to cover floating-point rounding.
+ * The empty interval stands for "undefined over the whole range" (e.g.
+ * {@code sqrt} of negative values); its bounds are NaN.
+ */
+public final class Interval {
+    
+    public static final Interval EMPTY = new Interval(Double.NaN, Double.NaN);
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    
+    private static final Interval UNIT = new Interval(-1.0, 1.0);
+    private static final Interval ONE = new Interval(1.0, 1.0);
+    private static final double TWO_PI = 2.0 * Math.PI;
+    private static final double HALF_PI = Math.PI / 2.0;
+    // Relative slack when locating extrema of periodic functions, which keeps
+    // the rounding of multiples of pi from skipping a peak
+    private static final double PERIOD_TOLERANCE = 1e-12;
+    
+    private final double lo;
+    private final double hi;
+    
+    /**
+     * Create an interval
+     * @param lo Lower bound
+     * @param hi Upper bound, not below {@code lo}
+     */
+    public Interval(double lo, double hi) {
+        this.lo = lo;
+        this.hi = hi;
+    }
+    
+    /**
+     * Create the interval holding a single value
+     * @param value The value
+     */
+    public static Interval point(double value) {
+        return new Interval(value, value);
+    }
+    
+    public double getLo() {
+        return lo;
+    }
+    
+    public double getHi() {
+        return hi;
+    }
+    
+    /**
+     * Check if the expression is undefined over the whole range
+     */
+    public boolean isEmpty() {
+        return Double.isNaN(lo);
+    }
+    
+    /**
+     * Check if a value lies inside the interval
+     * @param value The value to check
+     * @return true if {@code lo <= value <= hi}
+     */
+    public boolean contains(double value) {
+        return lo <= value && value <= hi;
+    }
+    
+    /**
+     * Check if the interval lies entirely outside {@code [min, max]}
+     * @param min Lower limit
+     * @param max Upper limit
+     * @return true if empty, or entirely below {@code min} or above {@code max}
+     */
+    public boolean isOutside(double min, double max) {
+        return isEmpty() || hi < min || lo > max;
+    }
+    
+    @Override
+    public String toString() {
+        return isEmpty() ? "[empty]" : "[" + lo + ", " + hi + "]";
+    }
+    
+    // ===== Arithmetic =====
+    
+    public Interval negate() {
+        return isEmpty() ? EMPTY : new Interval(-hi, -lo);
+    }
+    
+    public Interval add(Interval other) {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+        return outward(lo + other.lo, hi + other.hi);
+    }
+    
+    public Interval subtract(Interval other) {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+        return outward(lo - other.hi, hi - other.lo);
+    }
+    
+    public Interval multiply(Interval other) {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+        return hull(lo * other.lo, lo * other.hi, hi * other.lo, hi * other.hi);
+    }
+    
+    public Interval divide(Interval other) {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+        // A divisor reaching zero makes the quotient unbounded. That includes
+        // [0, 0]: the scalar quotient is infinite there, not undefined, and
+        // may well turn finite again (1/(1/a) at a = 0 gives 0)
+        if (other.contains(0.0)) return ENTIRE;
+        return hull(lo / other.lo, lo / other.hi, hi / other.lo, hi / other.hi);
+    }
+    
+    public Interval pow(Interval exponent) {
+        if (isEmpty() || exponent.isEmpty()) return EMPTY;
+        
+        double n = exponent.lo;
+        if (n == exponent.hi && n == Math.rint(n) && Math.abs(n) < 0x1p53) {
+            return powInteger(n);
+        }
+        
+        Interval base = this;
+        if (lo < 0.0) {
+            if (exponent.lo != exponent.hi) {
+                // Negative bases have real powers at integer exponents only
+                return ENTIRE;
+            }
+            // A fixed fractional exponent is undefined for negative bases
+            if (hi < 0.0) return EMPTY;
+            base = new Interval(0.0, hi);
+        }
+        // x^y is monotonic in each argument for x >= 0, so the corners bound it
+        return hull(Math.pow(base.lo, exponent.lo), Math.pow(base.lo, exponent.hi),
+                    Math.pow(base.hi, exponent.lo), Math.pow(base.hi, exponent.hi));
+    }
+    
+    private Interval powInteger(double n) {
+        if (n == 0.0) return ONE;
+        if (n < 0.0) return ONE.divide(powInteger(-n));
+        
+        double a = Math.pow(lo, n);
+        double b = Math.pow(hi, n);
+        boolean even = n % 2.0 == 0.0;
+        if (!even || lo >= 0.0) return outward(a, b);
+        if (hi <= 0.0) return outward(b, a);
+        return outward(0.0, Math.max(a, b));
+    }
+    
+    /**
+     * Enclosure of {@code min(a, b)}, which is increasing in both operands
+     */
+    public Interval min(Interval other) {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+        return new Interval(Math.min(lo, other.lo), Math.min(hi, other.hi));
+    }
+    
+    /**
+     * Enclosure of {@code max(a, b)}, which is increasing in both operands
+     */
+    public Interval max(Interval other) {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+        return new Interval(Math.max(lo, other.lo), Math.max(hi, other.hi));
+    }
+    
+    /**
+     * Smallest interval holding both intervals, e.g. the two branches of a
+     * condition that holds on part of the range only
+     */
+    public Interval union(Interval other) {
+        if (isEmpty()) return other;
+        if (other.isEmpty()) return this;
+        return new Interval(Math.min(lo, other.lo), Math.max(hi, other.hi));
+    }
+    
+    // ===== Functions =====
+    
+    public Interval sqrt() {
+        if (isEmpty() || hi < 0.0) return EMPTY;
+        return outward(Math.sqrt(Math.max(lo, 0.0)), Math.sqrt(hi));
+    }
+    
+    public Interval abs() {
+        if (isEmpty()) return EMPTY;
+        if (lo >= 0.0) return this;
+        if (hi <= 0.0) return negate();
+        return new Interval(0.0, Math.max(-lo, hi));
+    }
+    
+    /**
+     * Enclosure of a logarithm, which is increasing on its domain {@code x > 0}
+     */
+    public Interval log(boolean natural) {
+        if (isEmpty() || hi <= 0.0) return EMPTY;
+        double low = lo <= 0.0 ? Double.NEGATIVE_INFINITY : (natural ? Math.log(lo) : Math.log10(lo));
+        double high = natural ? Math.log(hi) : Math.log10(hi);
+        return outward(low, high);
+    }
+    
+    public Interval exp() {
+        if (isEmpty()) return EMPTY;
+        // exp is positive, so widening may not cross zero
+        return new Interval(Math.max(0.0, Math.nextDown(Math.exp(lo))), Math.nextUp(Math.exp(hi)));
+    }
+    
+    /**
+     * Enclosure of {@code floor}, {@code ceil} and {@code sign}: increasing
+     * steps with exact integer values, so the endpoint values bound them
+     */
+    public Interval floor() {
+        return isEmpty() ? EMPTY : new Interval(Math.floor(lo), Math.floor(hi));
+    }
+    
+    public Interval ceil() {
+        return isEmpty() ? EMPTY : new Interval(Math.ceil(lo), Math.ceil(hi));
+    }
+    
+    public Interval sign() {
+        return isEmpty() ? EMPTY : new Interval(Math.signum(lo), Math.signum(hi));
+    }
+    
+    public Interval sin() {
+        return periodic(true);
+    }
+    
+    public Interval cos() {
+        return periodic(false);
+    }
+    
+    public Interval tan() {
+        if (isEmpty()) return EMPTY;
+        // tan is increasing between its poles at pi/2 + k*pi
+        if (!(hi - lo < Math.PI) || reaches(HALF_PI, Math.PI)) return ENTIRE;
+        return outward(Math.tan(lo), Math.tan(hi));
+    }
+    
+    /**
+     * Enclosure of sin or cos: the endpoint values, widened to 1 or -1 when
+     * a maximum or minimum lies inside the range
+     */
+    private Interval periodic(boolean sine) {
+        if (isEmpty()) return EMPTY;
+        if (!(hi - lo < TWO_PI)) return UNIT;
+        
+        double a = sine ? Math.sin(lo) : Math.cos(lo);
+        double b = sine ? Math.sin(hi) : Math.cos(hi);
+        double maxPhase = sine ? HALF_PI : 0.0;
+        double min = reaches(maxPhase + Math.PI, TWO_PI) ? -1.0 : Math.max(-1.0, Math.nextDown(Math.min(a, b)));
+        double max = reaches(maxPhase, TWO_PI) ? 1.0 : Math.min(1.0, Math.nextUp(Math.max(a, b)));
+        return new Interval(min, max);
+    }
+    
+    /**
+     * Check if the interval (with some slack) contains a point {@code phase + k * period}
+     */
+    private boolean reaches(double phase, double period) {
+        double slack = PERIOD_TOLERANCE * Math.max(1.0, Math.max(Math.abs(lo), Math.abs(hi)));
+        double k = Math.ceil((lo - slack - phase) / period);
+        return phase + k * period <= hi + slack;
+    }
+    
+    /**
+     * Build {@code [lo, hi]} widened by one ulp on each side
+     */
+    private static Interval outward(double lo, double hi) {
+        if (Double.isNaN(lo) || Double.isNaN(hi)) return ENTIRE;
+        return new Interval(Math.nextDown(lo), Math.nextUp(hi));
+    }
+    
+    /**
+     * Build the smallest interval holding four values, widened by one ulp
+     */
+    private static Interval hull(double a, double b, double c, double d) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d)) {
+            // e.g. 0 * infinity: nothing can be said
+            return ENTIRE;
+        }
+        return outward(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+    }
+}
@@ -0,0 +1,184 @@
+package lib.core.evaluation.node;
+
+/**
+ * Built-in single-argument math functions supported in expressions
+ */
+public enum MathFunction {
+    SQRT("sqrt"),
+    SIN("sin"),
+    COS("cos"),
+    TAN("tan"),
+    LOG("log"),
+    LN("ln"),
+    ABS("abs"),
+    EXP("exp"),
+    FLOOR("floor"),
+    CEIL("ceil"),
+    SIGN("sign");
+    
+    private final String functionName;
+    
+    MathFunction(String functionName) {
+        this.functionName = functionName;
+    }
+    
+    /**
+     * Get the function name as written in expressions
+     */
+    public String getFunctionName() {
+        return functionName;
+    }
+    
+    /**
+     * Apply the function to a value
+     * @param x The argument
+     * @return The result ({@code double})
+     */
+    public double apply(double x) {
+        switch (this) {
+            case SQRT: return Math.sqrt(x);
+            case SIN: return Math.sin(x);
+            case COS: return Math.cos(x);
+            case TAN: return Math.tan(x);
+            case LOG: return Math.log10(x);
+            case LN: return Math.log(x);
+            case ABS: return Math.abs(x);
+            case EXP: return Math.exp(x);
+            case FLOOR: return Math.floor(x);
+            case CEIL: return Math.ceil(x);
+            case SIGN: return Math.signum(x);
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Check if {@link FastMath} approximates the function, i.e. it is
+     * transcendental rather than a single instruction
+     */
+    public boolean isTranscendental() {
+        switch (this) {
+            case SIN:
+            case COS:
+            case TAN:
+            case LOG:
+            case LN:
+            case EXP:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Apply the function with the {@link FastMath} approximations, for preview frames
+     * @param x The argument
+     * @return The approximate result ({@code double})
+     */
+    public double applyFast(double x) {
+        switch (this) {
+            case SIN: return FastMath.sin(x);
+            case COS: return FastMath.cos(x);
+            case TAN: return FastMath.tan(x);
+            case LOG: return FastMath.log10(x);
+            case LN: return FastMath.ln(x);
+            case EXP: return FastMath.exp(x);
+            default: return apply(x);
+        }
+    }
+    
+    /**
+     * Apply the function to a value and propagate its derivative (chain rule)
+     * @param x The argument and its derivative
+     * @return The result and its derivative ({@link DualNumber})
+     */
+    public DualNumber apply(DualNumber x) {
+        double value = x.getValue();
+        return new DualNumber(apply(value), derivative(value) * x.getDerivative());
+    }
+    
+    /**
+     * Bound the function over a range of arguments
+     * @param x The range of the argument
+     * @return An enclosure of the function values over the range ({@link Interval})
+     */
+    public Interval apply(Interval x) {
+        switch (this) {
+            case SQRT: return x.sqrt();
+            case SIN: return x.sin();
+            case COS: return x.cos();
+            case TAN: return x.tan();
+            case LOG: return x.log(false);
+            case LN: return x.log(true);
+            case ABS: return x.abs();
+            case EXP: return x.exp();
+            case FLOOR: return x.floor();
+            case CEIL: return x.ceil();
+            case SIGN: return x.sign();
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Apply the function in double-double precision
+     * @param hi High part of the argument
+     * @param lo Low part of the argument
+     * @param out Receives the high and low parts of the result
+     */
+    public void apply(double hi, double lo, double[] out) {
+        switch (this) {
+            case SQRT: DoubleDouble.sqrt(hi, lo, out); break;
+            case SIN: DoubleDouble.sin(hi, lo, out); break;
+            case COS: DoubleDouble.cos(hi, lo, out); break;
+            case TAN: DoubleDouble.tan(hi, lo, out); break;
+            case LOG: DoubleDouble.log10(hi, lo, out); break;
+            case LN: DoubleDouble.ln(hi, lo, out); break;
+            case ABS: DoubleDouble.abs(hi, lo, out); break;
+            case EXP: DoubleDouble.exp(hi, lo, out); break;
+            case FLOOR: DoubleDouble.floor(hi, lo, out); break;
+            case CEIL: DoubleDouble.ceil(hi, lo, out); break;
+            case SIGN: DoubleDouble.sign(hi, lo, out); break;
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Get the derivative of the function at a value
+     * @param x The argument
+     * @return The derivative ({@code double}), NaN outside the domain
+     */
+    public double derivative(double x) {
+        switch (this) {
+            case SQRT: return 0.5 / Math.sqrt(x);
+            case SIN: return Math.cos(x);
+            case COS: return -Math.sin(x);
+            case TAN: {
+                double cos = Math.cos(x);
+                return 1.0 / (cos * cos);
+            }
+            case LOG: return 1.0 / (x * Math.log(10.0));
+            case LN: return 1.0 / x;
+            case ABS: return Math.signum(x);
+            case EXP: return Math.exp(x);
+            // Steps: flat everywhere except at the jumps, where the plot breaks anyway
+            case FLOOR:
+            case CEIL:
+            case SIGN:
+                return Double.isNaN(x) ? x : 0.0;
+            default: throw new AssertionError(this);
+        }
+    }
+    
+    /**
+     * Look up a built-in function by name
+     * @param name The function name (lowercase)
+     * @return The matching function, or {@code null} if there is none
+     */
+    public static MathFunction fromName(String name) {
+        for (MathFunction function : values()) {
+            if (function.functionName.equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+package lib.core.evaluation.node;
+
+/**
+ * Unary minus applied to a sub-expression
+ */
+public class NegateNode extends ExpressionNode {
+    
+    private final ExpressionNode operand;
+    
+    /**
+     * Create a negation node
+     * @param operand The negated sub-expression
+     */
+    public NegateNode(ExpressionNode operand) {
+        this.operand = operand;
+    }
+    
+    /**
+     * Get the negated sub-expression
+     */
+    public ExpressionNode getOperand() {
+        return operand;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return -operand.evaluate(x);
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        DualNumber value = operand.evaluateDual(x);
+        return new DualNumber(-value.getValue(), -value.getDerivative());
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return operand.evaluateInterval(x).negate();
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        operand.evaluateDoubleDouble(xHi, xLo, out);
+        DoubleDouble.negate(out[0], out[1], out);
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        operand.evaluate(xs, out, length, frame);
+        for (int i = 0; i < length; i++) {
+            out[i] = -out[i];
+        }
+    }
+}
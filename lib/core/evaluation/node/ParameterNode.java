@@ -0,0 +1,65 @@
+package lib.core.evaluation.node;
+
+import lib.core.evaluation.ParameterTable;
+import java.util.Arrays;
+
+/**
+ * A reference to a parameter, read from its {@link ParameterTable} slot at
+ * evaluation time so that slider changes need no recompilation
+ */
+public class ParameterNode extends ExpressionNode {
+    
+    private final String name;
+    private final ParameterTable table;
+    private final int slot;
+    
+    /**
+     * Create a parameter reference node
+     * @param name Parameter name
+     * @param table Table holding the parameter value
+     * @param slot Slot of the parameter in the table
+     */
+    public ParameterNode(String name, ParameterTable table, int slot) {
+        this.name = name;
+        this.table = table;
+        this.slot = slot;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public ParameterTable getTable() {
+        return table;
+    }
+    
+    public int getSlot() {
+        return slot;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return table.get(slot);
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return DualNumber.constant(table.get(slot));
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return Interval.point(table.get(slot));
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        out[0] = table.get(slot);
+        out[1] = 0.0;
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        Arrays.fill(out, 0, length, table.get(slot));
+    }
+}
@@ -0,0 +1,194 @@
+package lib.core.evaluation.node;
+
+import lib.constants.MathConstants;
+import lib.core.evaluation.Dependencies;
+import lib.core.evaluation.ParameterTable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A sequence defined by a recurrence and base cases, e.g.
+ * {@code a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1}.
+ * Terms are computed iteratively, from the first base case (or index 0 if
+ * there is none) up to the requested index, into a memo table that grows on
+ * demand; references to earlier terms ({@link TermNode}) read the table, so
+ * every term is evaluated once however often the recurrence refers to it,
+ * and deep indices never recurse.
+ * The table is kept across evaluations and dropped only when a parameter the
+ * definition reads has changed value. The sequence is compiled against the
+ * current user functions and parameter slots, like any expression, and
+ * recompiled when those change.
+ */
+public class RecursiveSequence {
+    
+    private final String name;
+    private final String indexName;
+    private ExpressionNode recurrence;
+    // Index of the first term, stored at offset 0 of the memo table
+    private int first;
+    // Base case definitions by offset from the first term, null where the recurrence applies
+    private ExpressionNode[] baseCases;
+    private ParameterTable parameters;
+    // The parameters the definition reads, their slots and their values when the table was filled
+    private Set<String> readParameters;
+    private int[] slots;
+    private double[] readValues;
+    private double[] memo = new double[MathConstants.SEQUENCE_MEMO_CAPACITY];
+    private int count;
+    private long hits;
+    private long misses;
+    
+    /**
+     * Create a sequence, defined once its recurrence is parsed
+     * @param name Name of the sequence (lowercase)
+     * @param indexName Name of its index variable (lowercase)
+     */
+    public RecursiveSequence(String name, String indexName) {
+        this.name = name;
+        this.indexName = indexName;
+    }
+    
+    /**
+     * Set the definition of the sequence. The recurrence and base cases refer
+     * to the sequence itself, so they are parsed after it is created.
+     * @param recurrence The recurrence, with the index bound to the variable
+     * @param baseCases Definitions of the base case terms, by index
+     * @param parameters Parameters the definition reads its values from
+     */
+    public synchronized void define(ExpressionNode recurrence, Map<Integer, ExpressionNode> baseCases,
+                                    ParameterTable parameters) {
+        this.recurrence = recurrence;
+        this.first = baseCases.isEmpty() ? 0 : Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int index : baseCases.keySet()) {
+            first = Math.min(first, index);
+            last = Math.max(last, index);
+        }
+        this.baseCases = new ExpressionNode[baseCases.isEmpty() ? 0 : last - first + 1];
+        Set<String> read = new TreeSet<>(Dependencies.of(recurrence).getParameters());
+        for (Map.Entry<Integer, ExpressionNode> baseCase : baseCases.entrySet()) {
+            this.baseCases[baseCase.getKey() - first] = baseCase.getValue();
+            read.addAll(Dependencies.of(baseCase.getValue()).getParameters());
+        }
+        this.parameters = parameters;
+        this.readParameters = read;
+        this.slots = new int[read.size()];
+        int i = 0;
+        for (String parameter : read) {
+            slots[i++] = parameters.getSlot(parameter);
+        }
+        this.readValues = new double[slots.length];
+        this.count = 0;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    /**
+     * Get the index of the first term
+     */
+    public int getFirstIndex() {
+        return first;
+    }
+    
+    /**
+     * Check if the definition reads a parameter
+     * @param parameter Parameter name (lowercase)
+     * @return true if a change of the parameter's value changes the terms
+     */
+    public synchronized boolean readsParameter(String parameter) {
+        return readParameters.contains(parameter);
+    }
+    
+    /**
+     * Get a term of the sequence, computing the terms up to it that are not
+     * in the memo table yet
+     * @param n Index of the term, rounded to the nearest integer
+     * @return The term, or NaN before the first term, beyond
+     *         {@link MathConstants#MAX_SEQUENCE_TERMS} terms, or where the definition is undefined
+     */
+    public synchronized double term(double n) {
+        double offset = Math.rint(n) - first;
+        if (!(offset >= 0 && offset < MathConstants.MAX_SEQUENCE_TERMS)) return Double.NaN;
+        if (parametersChanged()) count = 0;
+        int target = (int) offset;
+        if (target < count) {
+            hits++;
+            return memo[target];
+        }
+        misses += target - count + 1;
+        if (target >= memo.length) {
+            int capacity = Math.max(target + 1, Math.min(2 * memo.length, MathConstants.MAX_SEQUENCE_TERMS));
+            memo = Arrays.copyOf(memo, capacity);
+        }
+        // In order, so that every term the recurrence refers to is already in the table
+        for (int i = count; i <= target; i++) {
+            ExpressionNode definition = i < baseCases.length && baseCases[i] != null ? baseCases[i] : recurrence;
+            memo[i] = definition.evaluate((double) first + i);
+            count = i + 1;
+        }
+        return memo[target];
+    }
+    
+    /**
+     * Read a term that is already in the memo table. Called by {@link TermNode}
+     * while {@link #term} fills the table, so the lock is held already.
+     * @param n Index of the term, rounded to the nearest integer
+     * @return The term, or NaN if it is not computed yet
+     */
+    double computed(double n) {
+        double offset = Math.rint(n) - first;
+        return offset >= 0 && offset < count ? memo[(int) offset] : Double.NaN;
+    }
+    
+    /**
+     * Compare the parameters the definition reads with their values when the
+     * table was filled, recording the current ones
+     * @return true if any of them changed since
+     */
+    private boolean parametersChanged() {
+        boolean changed = false;
+        for (int i = 0; i < slots.length; i++) {
+            double value = parameters.get(slots[i]);
+            if (Double.compare(value, readValues[i]) != 0) {
+                readValues[i] = value;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Get the number of terms in the memo table
+     */
+    public synchronized int getTermCount() {
+        return count;
+    }
+    
+    /**
+     * Get the number of terms read from the memo table
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Get the number of terms that had to be computed
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "RecursiveSequence[" + name + "(" + indexName + "), first=" + first + ", terms=" + count
+            + ", hits=" + hits + ", misses=" + misses + "]";
+    }
+}
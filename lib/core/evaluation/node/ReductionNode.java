@@ -0,0 +1,380 @@
+package lib.core.evaluation.node;
+
+import lib.constants.MathConstants;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A sum or product over an integer index: {@code sum(k, a, b, body)} adds
+ * and {@code prod(k, a, b, body)} multiplies {@code body} for {@code k}
+ * from {@code a} to {@code b}, both rounded to the nearest integer.
+ * An empty range gives 0 (sum) or 1 (product); undefined bounds, or more
+ * than {@link MathConstants#MAX_REDUCTION_TERMS} terms, give NaN.
+ *
+ * Column evaluation runs the index in the outer loop and the samples in the
+ * inner one, so every term is a vectorizable pass over the column. The
+ * column of partial results is kept, and when only the upper bound grew
+ * since the last evaluation of the same samples (a slider on {@code n} in a
+ * Fourier series) only the new terms are evaluated. Large reductions are
+ * split into ranges of the index reduced in parallel.
+ */
+public class ReductionNode extends ExpressionNode {
+    
+    private final BinaryOperator operator;
+    private final IndexNode index;
+    private final ExpressionNode from;
+    private final ExpressionNode to;
+    private final ExpressionNode body;
+    private final double identity;
+    // Parameters the body reads, whose values the partial results depend on
+    private final ParameterNode[] bodyParameters;
+    // Bodies reading the index of an enclosing reduction change with it, so nothing is kept
+    private final boolean reusable;
+    private volatile PartialColumn partial;
+    
+    /**
+     * Create a sum or product node
+     * @param operator {@link BinaryOperator#ADD} for a sum, {@link BinaryOperator#MULTIPLY} for a product
+     * @param index The index variable, bound in the body
+     * @param from First value of the index
+     * @param to Last value of the index
+     * @param body The term for each value of the index
+     */
+    public ReductionNode(BinaryOperator operator, IndexNode index, ExpressionNode from, ExpressionNode to,
+                         ExpressionNode body) {
+        this.operator = operator;
+        this.index = index;
+        this.from = from;
+        this.to = to;
+        this.body = body;
+        this.identity = operator == BinaryOperator.MULTIPLY ? 1.0 : 0.0;
+        List<ParameterNode> parameters = new ArrayList<>();
+        this.reusable = collectParameters(body, parameters, new IdentityHashMap<>());
+        this.bodyParameters = parameters.toArray(new ParameterNode[0]);
+    }
+    
+    public BinaryOperator getOperator() {
+        return operator;
+    }
+    
+    public IndexNode getIndex() {
+        return index;
+    }
+    
+    public ExpressionNode getFrom() {
+        return from;
+    }
+    
+    public ExpressionNode getTo() {
+        return to;
+    }
+    
+    public ExpressionNode getBody() {
+        return body;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        double first = Math.rint(from.evaluate(x));
+        double last = Math.rint(to.evaluate(x));
+        if (!(last - first < MathConstants.MAX_REDUCTION_TERMS)) return Double.NaN;
+        if (last - first >= MathConstants.PARALLEL_REDUCTION_MIN_WORK) {
+            double[] out = ForkJoinPool.commonPool().invoke(new RangeTask(new double[] { x }, 1, first, last, false));
+            return out[0];
+        }
+        double[] cell = index.cell();
+        double saved = cell[0];
+        double result = identity;
+        for (double k = first; k <= last; k++) {
+            cell[0] = k;
+            result = operator.apply(result, body.evaluate(x));
+        }
+        cell[0] = saved;
+        return result;
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        double first = Math.rint(from.evaluate(x.getValue()));
+        double last = Math.rint(to.evaluate(x.getValue()));
+        if (!(last - first < MathConstants.MAX_REDUCTION_TERMS)) return DualNumber.constant(Double.NaN);
+        // The bounds only change the number of terms, which is flat between its jumps
+        double[] cell = index.cell();
+        double saved = cell[0];
+        DualNumber result = DualNumber.constant(identity);
+        for (double k = first; k <= last; k++) {
+            cell[0] = k;
+            result = operator.apply(result, body.evaluateDual(x));
+        }
+        cell[0] = saved;
+        return result;
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        Interval firsts = from.evaluateInterval(x);
+        Interval lasts = to.evaluateInterval(x);
+        if (firsts.isEmpty() || lasts.isEmpty()) return Interval.EMPTY;
+        double first = Math.rint(firsts.getLo());
+        double last = Math.rint(lasts.getLo());
+        if (first != Math.rint(firsts.getHi()) || last != Math.rint(lasts.getHi())) {
+            // The number of terms changes across the range
+            return Interval.ENTIRE;
+        }
+        if (!(last - first < MathConstants.MAX_REDUCTION_TERMS)) return Interval.EMPTY;
+        double[] cell = index.cell();
+        double saved = cell[0];
+        Interval result = Interval.point(identity);
+        for (double k = first; k <= last; k++) {
+            cell[0] = k;
+            result = operator.apply(result, body.evaluateInterval(x));
+        }
+        cell[0] = saved;
+        return result;
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        from.evaluateDoubleDouble(xHi, xLo, out);
+        double first = Math.rint(out[0] + out[1]);
+        to.evaluateDoubleDouble(xHi, xLo, out);
+        double last = Math.rint(out[0] + out[1]);
+        if (!(last - first < MathConstants.MAX_REDUCTION_TERMS)) {
+            out[0] = Double.NaN;
+            out[1] = Double.NaN;
+            return;
+        }
+        double[] cell = index.cell();
+        double saved = cell[0];
+        double resultHi = identity;
+        double resultLo = 0.0;
+        for (double k = first; k <= last; k++) {
+            cell[0] = k;
+            body.evaluateDoubleDouble(xHi, xLo, out);
+            operator.apply(resultHi, resultLo, out[0], out[1], out);
+            resultHi = out[0];
+            resultLo = out[1];
+        }
+        cell[0] = saved;
+        out[0] = resultHi;
+        out[1] = resultLo;
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        if (length == 0) return;
+        double[] firsts = new double[length];
+        double[] lasts = new double[length];
+        from.evaluate(xs, firsts, length, frame);
+        to.evaluate(xs, lasts, length, frame);
+        if (!isUniform(firsts, length) || !isUniform(lasts, length)) {
+            // Bounds depending on x give every sample its own range
+            for (int i = 0; i < length; i++) {
+                out[i] = evaluate(xs[i]);
+            }
+            return;
+        }
+        double first = Math.rint(firsts[0]);
+        double last = Math.rint(lasts[0]);
+        if (!(last - first < MathConstants.MAX_REDUCTION_TERMS)) {
+            Arrays.fill(out, 0, length, Double.NaN);
+            return;
+        }
+        
+        double[] parameters = reusable ? readParameters() : null;
+        PartialColumn previous = partial;
+        double next = first;
+        if (previous != null && previous.isPrefixOf(xs, length, first, last, frame.isFastMath(), parameters)) {
+            System.arraycopy(previous.values, 0, out, 0, length);
+            next = previous.last + 1;
+        } else {
+            Arrays.fill(out, 0, length, identity);
+        }
+        
+        if (next <= last) {
+            if ((last - next + 1) * length >= MathConstants.PARALLEL_REDUCTION_MIN_WORK) {
+                double[] terms = ForkJoinPool.commonPool().invoke(
+                    new RangeTask(xs, length, next, last, frame.isFastMath()));
+                operator.apply(out, terms, length);
+            } else {
+                accumulate(xs, out, length, next, last, frame);
+            }
+        }
+        if (reusable) {
+            partial = new PartialColumn(Arrays.copyOf(xs, length), first, last, frame.isFastMath(), parameters,
+                Arrays.copyOf(out, length));
+        }
+    }
+    
+    /**
+     * Combine the terms of a range of the index into a column, one pass over the samples per term
+     * @param xs The values bound to {@code x}
+     * @param out Column holding the partial results, updated in place
+     * @param length Number of samples
+     * @param first First value of the index
+     * @param last Last value of the index
+     * @param frame Frame of the current evaluation
+     */
+    private void accumulate(double[] xs, double[] out, int length, double first, double last, ColumnFrame frame) {
+        double[] cell = index.cell();
+        double saved = cell[0];
+        double[] terms = new double[length];
+        for (double k = first; k <= last; k++) {
+            cell[0] = k;
+            // Shared subexpressions of the body never read the index, so their columns are computed once
+            body.evaluate(xs, terms, length, frame);
+            operator.apply(out, terms, length);
+        }
+        cell[0] = saved;
+    }
+    
+    /**
+     * Read the current values of the parameters the body reads
+     */
+    private double[] readParameters() {
+        double[] values = new double[bodyParameters.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = bodyParameters[i].evaluate(0.0);
+        }
+        return values;
+    }
+    
+    private static boolean isUniform(double[] column, int length) {
+        for (int i = 1; i < length; i++) {
+            if (Double.compare(column[i], column[0]) != 0) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Collect the parameters a body reads, including through the user functions it calls
+     * @return false if the body reads the index of an enclosing reduction
+     */
+    private boolean collectParameters(ExpressionNode node, List<ParameterNode> parameters,
+                                      Map<ExpressionNode, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) return true;
+        if (node instanceof ParameterNode) {
+            parameters.add((ParameterNode) node);
+            return true;
+        }
+        if (node instanceof IndexNode) return node == index;
+        if (node instanceof NegateNode) return collectParameters(((NegateNode) node).getOperand(), parameters, visited);
+        if (node instanceof FunctionNode) {
+            return collectParameters(((FunctionNode) node).getArgument(), parameters, visited);
+        }
+        if (node instanceof SharedNode) return collectParameters(((SharedNode) node).getValue(), parameters, visited);
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            return collectParameters(call.getArgument(), parameters, visited)
+                & collectParameters(call.getBody(), parameters, visited);
+        }
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            return collectParameters(binary.getLeft(), parameters, visited)
+                & collectParameters(binary.getRight(), parameters, visited);
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            return collectParameters(conditional.getLeft(), parameters, visited)
+                & collectParameters(conditional.getRight(), parameters, visited)
+                & collectParameters(conditional.getWhenTrue(), parameters, visited)
+                & collectParameters(conditional.getWhenFalse(), parameters, visited);
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            // A nested reduction binds its own index, which is not foreign here
+            boolean bounds = collectParameters(reduction.from, parameters, visited)
+                & collectParameters(reduction.to, parameters, visited);
+            visited.put(reduction.index, Boolean.TRUE);
+            return bounds & collectParameters(reduction.body, parameters, visited);
+        }
+        return true;
+    }
+    
+    /**
+     * Partial results of the last column evaluation, for the index from
+     * {@code first} to {@code last}
+     */
+    private static final class PartialColumn {
+        private final double[] xs;
+        private final double first;
+        private final double last;
+        private final boolean fastMath;
+        private final double[] parameters;
+        private final double[] values;
+        
+        PartialColumn(double[] xs, double first, double last, boolean fastMath, double[] parameters,
+                      double[] values) {
+            this.xs = xs;
+            this.first = first;
+            this.last = last;
+            this.fastMath = fastMath;
+            this.parameters = parameters;
+            this.values = values;
+        }
+        
+        /**
+         * Check if these results are the first terms of an evaluation of the
+         * same samples, with the same parameter values
+         */
+        boolean isPrefixOf(double[] xs, int length, double first, double last, boolean fastMath, double[] parameters) {
+            return first == this.first && last >= this.last && fastMath == this.fastMath
+                && Arrays.equals(parameters, this.parameters)
+                && Arrays.equals(xs, 0, length, this.xs, 0, this.xs.length);
+        }
+    }
+    
+    /**
+     * Reduction of a range of the index over a column, split in halves until
+     * each part is small enough to run on one thread. Each part has its own
+     * frame: frames are not thread-safe.
+     */
+    private final class RangeTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        private final double[] xs;
+        private final int length;
+        private final double first;
+        private final double last;
+        private final boolean fastMath;
+        
+        RangeTask(double[] xs, int length, double first, double last, boolean fastMath) {
+            this.xs = xs;
+            this.length = length;
+            this.first = first;
+            this.last = last;
+            this.fastMath = fastMath;
+        }
+        
+        @Override
+        protected double[] compute() {
+            if (last > first && (last - first + 1) * length > MathConstants.PARALLEL_REDUCTION_MIN_WORK) {
+                double middle = Math.floor((first + last) / 2);
+                RangeTask upper = new RangeTask(xs, length, middle + 1, last, fastMath);
+                upper.fork();
+                double[] result = new RangeTask(xs, length, first, middle, fastMath).compute();
+                operator.apply(result, upper.join(), length);
+                return result;
+            }
+            double[] result = new double[length];
+            Arrays.fill(result, identity);
+            if (length == 1) {
+                // A single sample: no column passes to amortize
+                double[] cell = index.cell();
+                double saved = cell[0];
+                for (double k = first; k <= last; k++) {
+                    cell[0] = k;
+                    result[0] = operator.apply(result[0], body.evaluate(xs[0]));
+                }
+                cell[0] = saved;
+            } else {
+                accumulate(xs, result, length, first, last, new ColumnFrame(fastMath));
+            }
+            return result;
+        }
+    }
+}
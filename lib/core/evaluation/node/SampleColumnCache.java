@@ -0,0 +1,157 @@
+package lib.core.evaluation.node;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Columns of user function calls shared between the curves of a frame.
+ * Curves sampled on the same grid ({@code start + i * step}) that call the
+ * same user function on {@code x} (e.g. {@code 2*f(x)} and {@code f(x)+g(x)})
+ * evaluate its body once per sample: the first curve fills the column, the
+ * others read it. A function called by a single curve is not worth a
+ * column: {@link #request} tells callers when sharing starts to pay off.
+ * The cache is keyed by the evaluation context version, the grid and the
+ * evaluation mode, and starts over as soon as any of them changes, so it
+ * never holds more than one frame. Curves are sampled one at a time, but
+ * the ranges of a large column may be evaluated in parallel: they fill
+ * distinct samples, so only the column table and the counters are guarded.
+ */
+public class SampleColumnCache {
+    
+    private final Map<String, Column> columns = new HashMap<>();
+    private final Set<String> requested = new HashSet<>();
+    private long version = -1;
+    private double start;
+    private double step;
+    private int size;
+    private boolean fastMath;
+    private long hits;
+    private long misses;
+    
+    /**
+     * Select the frame the next evaluations belong to, dropping every column
+     * if it differs from the current one
+     * @param version Version of the evaluation context
+     * @param start First sample position of the grid
+     * @param step Distance between grid samples
+     * @param size Number of grid samples
+     * @param fastMath true if the columns are computed with {@link FastMath}
+     */
+    public void prepare(long version, double start, double step, int size, boolean fastMath) {
+        if (version == this.version && start == this.start && step == this.step
+            && size == this.size && fastMath == this.fastMath) {
+            return;
+        }
+        columns.clear();
+        requested.clear();
+        this.version = version;
+        this.start = start;
+        this.step = step;
+        this.size = size;
+        this.fastMath = fastMath;
+    }
+    
+    /**
+     * Record that a curve of the frame calls the given functions on {@code x}
+     * @param functions Names of the user functions
+     * @return true if an earlier curve of the frame called one of them too
+     */
+    public boolean request(Set<String> functions) {
+        boolean shared = false;
+        for (String function : functions) {
+            shared |= !requested.add(function);
+        }
+        return shared;
+    }
+    
+    /**
+     * Evaluate a user function body on grid samples, computing only the
+     * samples no earlier curve of the frame computed
+     * @param function Name of the user function
+     * @param body Body of the user function
+     * @param indices Grid index of each sample
+     * @param xs Sample positions
+     * @param out Column receiving the results
+     * @param length Number of samples to evaluate
+     * @param frame Frame of the current evaluation
+     */
+    void evaluate(String function, ExpressionNode body, int[] indices, double[] xs, double[] out, int length,
+                  ColumnFrame frame) {
+        Column column;
+        synchronized (this) {
+            column = columns.computeIfAbsent(function, name -> new Column(size));
+        }
+        int[] missing = new int[length];
+        int missingCount = 0;
+        for (int i = 0; i < length; i++) {
+            int index = indices[i];
+            if (column.known[index]) {
+                out[i] = column.values[index];
+            } else {
+                missing[missingCount++] = i;
+            }
+        }
+        synchronized (this) {
+            hits += length - missingCount;
+            misses += missingCount;
+        }
+        if (missingCount == 0) return;
+        
+        double[] missingXs = new double[missingCount];
+        double[] values = new double[missingCount];
+        for (int i = 0; i < missingCount; i++) {
+            missingXs[i] = xs[missing[i]];
+        }
+        body.evaluate(missingXs, values, missingCount, frame);
+        for (int i = 0; i < missingCount; i++) {
+            int index = indices[missing[i]];
+            out[missing[i]] = values[i];
+            column.values[index] = values[i];
+            column.known[index] = true;
+        }
+    }
+    
+    /**
+     * Get the number of samples read from a column computed earlier
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Get the number of samples that had to be evaluated
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * Get the share of samples read from the cache
+     * @return The hit rate between 0 and 1, 0 before any lookup
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "SampleColumnCache[columns=" + columns.size() + ", grid=" + size
+            + ", hits=" + hits + ", misses=" + misses + ", hitRate=" + Math.round(1000 * getHitRate()) / 10.0 + "%]";
+    }
+    
+    /**
+     * Values of one user function over the grid, with the samples computed so far
+     */
+    private static final class Column {
+        private final double[] values;
+        private final boolean[] known;
+        
+        Column(int size) {
+            this.values = new double[size];
+            this.known = new boolean[size];
+        }
+    }
+}
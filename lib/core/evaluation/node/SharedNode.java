@@ -0,0 +1,54 @@
+package lib.core.evaluation.node;
+
+/**
+ * A common subexpression used by more than one parent (e.g. {@code sin(x)} in
+ * {@code sin(x)^2 + sin(x)}). Batch evaluation computes its column once per
+ * frame and the bytecode backend keeps its value in a local variable.
+ */
+public class SharedNode extends ExpressionNode {
+    
+    private final ExpressionNode value;
+    
+    /**
+     * Create a shared subexpression node
+     * @param value The shared subexpression
+     */
+    public SharedNode(ExpressionNode value) {
+        this.value = value;
+    }
+    
+    public ExpressionNode getValue() {
+        return value;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return value.evaluate(x);
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return value.evaluateDual(x);
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return value.evaluateInterval(x);
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        value.evaluateDoubleDouble(xHi, xLo, out);
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        double[] column = frame.get(this, xs);
+        if (column == null) {
+            column = new double[length];
+            value.evaluate(xs, column, length, frame);
+            frame.put(this, xs, column);
+        }
+        System.arraycopy(column, 0, out, 0, length);
+    }
+}
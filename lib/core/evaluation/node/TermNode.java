@@ -0,0 +1,59 @@
+package lib.core.evaluation.node;
+
+/**
+ * Reference to an earlier term of a recursive sequence within its own
+ * definition (e.g. {@code a(n-1)} in {@code a(n)=a(n-1)+a(n-2)}).
+ * Terms are computed in order into the sequence's memo table, so a
+ * reference is a lookup rather than a recursive evaluation; a term that is
+ * not computed yet (the term being defined or a later one) is undefined.
+ */
+public class TermNode extends ExpressionNode {
+    
+    private final RecursiveSequence sequence;
+    private final ExpressionNode argument;
+    
+    /**
+     * Create a sequence term node
+     * @param sequence The sequence whose term is referenced
+     * @param argument The index of the term, rounded to the nearest integer
+     */
+    public TermNode(RecursiveSequence sequence, ExpressionNode argument) {
+        this.sequence = sequence;
+        this.argument = argument;
+    }
+    
+    public RecursiveSequence getSequence() {
+        return sequence;
+    }
+    
+    public ExpressionNode getArgument() {
+        return argument;
+    }
+    
+    @Override
+    public double evaluate(double x) {
+        return sequence.computed(argument.evaluate(x));
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        // Terms are constant between integer indices
+        return DualNumber.constant(evaluate(x.getValue()));
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        Interval index = argument.evaluateInterval(x);
+        if (index.isEmpty()) return Interval.EMPTY;
+        if (Math.rint(index.getLo()) != Math.rint(index.getHi())) return Interval.ENTIRE;
+        double value = sequence.computed(index.getLo());
+        return Double.isNaN(value) ? Interval.EMPTY : Interval.point(value);
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        argument.evaluateDoubleDouble(xHi, xLo, out);
+        out[0] = sequence.computed(out[0] + out[1]);
+        out[1] = 0.0;
+    }
+}
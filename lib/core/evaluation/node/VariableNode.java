@@ -0,0 +1,33 @@
+package lib.core.evaluation.node;
+
+/**
+ * The free variable {@code x} of an expression
+ */
+public class VariableNode extends ExpressionNode {
+    
+    @Override
+    public double evaluate(double x) {
+        return x;
+    }
+    
+    @Override
+    public DualNumber evaluateDual(DualNumber x) {
+        return x;
+    }
+    
+    @Override
+    public Interval evaluateInterval(Interval x) {
+        return x;
+    }
+    
+    @Override
+    public void evaluateDoubleDouble(double xHi, double xLo, double[] out) {
+        out[0] = xHi;
+        out[1] = xLo;
+    }
+    
+    @Override
+    public void evaluate(double[] xs, double[] out, int length, ColumnFrame frame) {
+        System.arraycopy(xs, 0, out, 0, length);
+    }
+}
@@ -0,0 +1,239 @@
+package lib.core.evaluation.optimizer;
+
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.BinaryOperator;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.Comparison;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.ConstantNode;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.IndexNode;
+import lib.core.evaluation.node.MathFunction;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ParameterNode;
+import lib.core.evaluation.node.ReductionNode;
+import lib.core.evaluation.node.SharedNode;
+import lib.core.evaluation.node.VariableNode;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Builds the derivative of an expression tree with respect to {@code x}
+ * symbolically, so that {@code f'(x)} can be plotted at the cost of one
+ * evaluation per sample instead of by numeric differencing.
+ * 
+ * Subtrees that do not depend on {@code x} have a zero derivative, which is
+ * represented as {@code null} and dropped from sums and products as the
+ * result is built; the result is otherwise simplified by the
+ * {@link ExpressionOptimizer} when it is compiled.
+ * The derivative of a user function call is a call to the derivative of its
+ * body, which is built once however many times the function is called.
+ */
+public class Differentiator {
+    
+    private static final ExpressionNode ZERO = new ConstantNode(0.0);
+    private static final ExpressionNode ONE = new ConstantNode(1.0);
+    private static final ExpressionNode TWO = new ConstantNode(2.0);
+    private static final ExpressionNode LN_10 = new ConstantNode(Math.log(10.0));
+    
+    // Derivatives already built, so shared subtrees and call bodies are differentiated once
+    private final Map<ExpressionNode, ExpressionNode> derivatives = new IdentityHashMap<>();
+    
+    private Differentiator() {
+    }
+    
+    /**
+     * Differentiate an expression tree with respect to {@code x}
+     * @param root Root of the expression tree
+     * @return Root of the derivative tree ({@link ExpressionNode})
+     */
+    public static ExpressionNode differentiate(ExpressionNode root) {
+        ExpressionNode derivative = new Differentiator().derive(root);
+        return derivative != null ? derivative : new ConstantNode(0.0);
+    }
+    
+    /**
+     * Get the derivative of a node, or {@code null} if it does not depend on {@code x}
+     */
+    private ExpressionNode derive(ExpressionNode node) {
+        if (derivatives.containsKey(node)) return derivatives.get(node);
+        ExpressionNode derivative = deriveNode(node);
+        derivatives.put(node, derivative);
+        return derivative;
+    }
+    
+    private ExpressionNode deriveNode(ExpressionNode node) {
+        if (node instanceof ConstantNode || node instanceof ParameterNode || node instanceof IndexNode) {
+            return null;
+        }
+        if (node instanceof VariableNode) {
+            return ONE;
+        }
+        if (node instanceof NegateNode) {
+            return negate(derive(((NegateNode) node).getOperand()));
+        }
+        if (node instanceof SharedNode) {
+            return derive(((SharedNode) node).getValue());
+        }
+        if (node instanceof BinaryNode) {
+            return deriveBinary((BinaryNode) node);
+        }
+        if (node instanceof FunctionNode) {
+            return deriveFunction((FunctionNode) node);
+        }
+        if (node instanceof ConditionalNode) {
+            // The derivative of the selected branch; the condition itself is flat
+            ConditionalNode conditional = (ConditionalNode) node;
+            return select(conditional.getComparison(), conditional.getLeft(), conditional.getRight(),
+                derive(conditional.getWhenTrue()), derive(conditional.getWhenFalse()));
+        }
+        if (node instanceof ReductionNode) {
+            return deriveReduction((ReductionNode) node);
+        }
+        if (node instanceof CallNode) {
+            // Chain rule: (f(u))' = f'(u) * u'
+            CallNode call = (CallNode) node;
+            ExpressionNode body = derive(call.getBody());
+            ExpressionNode argument = derive(call.getArgument());
+            if (body == null || argument == null) return null;
+            return multiply(new CallNode(call.getFunctionName() + "'", body, call.getArgument()), argument);
+        }
+        throw new IllegalArgumentException("Cannot differentiate " + node.getClass().getSimpleName());
+    }
+    
+    private ExpressionNode deriveBinary(BinaryNode node) {
+        ExpressionNode u = node.getLeft();
+        ExpressionNode v = node.getRight();
+        ExpressionNode du = derive(u);
+        ExpressionNode dv = derive(v);
+        switch (node.getOperator()) {
+            case ADD:
+                return add(du, dv);
+            case SUBTRACT:
+                return subtract(du, dv);
+            case MULTIPLY:
+                return add(multiply(du, v), multiply(u, dv));
+            case DIVIDE:
+                if (dv == null) return divide(du, v);
+                return divide(subtract(multiply(du, v), multiply(u, dv)), multiply(v, v));
+            case POWER:
+                if (dv == null) {
+                    // (u^n)' = n * u^(n-1) * u'
+                    return multiply(multiply(v, power(u, subtract(v, ONE))), du);
+                }
+                // (u^v)' = u^v * (v' * ln(u) + v * u' / u)
+                ExpressionNode logarithm = new FunctionNode(MathFunction.LN, u);
+                return multiply(node, add(multiply(dv, logarithm), multiply(v, divide(du, u))));
+            case MIN:
+                return select(Comparison.LESS_EQUAL, u, v, du, dv);
+            case MAX:
+                return select(Comparison.GREATER_EQUAL, u, v, du, dv);
+            default:
+                throw new IllegalArgumentException("Cannot differentiate operator " + node.getOperator());
+        }
+    }
+    
+    /**
+     * Differentiate a sum or product term by term. The bounds only change the
+     * number of terms, which is flat between its jumps.
+     */
+    private ExpressionNode deriveReduction(ReductionNode node) {
+        ExpressionNode term = derive(node.getBody());
+        if (term == null) return null;
+        if (node.getOperator() == BinaryOperator.ADD) {
+            return new ReductionNode(BinaryOperator.ADD, node.getIndex(), node.getFrom(), node.getTo(), term);
+        }
+        // (prod u_k)' = prod u_k * sum u_k'/u_k, undefined where a term vanishes
+        ExpressionNode logarithmic = new ReductionNode(BinaryOperator.ADD, node.getIndex(), node.getFrom(),
+            node.getTo(), divide(term, node.getBody()));
+        return multiply(node, logarithmic);
+    }
+    
+    private ExpressionNode deriveFunction(FunctionNode node) {
+        ExpressionNode u = node.getArgument();
+        ExpressionNode du = derive(u);
+        if (du == null) return null;
+        switch (node.getFunction()) {
+            case SQRT: return divide(du, multiply(TWO, node));
+            case SIN: return multiply(new FunctionNode(MathFunction.COS, u), du);
+            case COS: return negate(multiply(new FunctionNode(MathFunction.SIN, u), du));
+            case TAN: return divide(du, power(new FunctionNode(MathFunction.COS, u), TWO));
+            case LOG: return divide(du, multiply(u, LN_10));
+            case LN: return divide(du, u);
+            // u / |u|: undefined where the argument crosses zero
+            case ABS: return multiply(divide(u, node), du);
+            case EXP: return multiply(node, du);
+            // Steps are flat between their jumps
+            case FLOOR:
+            case CEIL:
+            case SIGN:
+                return null;
+            default:
+                throw new IllegalArgumentException("Cannot differentiate " + node.getFunction());
+        }
+    }
+    
+    // ===== Builders dropping zero (null) and unit terms =====
+    
+    private static ExpressionNode add(ExpressionNode a, ExpressionNode b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return binary(BinaryOperator.ADD, a, b);
+    }
+    
+    private static ExpressionNode subtract(ExpressionNode a, ExpressionNode b) {
+        if (b == null) return a;
+        if (a == null) return negate(b);
+        return binary(BinaryOperator.SUBTRACT, a, b);
+    }
+    
+    private static ExpressionNode multiply(ExpressionNode a, ExpressionNode b) {
+        if (a == null || b == null) return null;
+        if (isConstant(a, 1.0)) return b;
+        if (isConstant(b, 1.0)) return a;
+        return binary(BinaryOperator.MULTIPLY, a, b);
+    }
+    
+    private static ExpressionNode divide(ExpressionNode a, ExpressionNode b) {
+        if (a == null) return null;
+        if (isConstant(b, 1.0)) return a;
+        return binary(BinaryOperator.DIVIDE, a, b);
+    }
+    
+    private static ExpressionNode power(ExpressionNode base, ExpressionNode exponent) {
+        if (isConstant(exponent, 1.0)) return base;
+        if (isConstant(exponent, 0.0)) return ONE;
+        return binary(BinaryOperator.POWER, base, exponent);
+    }
+    
+    /**
+     * Build {@code if(left comparison right, a, b)} for two derivatives
+     */
+    private static ExpressionNode select(Comparison comparison, ExpressionNode left, ExpressionNode right,
+                                         ExpressionNode a, ExpressionNode b) {
+        if (a == null && b == null) return null;
+        return new ConditionalNode(comparison, left, right, a != null ? a : ZERO, b != null ? b : ZERO);
+    }
+    
+    private static ExpressionNode negate(ExpressionNode a) {
+        if (a == null) return null;
+        if (a instanceof ConstantNode) return new ConstantNode(-((ConstantNode) a).getValue());
+        if (a instanceof NegateNode) return ((NegateNode) a).getOperand();
+        return new NegateNode(a);
+    }
+    
+    /**
+     * Build a binary node, folding it when both operands are constants
+     */
+    private static ExpressionNode binary(BinaryOperator operator, ExpressionNode a, ExpressionNode b) {
+        if (a instanceof ConstantNode && b instanceof ConstantNode) {
+            return new ConstantNode(operator.apply(((ConstantNode) a).getValue(), ((ConstantNode) b).getValue()));
+        }
+        return new BinaryNode(operator, a, b);
+    }
+    
+    private static boolean isConstant(ExpressionNode node, double value) {
+        return node instanceof ConstantNode && ((ConstantNode) node).getValue() == value;
+    }
+}
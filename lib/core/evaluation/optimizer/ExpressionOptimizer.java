@@ -0,0 +1,655 @@
+package lib.core.evaluation.optimizer;
+
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.BinaryOperator;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.Comparison;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.ConstantNode;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.IndexNode;
+import lib.core.evaluation.node.MathFunction;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ParameterNode;
+import lib.core.evaluation.node.ReductionNode;
+import lib.core.evaluation.node.SharedNode;
+import lib.core.evaluation.node.VariableNode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a parsed expression tree into an equivalent one that is cheaper to
+ * evaluate. The passes run in order:
+ * <ol>
+ *   <li>Constant folding, including {@code pi}, {@code e}, fixed parameters,
+ *       sums and products of constant terms and calls to user functions that
+ *       can be inlined</li>
+ *   <li>Horner form for polynomials in {@code x}, guarded so that zeros,
+ *       infinities and NaN come from the terms as written</li>
+ *   <li>Small integer powers rewritten as multiplications</li>
+ *   <li>Common subexpression elimination: equal subtrees become one
+ *       {@link SharedNode} evaluated once, except those reading the index of a
+ *       sum or product, whose value changes from term to term</li>
+ * </ol>
+ * Finite non-zero results may differ from the unoptimized tree by rounding,
+ * so a value within rounding of zero may come out with the other sign.
+ * Horner form evaluates a polynomial in another order than its terms, which
+ * changes the sign of exact zeros ({@code x^2 - 2*x} at 0 gives -0 instead
+ * of 0) and turns {@code inf - inf} into an infinity; where the Horner value
+ * is zero, not finite or large enough that a term may have overflowed, the
+ * terms are evaluated as written instead. Each Horner rewrite is also checked
+ * against the terms as written on probe values of {@code x}, and dropped if
+ * they disagree on NaN, infinities or the sign of a zero.
+ * User function bodies that stay calls are optimized once, on their own.
+ * Large bodies called on {@code x} itself stay calls too, so batch evaluation
+ * can share their columns between curves
+ * ({@link lib.core.evaluation.node.SampleColumnCache}).
+ */
+public class ExpressionOptimizer {
+    
+    // x^n for |n| above this keeps calling Math.pow
+    private static final int MAX_EXPANDED_POWER = 8;
+    // Number of x references above which a call with a complex argument is not inlined
+    private static final int MAX_INLINED_VARIABLE_USES = 1;
+    // Number of nodes from which a body called on x stays a call, so its column can be shared
+    private static final int MIN_SHARED_BODY_NODES = 16;
+    private static final int UNKNOWN_USES = Integer.MAX_VALUE;
+    // Magnitude from which a Horner value is recomputed from the terms, which may have overflowed
+    private static final double MAX_HORNER_MAGNITUDE = 1e150;
+    // Values of x on which a Horner rewrite must agree with the terms as written
+    private static final double[] HORNER_PROBES = {
+        0.0, -0.0, 0.5, -0.5, 1.0, -1.0, 2.0, -2.0, 3.0, -3.0, 1e-3, -1e-3, 1e3, -1e3,
+        1e200, -1e200, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN
+    };
+    // Relative difference between finite probe values still put down to rounding
+    private static final double HORNER_PROBE_TOLERANCE = 1e-9;
+    
+    private final Map<ExpressionNode, ExpressionNode> optimizedBodies = new IdentityHashMap<>();
+    
+    private ExpressionOptimizer() {
+    }
+    
+    /**
+     * Optimize an expression tree
+     * @param root Root of the parsed tree
+     * @return Root of the optimized tree ({@link ExpressionNode})
+     */
+    public static ExpressionNode optimize(ExpressionNode root) {
+        return new ExpressionOptimizer().optimizeScope(root);
+    }
+    
+    /**
+     * Run all passes over a tree with its own {@code x}
+     * (the whole expression, or the body of a user function)
+     */
+    private ExpressionNode optimizeScope(ExpressionNode root) {
+        ExpressionNode x = new VariableNode();
+        ExpressionNode folded = fold(root, x);
+        ExpressionNode horner = toHornerForm(folded, x);
+        ExpressionNode reduced = reduce(horner, new HashMap<>());
+        
+        Map<ExpressionNode, Integer> uses = new IdentityHashMap<>();
+        countUses(reduced, uses);
+        return share(reduced, uses, new IdentityHashMap<>(), new IdentityHashMap<>());
+    }
+    
+    // ===== Constant folding and inlining =====
+    
+    /**
+     * Fold constant subtrees and inline user function calls
+     * @param node The node to fold
+     * @param x The node standing for {@code x} in this subtree
+     */
+    private ExpressionNode fold(ExpressionNode node, ExpressionNode x) {
+        if (node instanceof VariableNode) return x;
+        
+        if (node instanceof ParameterNode) {
+            ParameterNode parameter = (ParameterNode) node;
+            if (parameter.getTable().isFixed(parameter.getSlot())) {
+                return new ConstantNode(parameter.evaluate(0.0));
+            }
+            return node;
+        }
+        
+        if (node instanceof NegateNode) {
+            ExpressionNode operand = fold(((NegateNode) node).getOperand(), x);
+            if (operand instanceof ConstantNode) return new ConstantNode(-((ConstantNode) operand).getValue());
+            if (operand instanceof NegateNode) return ((NegateNode) operand).getOperand();
+            return new NegateNode(operand);
+        }
+        
+        if (node instanceof FunctionNode) {
+            FunctionNode function = (FunctionNode) node;
+            ExpressionNode argument = fold(function.getArgument(), x);
+            if (argument instanceof ConstantNode) {
+                return new ConstantNode(function.getFunction().apply(((ConstantNode) argument).getValue()));
+            }
+            return new FunctionNode(function.getFunction(), argument);
+        }
+        
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            ExpressionNode left = fold(binary.getLeft(), x);
+            ExpressionNode right = fold(binary.getRight(), x);
+            return foldBinary(binary.getOperator(), left, right);
+        }
+        
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            ExpressionNode argument = fold(call.getArgument(), x);
+            if (argument instanceof VariableNode
+                && countNodes(call.getBody(), MIN_SHARED_BODY_NODES) >= MIN_SHARED_BODY_NODES) {
+                // Other curves calling f(x) on the same samples can reuse its column
+                return new CallNode(call.getFunctionName(), optimizeBody(call.getBody()), argument);
+            }
+            int variableUses = countVariableUses(call.getBody());
+            if (variableUses != UNKNOWN_USES
+                && (isLeaf(argument) || variableUses <= MAX_INLINED_VARIABLE_USES)) {
+                // Substituting the argument for x neither duplicates work nor changes the result
+                return fold(call.getBody(), argument);
+            }
+            return new CallNode(call.getFunctionName(), optimizeBody(call.getBody()), argument);
+        }
+        
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            ExpressionNode left = fold(conditional.getLeft(), x);
+            ExpressionNode right = fold(conditional.getRight(), x);
+            if (left instanceof ConstantNode && right instanceof ConstantNode) {
+                // A constant condition selects its branch once and for all
+                boolean holds = conditional.getComparison().test(
+                    ((ConstantNode) left).getValue(), ((ConstantNode) right).getValue());
+                return fold(holds ? conditional.getWhenTrue() : conditional.getWhenFalse(), x);
+            }
+            return new ConditionalNode(conditional.getComparison(), left, right,
+                fold(conditional.getWhenTrue(), x), fold(conditional.getWhenFalse(), x));
+        }
+        
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            ExpressionNode from = fold(reduction.getFrom(), x);
+            ExpressionNode to = fold(reduction.getTo(), x);
+            ExpressionNode body = fold(reduction.getBody(), x);
+            ReductionNode folded = new ReductionNode(reduction.getOperator(), reduction.getIndex(), from, to, body);
+            if (from instanceof ConstantNode && to instanceof ConstantNode && readsOnlyIndices(body)) {
+                // e.g. sum(k, 1, 100, 1/k^2): the same value for every x
+                return new ConstantNode(folded.evaluate(0.0));
+            }
+            return folded;
+        }
+        
+        return node;
+    }
+    
+    private ExpressionNode foldBinary(BinaryOperator operator, ExpressionNode left, ExpressionNode right) {
+        if (left instanceof ConstantNode && right instanceof ConstantNode) {
+            return new ConstantNode(operator.apply(((ConstantNode) left).getValue(), ((ConstantNode) right).getValue()));
+        }
+        
+        // Identities that hold exactly for every value, including NaN, infinities and -0
+        switch (operator) {
+            case MULTIPLY:
+                if (isConstant(left, 1.0)) return right;
+                if (isConstant(right, 1.0)) return left;
+                break;
+            case DIVIDE:
+            case POWER:
+                if (isConstant(right, 1.0)) return left;
+                break;
+            case SUBTRACT:
+                if (isConstant(right, 0.0)) return left;
+                break;
+            default:
+                break;
+        }
+        return new BinaryNode(operator, left, right);
+    }
+    
+    /**
+     * Optimize the body of a user function that stays a call, once per body
+     */
+    private ExpressionNode optimizeBody(ExpressionNode body) {
+        ExpressionNode optimized = optimizedBodies.get(body);
+        if (optimized == null) {
+            optimized = optimizeScope(body);
+            optimizedBodies.put(body, optimized);
+        }
+        return optimized;
+    }
+    
+    /**
+     * Check if a tree reads nothing but constants and sum or product indices
+     */
+    private static boolean readsOnlyIndices(ExpressionNode node) {
+        if (node instanceof ConstantNode || node instanceof IndexNode) return true;
+        if (node instanceof NegateNode) return readsOnlyIndices(((NegateNode) node).getOperand());
+        if (node instanceof FunctionNode) return readsOnlyIndices(((FunctionNode) node).getArgument());
+        if (node instanceof BinaryNode) {
+            return readsOnlyIndices(((BinaryNode) node).getLeft()) && readsOnlyIndices(((BinaryNode) node).getRight());
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            return readsOnlyIndices(conditional.getLeft()) && readsOnlyIndices(conditional.getRight())
+                && readsOnlyIndices(conditional.getWhenTrue()) && readsOnlyIndices(conditional.getWhenFalse());
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            return readsOnlyIndices(reduction.getFrom()) && readsOnlyIndices(reduction.getTo())
+                && readsOnlyIndices(reduction.getBody());
+        }
+        return false;
+    }
+    
+    /**
+     * Count the references to {@code x} in a tree
+     * @return The count, or {@code UNKNOWN_USES} if the tree holds nodes the optimizer does not know
+     */
+    private static int countVariableUses(ExpressionNode node) {
+        if (node instanceof VariableNode) return 1;
+        if (node instanceof ConstantNode || node instanceof ParameterNode || node instanceof IndexNode) return 0;
+        if (node instanceof NegateNode) return countVariableUses(((NegateNode) node).getOperand());
+        if (node instanceof FunctionNode) return countVariableUses(((FunctionNode) node).getArgument());
+        if (node instanceof CallNode) return countVariableUses(((CallNode) node).getArgument());
+        if (node instanceof BinaryNode) {
+            int left = countVariableUses(((BinaryNode) node).getLeft());
+            int right = countVariableUses(((BinaryNode) node).getRight());
+            return left == UNKNOWN_USES || right == UNKNOWN_USES ? UNKNOWN_USES : left + right;
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            int total = 0;
+            for (ExpressionNode child : new ExpressionNode[] { conditional.getLeft(), conditional.getRight(),
+                                                                conditional.getWhenTrue(), conditional.getWhenFalse() }) {
+                int uses = countVariableUses(child);
+                if (uses == UNKNOWN_USES) return UNKNOWN_USES;
+                total += uses;
+            }
+            return total;
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            int from = countVariableUses(reduction.getFrom());
+            int to = countVariableUses(reduction.getTo());
+            int body = countVariableUses(reduction.getBody());
+            if (from == UNKNOWN_USES || to == UNKNOWN_USES || body == UNKNOWN_USES) return UNKNOWN_USES;
+            // The body runs once per term: substituting a complex argument there repeats it every time
+            return from + to + (body > 0 ? body + MAX_INLINED_VARIABLE_USES : 0);
+        }
+        return UNKNOWN_USES;
+    }
+    
+    /**
+     * Count the nodes of a tree, stopping early
+     * @param limit Count above which counting stops
+     * @return The count, or a number at least {@code limit} if the tree is that large
+     */
+    private static int countNodes(ExpressionNode node, int limit) {
+        if (limit <= 0) return 0;
+        int count = 1;
+        if (node instanceof NegateNode) {
+            count += countNodes(((NegateNode) node).getOperand(), limit - count);
+        } else if (node instanceof FunctionNode) {
+            count += countNodes(((FunctionNode) node).getArgument(), limit - count);
+        } else if (node instanceof SharedNode) {
+            count += countNodes(((SharedNode) node).getValue(), limit - count);
+        } else if (node instanceof CallNode) {
+            count += countNodes(((CallNode) node).getArgument(), limit - count);
+            if (count < limit) count += countNodes(((CallNode) node).getBody(), limit - count);
+        } else if (node instanceof BinaryNode) {
+            count += countNodes(((BinaryNode) node).getLeft(), limit - count);
+            if (count < limit) count += countNodes(((BinaryNode) node).getRight(), limit - count);
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            count += countNodes(conditional.getLeft(), limit - count);
+            count += countNodes(conditional.getRight(), limit - count);
+            count += countNodes(conditional.getWhenTrue(), limit - count);
+            count += countNodes(conditional.getWhenFalse(), limit - count);
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            count += countNodes(reduction.getFrom(), limit - count);
+            count += countNodes(reduction.getTo(), limit - count);
+            count += countNodes(reduction.getBody(), limit - count);
+        }
+        return count;
+    }
+    
+    // ===== Horner form =====
+    
+    /**
+     * Rewrite every maximal polynomial sum in {@code x} into Horner form
+     */
+    private ExpressionNode toHornerForm(ExpressionNode node, ExpressionNode x) {
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            if (binary.getOperator() == BinaryOperator.ADD || binary.getOperator() == BinaryOperator.SUBTRACT) {
+                Polynomial polynomial = Polynomial.of(node, x);
+                if (polynomial != null && polynomial.degree() >= 2 && polynomial.termCount() >= 2
+                    && polynomial.isCheaperInHornerForm()) {
+                    ExpressionNode horner = guardHornerForm(polynomial.toHorner(x), node);
+                    if (agreesOnProbes(horner, node)) return horner;
+                }
+            }
+            return new BinaryNode(binary.getOperator(),
+                toHornerForm(binary.getLeft(), x), toHornerForm(binary.getRight(), x));
+        }
+        if (node instanceof NegateNode) {
+            return new NegateNode(toHornerForm(((NegateNode) node).getOperand(), x));
+        }
+        if (node instanceof FunctionNode) {
+            FunctionNode function = (FunctionNode) node;
+            return new FunctionNode(function.getFunction(), toHornerForm(function.getArgument(), x));
+        }
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            return new CallNode(call.getFunctionName(), call.getBody(), toHornerForm(call.getArgument(), x));
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            return new ConditionalNode(conditional.getComparison(),
+                toHornerForm(conditional.getLeft(), x), toHornerForm(conditional.getRight(), x),
+                toHornerForm(conditional.getWhenTrue(), x), toHornerForm(conditional.getWhenFalse(), x));
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            return new ReductionNode(reduction.getOperator(), reduction.getIndex(),
+                toHornerForm(reduction.getFrom(), x), toHornerForm(reduction.getTo(), x),
+                toHornerForm(reduction.getBody(), x));
+        }
+        return node;
+    }
+    
+    /**
+     * Keep the Horner value of a polynomial only where it is non-zero and
+     * well within range: {@code if(abs(h) > 0, if(abs(h) < max, h, terms), terms)}.
+     * Zeros, infinities and NaN, and values large enough that a term may have
+     * overflowed, come from the terms as written, with their sign and NaN-ness.
+     * @param horner The Horner form of the polynomial
+     * @param terms The polynomial as written
+     * @return The guarded Horner form ({@link ExpressionNode})
+     */
+    private static ExpressionNode guardHornerForm(ExpressionNode horner, ExpressionNode terms) {
+        ExpressionNode magnitude = new FunctionNode(MathFunction.ABS, horner);
+        ExpressionNode inRange = new ConditionalNode(Comparison.LESS, magnitude,
+            new ConstantNode(MAX_HORNER_MAGNITUDE), horner, terms);
+        return new ConditionalNode(Comparison.GREATER, magnitude, new ConstantNode(0.0), inRange, terms);
+    }
+    
+    /**
+     * Check that a rewritten polynomial agrees with the polynomial as written
+     * on every probe value of {@code x}
+     */
+    private static boolean agreesOnProbes(ExpressionNode rewritten, ExpressionNode original) {
+        for (double probe : HORNER_PROBES) {
+            if (!isEquivalent(rewritten.evaluate(probe), original.evaluate(probe))) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Check if two results are the same value up to rounding. NaN only matches
+     * NaN, infinities and zeros only match themselves with the same sign, and
+     * other values must have the same sign and agree to a relative tolerance.
+     * @param a A result of the optimized tree
+     * @param b The result of the unoptimized tree
+     * @return true if the results are equivalent
+     */
+    private static boolean isEquivalent(double a, double b) {
+        // Also true for two NaN; false for 0 and -0
+        if (Double.compare(a, b) == 0) return true;
+        if (!Double.isFinite(a) || !Double.isFinite(b) || a == 0.0 || b == 0.0) return false;
+        return Math.signum(a) == Math.signum(b)
+            && Math.abs(a - b) <= HORNER_PROBE_TOLERANCE * Math.max(Math.abs(a), Math.abs(b));
+    }
+    
+    // ===== Power strength reduction and hash-consing =====
+    
+    /**
+     * Rebuild the tree bottom-up so that equal subtrees become the same
+     * instance, expanding small integer powers into multiplications
+     * @param node The node to rebuild
+     * @param canonical Map of structural key to the single instance of that subtree
+     */
+    private ExpressionNode reduce(ExpressionNode node, Map<Object, ExpressionNode> canonical) {
+        if (node instanceof ConstantNode) {
+            double value = ((ConstantNode) node).getValue();
+            return canonical(Arrays.asList("const", Double.doubleToLongBits(value)), node, canonical);
+        }
+        if (node instanceof ParameterNode) {
+            ParameterNode parameter = (ParameterNode) node;
+            return canonical(Arrays.asList("param", parameter.getTable(), parameter.getSlot()), node, canonical);
+        }
+        if (node instanceof NegateNode) {
+            ExpressionNode operand = reduce(((NegateNode) node).getOperand(), canonical);
+            return canonical(Arrays.asList("negate", operand), new NegateNode(operand), canonical);
+        }
+        if (node instanceof FunctionNode) {
+            FunctionNode function = (FunctionNode) node;
+            ExpressionNode argument = reduce(function.getArgument(), canonical);
+            return canonical(Arrays.asList("function", function.getFunction(), argument),
+                new FunctionNode(function.getFunction(), argument), canonical);
+        }
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            ExpressionNode left = reduce(binary.getLeft(), canonical);
+            ExpressionNode right = reduce(binary.getRight(), canonical);
+            if (binary.getOperator() == BinaryOperator.POWER && isSmallInteger(right)) {
+                return expandPower(left, (int) ((ConstantNode) right).getValue(), canonical);
+            }
+            return binary(binary.getOperator(), left, right, canonical);
+        }
+        if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            ExpressionNode argument = reduce(call.getArgument(), canonical);
+            return canonical(Arrays.asList("call", call.getBody(), argument),
+                new CallNode(call.getFunctionName(), call.getBody(), argument), canonical);
+        }
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            ExpressionNode left = reduce(conditional.getLeft(), canonical);
+            ExpressionNode right = reduce(conditional.getRight(), canonical);
+            ExpressionNode whenTrue = reduce(conditional.getWhenTrue(), canonical);
+            ExpressionNode whenFalse = reduce(conditional.getWhenFalse(), canonical);
+            return canonical(Arrays.asList("if", conditional.getComparison(), left, right, whenTrue, whenFalse),
+                new ConditionalNode(conditional.getComparison(), left, right, whenTrue, whenFalse), canonical);
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            ExpressionNode from = reduce(reduction.getFrom(), canonical);
+            ExpressionNode to = reduce(reduction.getTo(), canonical);
+            ExpressionNode body = reduce(reduction.getBody(), canonical);
+            return canonical(Arrays.asList("reduction", reduction.getOperator(), reduction.getIndex(), from, to, body),
+                new ReductionNode(reduction.getOperator(), reduction.getIndex(), from, to, body), canonical);
+        }
+        return node;
+    }
+    
+    /**
+     * Expand {@code base^n} by repeated squaring, e.g. {@code x^4} into
+     * {@code (x*x)*(x*x)} where the square is computed once
+     */
+    private ExpressionNode expandPower(ExpressionNode base, int n, Map<Object, ExpressionNode> canonical) {
+        if (n == 0) return reduce(new ConstantNode(1.0), canonical);
+        if (n < 0) {
+            ExpressionNode one = reduce(new ConstantNode(1.0), canonical);
+            return binary(BinaryOperator.DIVIDE, one, expandPower(base, -n, canonical), canonical);
+        }
+        
+        ExpressionNode result = null;
+        ExpressionNode square = base;
+        while (true) {
+            if ((n & 1) != 0) {
+                result = result == null ? square : binary(BinaryOperator.MULTIPLY, result, square, canonical);
+            }
+            n >>= 1;
+            if (n == 0) return result;
+            square = binary(BinaryOperator.MULTIPLY, square, square, canonical);
+        }
+    }
+    
+    private ExpressionNode binary(BinaryOperator operator, ExpressionNode left, ExpressionNode right,
+                                  Map<Object, ExpressionNode> canonical) {
+        return canonical(Arrays.asList("binary", operator, left, right),
+            new BinaryNode(operator, left, right), canonical);
+    }
+    
+    /**
+     * Get the single instance for a structural key, registering the node if it is new.
+     * Keys compare children by identity, which is structural equality once children are canonical.
+     */
+    private static ExpressionNode canonical(Object key, ExpressionNode node, Map<Object, ExpressionNode> canonical) {
+        ExpressionNode existing = canonical.putIfAbsent(key, node);
+        return existing != null ? existing : node;
+    }
+    
+    // ===== Common subexpression elimination =====
+    
+    /**
+     * Count how many parents reference each node of the (now shared) tree
+     */
+    private static void countUses(ExpressionNode node, Map<ExpressionNode, Integer> uses) {
+        Integer count = uses.get(node);
+        uses.put(node, count == null ? 1 : count + 1);
+        if (count != null) return;
+        
+        if (node instanceof NegateNode) {
+            countUses(((NegateNode) node).getOperand(), uses);
+        } else if (node instanceof FunctionNode) {
+            countUses(((FunctionNode) node).getArgument(), uses);
+        } else if (node instanceof CallNode) {
+            countUses(((CallNode) node).getArgument(), uses);
+        } else if (node instanceof BinaryNode) {
+            countUses(((BinaryNode) node).getLeft(), uses);
+            countUses(((BinaryNode) node).getRight(), uses);
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            countUses(conditional.getLeft(), uses);
+            countUses(conditional.getRight(), uses);
+            countUses(conditional.getWhenTrue(), uses);
+            countUses(conditional.getWhenFalse(), uses);
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            countUses(reduction.getFrom(), uses);
+            countUses(reduction.getTo(), uses);
+            countUses(reduction.getBody(), uses);
+        }
+    }
+    
+    /**
+     * Rebuild the tree wrapping every non-trivial node with several parents in a {@link SharedNode}
+     * @param free Free sum and product indices of each node visited so far
+     */
+    private static ExpressionNode share(ExpressionNode node, Map<ExpressionNode, Integer> uses,
+                                        Map<ExpressionNode, ExpressionNode> shared,
+                                        Map<ExpressionNode, Set<IndexNode>> free) {
+        ExpressionNode result = shared.get(node);
+        if (result != null) return result;
+        
+        if (node instanceof NegateNode) {
+            result = new NegateNode(share(((NegateNode) node).getOperand(), uses, shared, free));
+        } else if (node instanceof FunctionNode) {
+            FunctionNode function = (FunctionNode) node;
+            result = new FunctionNode(function.getFunction(), share(function.getArgument(), uses, shared, free));
+        } else if (node instanceof CallNode) {
+            CallNode call = (CallNode) node;
+            result = new CallNode(call.getFunctionName(), call.getBody(),
+                share(call.getArgument(), uses, shared, free));
+        } else if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            result = new BinaryNode(binary.getOperator(),
+                share(binary.getLeft(), uses, shared, free), share(binary.getRight(), uses, shared, free));
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            result = new ConditionalNode(conditional.getComparison(),
+                share(conditional.getLeft(), uses, shared, free),
+                share(conditional.getRight(), uses, shared, free),
+                share(conditional.getWhenTrue(), uses, shared, free),
+                share(conditional.getWhenFalse(), uses, shared, free));
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            result = new ReductionNode(reduction.getOperator(), reduction.getIndex(),
+                share(reduction.getFrom(), uses, shared, free), share(reduction.getTo(), uses, shared, free),
+                share(reduction.getBody(), uses, shared, free));
+        } else {
+            result = node;
+        }
+        
+        // A shared column is computed once per evaluation, but an indexed value changes with every term
+        if (uses.get(node) > 1 && !isLeaf(node) && freeIndices(node, free).isEmpty()) {
+            result = new SharedNode(result);
+        }
+        shared.put(node, result);
+        return result;
+    }
+    
+    /**
+     * Get the sum and product indices a tree reads without binding them itself.
+     * A whole sum or product does not read its own index, so it can be shared.
+     * @param free Free indices of each node visited so far
+     */
+    private static Set<IndexNode> freeIndices(ExpressionNode node, Map<ExpressionNode, Set<IndexNode>> free) {
+        Set<IndexNode> known = free.get(node);
+        if (known != null) return known;
+        
+        Set<IndexNode> result;
+        if (node instanceof IndexNode) {
+            result = Collections.singleton((IndexNode) node);
+        } else if (node instanceof NegateNode) {
+            result = freeIndices(((NegateNode) node).getOperand(), free);
+        } else if (node instanceof FunctionNode) {
+            result = freeIndices(((FunctionNode) node).getArgument(), free);
+        } else if (node instanceof CallNode) {
+            // The body is a scope of its own
+            result = freeIndices(((CallNode) node).getArgument(), free);
+        } else if (node instanceof BinaryNode) {
+            result = union(freeIndices(((BinaryNode) node).getLeft(), free),
+                freeIndices(((BinaryNode) node).getRight(), free));
+        } else if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            result = union(union(freeIndices(conditional.getLeft(), free), freeIndices(conditional.getRight(), free)),
+                union(freeIndices(conditional.getWhenTrue(), free), freeIndices(conditional.getWhenFalse(), free)));
+        } else if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            Set<IndexNode> body = freeIndices(reduction.getBody(), free);
+            if (body.contains(reduction.getIndex())) {
+                body = new HashSet<>(body);
+                body.remove(reduction.getIndex());
+            }
+            result = union(union(freeIndices(reduction.getFrom(), free), freeIndices(reduction.getTo(), free)), body);
+        } else {
+            result = Collections.emptySet();
+        }
+        free.put(node, result);
+        return result;
+    }
+    
+    private static Set<IndexNode> union(Set<IndexNode> a, Set<IndexNode> b) {
+        if (a.isEmpty() || a.equals(b)) return b;
+        if (b.isEmpty()) return a;
+        Set<IndexNode> result = new HashSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+    
+    // ===== Helpers =====
+    
+    private static boolean isLeaf(ExpressionNode node) {
+        return node instanceof ConstantNode || node instanceof VariableNode || node instanceof ParameterNode;
+    }
+    
+    private static boolean isConstant(ExpressionNode node, double value) {
+        return node instanceof ConstantNode
+            && Double.doubleToLongBits(((ConstantNode) node).getValue()) == Double.doubleToLongBits(value);
+    }
+    
+    private static boolean isSmallInteger(ExpressionNode node) {
+        if (!(node instanceof ConstantNode)) return false;
+        double value = ((ConstantNode) node).getValue();
+        return value == Math.rint(value) && Math.abs(value) <= MAX_EXPANDED_POWER;
+    }
+}
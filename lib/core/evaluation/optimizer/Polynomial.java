@@ -0,0 +1,241 @@
+package lib.core.evaluation.optimizer;
+
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.BinaryOperator;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.ConstantNode;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.IndexNode;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ParameterNode;
+import lib.core.evaluation.node.ReductionNode;
+
+/**
+ * A polynomial in the variable of an expression, stored as one coefficient
+ * per power. Coefficients are subtrees that do not depend on the variable
+ * (numbers, parameters, or expressions of them), so {@code a*x^2 + b*x + c}
+ * is recognized as well as {@code 3*x^3 - 2*x + 1}.
+ * 
+ * Only sums of monomials are recognized: products or powers of sums such as
+ * {@code (x-1)^8} are left alone, since expanding them would change how
+ * accurately they evaluate near their roots.
+ */
+class Polynomial {
+    
+    private static final int MAX_DEGREE = 64;
+    private static final ExpressionNode ONE = new ConstantNode(1.0);
+    // Cost of the check around a Horner form (an abs and two comparisons), in multiplications
+    private static final int HORNER_GUARD_COST = 2;
+    
+    // coefficients[k] multiplies x^k; null means zero
+    private final ExpressionNode[] coefficients;
+    
+    private Polynomial(ExpressionNode[] coefficients) {
+        this.coefficients = coefficients;
+    }
+    
+    /**
+     * Recognize an expression as a polynomial in a variable
+     * @param node The expression
+     * @param x The variable node
+     * @return The polynomial, or null if the expression is not a sum of monomials
+     */
+    static Polynomial of(ExpressionNode node, ExpressionNode x) {
+        if (node == x) {
+            return new Polynomial(new ExpressionNode[] { null, ONE });
+        }
+        if (isIndependentOf(node, x)) {
+            return new Polynomial(new ExpressionNode[] { node });
+        }
+        if (node instanceof NegateNode) {
+            Polynomial operand = of(((NegateNode) node).getOperand(), x);
+            return operand != null ? operand.negate() : null;
+        }
+        if (!(node instanceof BinaryNode)) return null;
+        
+        BinaryNode binary = (BinaryNode) node;
+        Polynomial left = of(binary.getLeft(), x);
+        if (left == null) return null;
+        
+        switch (binary.getOperator()) {
+            case ADD:
+            case SUBTRACT: {
+                Polynomial right = of(binary.getRight(), x);
+                if (right == null) return null;
+                return left.plus(binary.getOperator() == BinaryOperator.SUBTRACT ? right.negate() : right);
+            }
+            case MULTIPLY: {
+                Polynomial right = of(binary.getRight(), x);
+                if (right == null || !left.isMonomial() || !right.isMonomial()) return null;
+                return left.timesMonomial(right);
+            }
+            case DIVIDE:
+                if (!left.isMonomial() || !isIndependentOf(binary.getRight(), x)) return null;
+                return left.dividedBy(binary.getRight());
+            case POWER:
+                return left.isMonomial() ? left.power(binary.getRight()) : null;
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Get the degree of the polynomial
+     */
+    int degree() {
+        return coefficients.length - 1;
+    }
+    
+    /**
+     * Get the number of non-zero terms
+     */
+    int termCount() {
+        int count = 0;
+        for (ExpressionNode coefficient : coefficients) {
+            if (coefficient != null) count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Check if the Horner form, with the check of its value, needs no more
+     * multiplications than evaluating each term on its own (with powers
+     * expanded by repeated squaring). Sparse polynomials such as
+     * {@code x^8 + 1}, and quadratics, are cheaper term by term.
+     */
+    boolean isCheaperInHornerForm() {
+        int horner = degree() - (coefficients[degree()] == ONE ? 1 : 0) + HORNER_GUARD_COST;
+        int termByTerm = 0;
+        for (int k = 1; k < coefficients.length; k++) {
+            if (coefficients[k] == null) continue;
+            int squarings = 31 - Integer.numberOfLeadingZeros(k);
+            termByTerm += squarings + Integer.bitCount(k) - 1;
+            if (coefficients[k] != ONE) termByTerm++;
+        }
+        return horner <= termByTerm;
+    }
+    
+    /**
+     * Build the Horner form {@code ((c_n*x + c_n-1)*x + ...)*x + c_0}, which
+     * needs one multiplication and one addition per degree and no powers
+     * @param x The variable node
+     * @return The Horner form ({@link ExpressionNode})
+     */
+    ExpressionNode toHorner(ExpressionNode x) {
+        ExpressionNode result = coefficients[degree()];
+        for (int k = degree() - 1; k >= 0; k--) {
+            result = multiply(result, x);
+            if (coefficients[k] != null) {
+                result = add(result, coefficients[k]);
+            }
+        }
+        return result;
+    }
+    
+    private boolean isMonomial() {
+        return termCount() == 1;
+    }
+    
+    private Polynomial negate() {
+        ExpressionNode[] result = new ExpressionNode[coefficients.length];
+        for (int k = 0; k < result.length; k++) {
+            if (coefficients[k] != null) result[k] = negate(coefficients[k]);
+        }
+        return new Polynomial(result);
+    }
+    
+    private Polynomial plus(Polynomial other) {
+        ExpressionNode[] result = new ExpressionNode[Math.max(coefficients.length, other.coefficients.length)];
+        for (int k = 0; k < result.length; k++) {
+            ExpressionNode a = k < coefficients.length ? coefficients[k] : null;
+            ExpressionNode b = k < other.coefficients.length ? other.coefficients[k] : null;
+            result[k] = a == null ? b : (b == null ? a : add(a, b));
+        }
+        return new Polynomial(result);
+    }
+    
+    private Polynomial timesMonomial(Polynomial other) {
+        int degree = degree() + other.degree();
+        if (degree > MAX_DEGREE) return null;
+        ExpressionNode[] result = new ExpressionNode[degree + 1];
+        result[degree] = multiply(coefficients[degree()], other.coefficients[other.degree()]);
+        return new Polynomial(result);
+    }
+    
+    private Polynomial dividedBy(ExpressionNode divisor) {
+        ExpressionNode[] result = new ExpressionNode[coefficients.length];
+        ExpressionNode coefficient = coefficients[degree()];
+        result[degree()] = fold(new BinaryNode(BinaryOperator.DIVIDE, coefficient, divisor));
+        return new Polynomial(result);
+    }
+    
+    private Polynomial power(ExpressionNode exponent) {
+        if (!(exponent instanceof ConstantNode)) return null;
+        double n = ((ConstantNode) exponent).getValue();
+        if (n < 0 || n != Math.rint(n) || degree() * n > MAX_DEGREE) return null;
+        
+        int degree = (int) (degree() * n);
+        ExpressionNode coefficient = coefficients[degree()];
+        ExpressionNode[] result = new ExpressionNode[degree + 1];
+        result[degree] = coefficient == ONE ? ONE
+            : fold(new BinaryNode(BinaryOperator.POWER, coefficient, exponent));
+        return new Polynomial(result);
+    }
+    
+    private static ExpressionNode add(ExpressionNode a, ExpressionNode b) {
+        return fold(new BinaryNode(BinaryOperator.ADD, a, b));
+    }
+    
+    private static ExpressionNode multiply(ExpressionNode a, ExpressionNode b) {
+        if (a == ONE) return b;
+        if (b == ONE) return a;
+        return fold(new BinaryNode(BinaryOperator.MULTIPLY, a, b));
+    }
+    
+    private static ExpressionNode negate(ExpressionNode a) {
+        if (a instanceof NegateNode) return ((NegateNode) a).getOperand();
+        return fold(new NegateNode(a));
+    }
+    
+    /**
+     * Fold a new node whose operands are all numbers
+     */
+    private static ExpressionNode fold(ExpressionNode node) {
+        if (node instanceof NegateNode && ((NegateNode) node).getOperand() instanceof ConstantNode
+            || node instanceof BinaryNode && ((BinaryNode) node).getLeft() instanceof ConstantNode
+                && ((BinaryNode) node).getRight() instanceof ConstantNode) {
+            double value = node.evaluate(0.0);
+            return value == 1.0 ? ONE : new ConstantNode(value);
+        }
+        return node;
+    }
+    
+    /**
+     * Check that an expression does not reference the variable
+     */
+    static boolean isIndependentOf(ExpressionNode node, ExpressionNode x) {
+        if (node == x) return false;
+        if (node instanceof ConstantNode || node instanceof ParameterNode || node instanceof IndexNode) return true;
+        if (node instanceof NegateNode) return isIndependentOf(((NegateNode) node).getOperand(), x);
+        if (node instanceof FunctionNode) return isIndependentOf(((FunctionNode) node).getArgument(), x);
+        if (node instanceof CallNode) return isIndependentOf(((CallNode) node).getArgument(), x);
+        if (node instanceof ConditionalNode) {
+            ConditionalNode conditional = (ConditionalNode) node;
+            return isIndependentOf(conditional.getLeft(), x) && isIndependentOf(conditional.getRight(), x)
+                && isIndependentOf(conditional.getWhenTrue(), x) && isIndependentOf(conditional.getWhenFalse(), x);
+        }
+        if (node instanceof BinaryNode) {
+            BinaryNode binary = (BinaryNode) node;
+            return isIndependentOf(binary.getLeft(), x) && isIndependentOf(binary.getRight(), x);
+        }
+        if (node instanceof ReductionNode) {
+            ReductionNode reduction = (ReductionNode) node;
+            return isIndependentOf(reduction.getFrom(), x) && isIndependentOf(reduction.getTo(), x)
+                && isIndependentOf(reduction.getBody(), x);
+        }
+        // Unknown nodes are assumed to depend on x
+        return false;
+    }
+}
@@ -60,6 +60,12 @@ public class FunctionFactory {
             return createIntersectionFunction(name, expression, color);
         }
         
+        // Derivative of a named function: f'(x) is compiled like any expression,
+        // with the derivative built symbolically from f
+        if (name == null && FunctionParser.isDerivative(expression)) {
+            return new RegularFunction(FunctionParser.extractDerivativeName(expression), expression, color, evaluator);
+        }
+        
         // Default: regular expression function
         return new RegularFunction(name, expression, color, evaluator);
     }
@@ -141,6 +147,17 @@ public class FunctionFactory {
         return new PointFunction(name, xExpr, yExpr, color, evaluator);
     }
     
+    /**
+     * Create a recursive sequence plotted as discrete points
+     * @param name Sequence name (e.g., "a")
+     * @param definition Recurrence and base cases (e.g., "a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1")
+     * @param color Display color
+     * @return PointFunction computing the terms in view
+     */
+    public PlottableFunction createSequenceFunction(String name, String definition, Color color) {
+        return new PointFunction(name, definition.trim(), color, evaluator);
+    }
+    
     /**
      * Create a set function from expression like "a={1,2,3}" or "b={1:10}"
      * Sets are non-plottable BaseFunction instances that serve as value containers
@@ -0,0 +1,28 @@
+package lib.core.parser;
+
+/**
+ * Raised when an expression cannot be parsed, with the position of the offending character
+ */
+public class ExpressionSyntaxException extends Exception {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int position;
+    
+    /**
+     * Create a syntax error
+     * @param message Description of the error (e.g. "Unexpected: )")
+     * @param position Zero-based index of the offending character in the expression
+     */
+    public ExpressionSyntaxException(String message, int position) {
+        super(message + " at position " + position);
+        this.position = position;
+    }
+    
+    /**
+     * Get the zero-based index of the offending character in the expression
+     */
+    public int getPosition() {
+        return position;
+    }
+}
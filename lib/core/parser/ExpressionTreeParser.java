@@ -0,0 +1,427 @@
+package lib.core.parser;
+
+import lib.core.evaluation.ParameterTable;
+import lib.core.evaluation.UserFunctionTable;
+import lib.core.evaluation.node.BinaryNode;
+import lib.core.evaluation.node.BinaryOperator;
+import lib.core.evaluation.node.CallNode;
+import lib.core.evaluation.node.Comparison;
+import lib.core.evaluation.node.ConditionalNode;
+import lib.core.evaluation.node.ConstantNode;
+import lib.core.evaluation.node.ExpressionNode;
+import lib.core.evaluation.node.FunctionNode;
+import lib.core.evaluation.node.IndexNode;
+import lib.core.evaluation.node.MathFunction;
+import lib.core.evaluation.node.NegateNode;
+import lib.core.evaluation.node.ParameterNode;
+import lib.core.evaluation.node.RecursiveSequence;
+import lib.core.evaluation.node.ReductionNode;
+import lib.core.evaluation.node.TermNode;
+import lib.core.evaluation.node.VariableNode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recursive descent parser that turns an expression into an immutable
+ * {@link ExpressionNode} tree instead of evaluating it directly.
+ * All evaluation of expression text, {@link lib.core.evaluation.ExpressionEvaluator#evaluate(String, double)}
+ * included, goes through the trees built here; walking the tree is the
+ * reference interpreter, and the fallback for expressions the bytecode
+ * backend does not compile.
+ * All validation happens here: syntax errors are reported with their position
+ * ({@link ExpressionSyntaxException}), so evaluating the resulting tree never throws.
+ */
+public class ExpressionTreeParser {
+    
+    private static final ExpressionNode VARIABLE = new VariableNode();
+    
+    private int pos = -1;
+    private int ch;
+    private String str;
+    private final UserFunctionTable userFunctions;
+    private final ParameterTable parameters;
+    // Index variables of the sums and products whose body is being parsed
+    private final Map<String, IndexNode> indices = new HashMap<>();
+    // Sequence whose definition is being parsed, whose index is bound to the variable
+    private RecursiveSequence sequence;
+    
+    public ExpressionTreeParser() { this(null, null); }
+    
+    public ExpressionTreeParser(UserFunctionTable userFunctions, ParameterTable parameters) {
+        this.userFunctions = userFunctions;
+        this.parameters = parameters;
+    }
+    
+    /**
+     * Parse the mathematical expression into a tree
+     * @param str The expression string (lowercase)
+     * @return The root of the parsed tree ({@link ExpressionNode})
+     * @throws Exception If the expression is invalid
+     */
+    public ExpressionNode parse(String str) throws Exception {
+        this.str = str;
+        this.pos = -1;
+        indices.clear();
+        nextChar();
+        ExpressionNode result = parseExpression();
+        while (ch == ' ') nextChar();
+        if (pos < str.length()) throw unexpected();
+        return result;
+    }
+    
+    /**
+     * Parse the recurrence or a base case of a sequence definition into a tree
+     * whose variable is the sequence index, and in which the sequence's name
+     * refers to its earlier terms ({@link TermNode})
+     * @param str The recurrence or base case value (lowercase)
+     * @param sequence The sequence being defined
+     * @return The root of the parsed tree ({@link ExpressionNode})
+     * @throws Exception If the expression is invalid
+     */
+    public ExpressionNode parseSequence(String str, RecursiveSequence sequence) throws Exception {
+        this.sequence = sequence;
+        try {
+            return parse(str);
+        } finally {
+            this.sequence = null;
+        }
+    }
+    
+    /**
+     * Advance to the next character in the expression
+     */
+    private void nextChar() {
+        ch = (++pos < str.length()) ? str.charAt(pos) : -1;
+    }
+    
+    /**
+     * Eat the current character if it matches the expected character
+     * @param charToEat The expected character to eat
+     * @return {@code true} if the character was eaten, {@code false} otherwise
+     */
+    private boolean eat(int charToEat) {
+        while (ch == ' ') nextChar();
+        if (ch == charToEat) {
+            nextChar();
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Parse the expression
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If the expression is invalid
+     */
+    private ExpressionNode parseExpression() throws Exception {
+        ExpressionNode x = parseTerm();
+        while (true) {
+            if (eat('+')) x = new BinaryNode(BinaryOperator.ADD, x, parseTerm());
+            else if (eat('-')) x = new BinaryNode(BinaryOperator.SUBTRACT, x, parseTerm());
+            else return x;
+        }
+    }
+    
+    /**
+     * Parse a term in the expression
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If the expression is invalid
+     */
+    private ExpressionNode parseTerm() throws Exception {
+        ExpressionNode x = parseFactor();
+        while (true) {
+            if (eat('*')) x = new BinaryNode(BinaryOperator.MULTIPLY, x, parseFactor());
+            else if (eat('/')) x = new BinaryNode(BinaryOperator.DIVIDE, x, parseFactor());
+            else return x;
+        }
+    }
+    
+    /**
+     * Parse a factor in the expression
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If the expression is invalid
+     */
+    private ExpressionNode parseFactor() throws Exception {
+        if (eat('+')) return parseFactor();
+        if (eat('-')) return new NegateNode(parseFactor());
+        
+        ExpressionNode x;
+        int startPos = this.pos;
+        
+        if (eat('(')) {
+            x = parseExpression();
+            expect(')');
+        } else if ((ch >= '0' && ch <= '9') || ch == '.') {
+            while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
+            x = new ConstantNode(parseNumber(startPos));
+        } else if (isIdentifierStart(ch)) {
+            while (isIdentifierPart(ch)) nextChar();
+            String name = str.substring(startPos, this.pos);
+            // Primes select a derivative: f'(x), f''(x)
+            int order = 0;
+            while (ch == '\'') {
+                order++;
+                nextChar();
+            }
+            x = order > 0 ? parseDerivative(name, order, startPos) : parseIdentifier(name, startPos);
+        } else {
+            throw unexpected();
+        }
+        
+        if (eat('^')) x = new BinaryNode(BinaryOperator.POWER, x, parseFactor());
+        
+        return x;
+    }
+    
+    /**
+     * Parse whatever follows an identifier: a constant, the variable {@code x},
+     * a parameter, or a function application
+     * @param name The identifier
+     * @param startPos Position of the identifier in the expression
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If the identifier is unknown or its argument is invalid
+     */
+    private ExpressionNode parseIdentifier(String name, int startPos) throws Exception {
+        // Inside a sum or product body its index shadows everything else
+        IndexNode index = indices.get(name);
+        if (index != null) return index;
+        if (sequence != null) {
+            // In a sequence definition the index replaces x, and the sequence shadows everything else
+            if (name.equals(sequence.getIndexName())) return VARIABLE;
+            if (name.equals(sequence.getName())) return new TermNode(sequence, parseArgument());
+            if (name.equals("x")) throw new ExpressionSyntaxException("Unknown variable: x", startPos);
+        }
+        // Parameters shadow everything else, as with textual substitution
+        if (parameters != null && parameters.contains(name)) {
+            return new ParameterNode(name, parameters, parameters.getSlot(name));
+        }
+        if (name.equals("x")) return VARIABLE;
+        if (name.equals("pi")) return new ConstantNode(Math.PI);
+        if (name.equals("e")) return new ConstantNode(Math.E);
+        
+        boolean userFunction = userFunctions != null && userFunctions.contains(name);
+        if (!userFunction) {
+            // Built-ins taking several arguments
+            if (name.equals("if")) return parseIf();
+            if (name.equals("piecewise")) return parsePiecewise();
+            if (name.equals("min")) return parseExtremum(BinaryOperator.MIN);
+            if (name.equals("max")) return parseExtremum(BinaryOperator.MAX);
+            if (name.equals("sum")) return parseReduction(BinaryOperator.ADD);
+            if (name.equals("prod")) return parseReduction(BinaryOperator.MULTIPLY);
+        }
+        
+        ExpressionNode argument = parseArgument();
+        
+        if (userFunction) {
+            // Link to the shared compiled body instead of compiling a copy
+            return new CallNode(name, userFunctions.resolve(name), argument);
+        }
+        
+        MathFunction function = MathFunction.fromName(name);
+        if (function == null) throw new ExpressionSyntaxException("Unknown function: " + name, startPos);
+        return new FunctionNode(function, argument);
+    }
+    
+    /**
+     * Parse the application of a user function derivative (e.g. {@code f'(x)})
+     * @param name The function name
+     * @param order Number of primes after the name
+     * @param startPos Position of the name in the expression
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If the name is not a user function or its argument is invalid
+     */
+    private ExpressionNode parseDerivative(String name, int order, int startPos) throws Exception {
+        String derivativeName = name + "'".repeat(order);
+        if (userFunctions == null || !userFunctions.contains(name)) {
+            throw new ExpressionSyntaxException("Unknown function: " + derivativeName, startPos);
+        }
+        ExpressionNode argument = parseArgument();
+        return new CallNode(derivativeName, userFunctions.resolveDerivative(name, order), argument);
+    }
+    
+    /**
+     * Parse the arguments of {@code if(condition, whenTrue, whenFalse)}
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If an argument is invalid
+     */
+    private ExpressionNode parseIf() throws Exception {
+        expect('(');
+        ExpressionNode left = parseExpression();
+        Comparison comparison = parseComparison();
+        if (comparison == null) throw expected("comparison");
+        ExpressionNode right = parseExpression();
+        expect(',');
+        ExpressionNode whenTrue = parseExpression();
+        expect(',');
+        ExpressionNode whenFalse = parseExpression();
+        expect(')');
+        return new ConditionalNode(comparison, left, right, whenTrue, whenFalse);
+    }
+    
+    /**
+     * Parse the arguments of {@code piecewise(c1, v1, c2, v2, ..., otherwise)}:
+     * the value of the first condition that holds, else the optional last
+     * value, else undefined
+     * @return The parsed tree, a chain of conditionals ({@link ExpressionNode})
+     * @throws Exception If an argument is invalid
+     */
+    private ExpressionNode parsePiecewise() throws Exception {
+        expect('(');
+        return parsePieces();
+    }
+    
+    /**
+     * Parse the remaining pieces of a piecewise definition, up to its closing parenthesis
+     */
+    private ExpressionNode parsePieces() throws Exception {
+        ExpressionNode left = parseExpression();
+        Comparison comparison = parseComparison();
+        if (comparison == null) {
+            // A value without a condition is the otherwise value, which ends the list
+            expect(')');
+            return left;
+        }
+        ExpressionNode right = parseExpression();
+        expect(',');
+        ExpressionNode value = parseExpression();
+        ExpressionNode rest;
+        if (eat(',')) {
+            rest = parsePieces();
+        } else {
+            expect(')');
+            rest = new ConstantNode(Double.NaN);
+        }
+        return new ConditionalNode(comparison, left, right, value, rest);
+    }
+    
+    /**
+     * Parse the arguments of {@code min} or {@code max}, two or more
+     * @param operator {@link BinaryOperator#MIN} or {@link BinaryOperator#MAX}
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If an argument is invalid
+     */
+    private ExpressionNode parseExtremum(BinaryOperator operator) throws Exception {
+        expect('(');
+        ExpressionNode result = parseExpression();
+        expect(',');
+        do {
+            result = new BinaryNode(operator, result, parseExpression());
+        } while (eat(','));
+        expect(')');
+        return result;
+    }
+    
+    /**
+     * Parse the arguments of {@code sum(k, from, to, body)} or {@code prod(k, from, to, body)}.
+     * The index is only visible in the body; the bounds belong to the enclosing scope.
+     * @param operator {@link BinaryOperator#ADD} or {@link BinaryOperator#MULTIPLY}
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If an argument is invalid
+     */
+    private ExpressionNode parseReduction(BinaryOperator operator) throws Exception {
+        expect('(');
+        while (ch == ' ') nextChar();
+        int namePos = pos;
+        if (!isIdentifierStart(ch)) throw expected("index variable");
+        while (isIdentifierPart(ch)) nextChar();
+        String name = str.substring(namePos, pos);
+        if (name.equals("x") || name.equals("pi") || name.equals("e")) {
+            throw new ExpressionSyntaxException("Invalid index variable: " + name, namePos);
+        }
+        expect(',');
+        ExpressionNode from = parseExpression();
+        expect(',');
+        ExpressionNode to = parseExpression();
+        expect(',');
+        
+        IndexNode index = new IndexNode(name);
+        IndexNode enclosing = indices.put(name, index);
+        ExpressionNode body = parseExpression();
+        if (enclosing != null) {
+            indices.put(name, enclosing);
+        } else {
+            indices.remove(name);
+        }
+        expect(')');
+        return new ReductionNode(operator, index, from, to, body);
+    }
+    
+    /**
+     * Parse a comparison operator: {@code <}, {@code <=}, {@code >}, {@code >=},
+     * or {@code ==} (a single {@code =} also reads as equality)
+     * @return The comparison, or {@code null} if none follows
+     */
+    private Comparison parseComparison() {
+        while (ch == ' ') nextChar();
+        if (ch != '<' && ch != '>' && ch != '=') return null;
+        String symbol = String.valueOf((char) ch);
+        nextChar();
+        if (ch == '=') {
+            symbol += "=";
+            nextChar();
+        }
+        return Comparison.fromSymbol(symbol.equals("=") ? "==" : symbol);
+    }
+    
+    /**
+     * Eat a character that must come next
+     * @throws ExpressionSyntaxException If another character comes next
+     */
+    private void expect(char charToEat) throws ExpressionSyntaxException {
+        if (!eat(charToEat)) throw expected("'" + charToEat + "'");
+    }
+    
+    /**
+     * Build the error for a missing element at the current position
+     */
+    private ExpressionSyntaxException expected(String what) {
+        String found = ch == -1 ? "end of expression" : String.valueOf((char) ch);
+        return new ExpressionSyntaxException("Expected " + what + " but found " + found, Math.min(pos, str.length()));
+    }
+    
+    /**
+     * Parse a function argument: a parenthesized expression (so that
+     * {@code sin(x)^2} squares the sine) or a bare factor ({@code sin x})
+     * @return The parsed tree ({@link ExpressionNode})
+     * @throws Exception If the argument is invalid
+     */
+    private ExpressionNode parseArgument() throws Exception {
+        if (eat('(')) {
+            ExpressionNode argument = parseExpression();
+            expect(')');
+            return argument;
+        }
+        return parseFactor();
+    }
+    
+    /**
+     * Parse the number literal ending at the current position
+     * @param startPos Position of the first digit
+     * @return The number value
+     * @throws ExpressionSyntaxException If the literal is malformed (e.g. {@code 1.2.3})
+     */
+    private double parseNumber(int startPos) throws ExpressionSyntaxException {
+        String literal = str.substring(startPos, this.pos);
+        try {
+            return Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            throw new ExpressionSyntaxException("Invalid number: " + literal, startPos);
+        }
+    }
+    
+    /**
+     * Build the error for the character at the current position
+     */
+    private ExpressionSyntaxException unexpected() {
+        String found = ch == -1 ? "end of expression" : String.valueOf((char) ch);
+        return new ExpressionSyntaxException("Unexpected: " + found, Math.min(pos, str.length()));
+    }
+    
+    private static boolean isIdentifierStart(int c) {
+        return (c >= 'a' && c <= 'z') || c == '_';
+    }
+    
+    private static boolean isIdentifierPart(int c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+}
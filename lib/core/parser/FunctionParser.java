@@ -20,6 +20,18 @@ public class FunctionParser {
     private static final Pattern NAMED_FUNCTION_PATTERN = 
         Pattern.compile("^\\s*([A-Za-z_]\\w*)\\s*\\(\\s*x\\s*\\)\\s*=.*$");
     
+    // Derivative of a named function: f'(x), f''(x)
+    private static final Pattern DERIVATIVE_PATTERN = 
+        Pattern.compile("^\\s*([A-Za-z_]\\w*'+)\\s*\\(\\s*x\\s*\\)\\s*$");
+    
+    // Recursive sequence: a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1 (any index but x)
+    private static final Pattern SEQUENCE_PATTERN = 
+        Pattern.compile("^\\s*([A-Za-z_]\\w*)\\s*\\(\\s*([A-Za-z_]\\w*)\\s*\\)\\s*=(.*)$");
+    
+    // Base case of a sequence: a(0)=1
+    private static final Pattern BASE_CASE_PATTERN = 
+        Pattern.compile("^\\s*([A-Za-z_]\\w*)\\s*\\(\\s*(-?\\d+)\\s*\\)\\s*=(.+)$");
+    
     private static final Pattern INTERSECTION_PATTERN = 
         Pattern.compile("^\\s*\\(.*=.*\\)\\s*$");
     
@@ -90,6 +102,35 @@ public class FunctionParser {
         return NAMED_FUNCTION_PATTERN.matcher(expr).matches();
     }
     
+    /**
+     * Check if an expression is the derivative of a named function (e.g., f'(x))
+     * @param expr Expression to check
+     * @return true if derivative
+     */
+    public static boolean isDerivative(String expr) {
+        return DERIVATIVE_PATTERN.matcher(expr).matches();
+    }
+    
+    /**
+     * Extract the derivative name (e.g., f'' from f''(x))
+     * @param expr Expression to parse
+     * @return Derivative name or null if not a derivative
+     */
+    public static String extractDerivativeName(String expr) {
+        java.util.regex.Matcher matcher = DERIVATIVE_PATTERN.matcher(expr);
+        return matcher.matches() ? matcher.group(1).toLowerCase() : null;
+    }
+    
+    /**
+     * Check if an expression is a recursive sequence definition (e.g., a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1)
+     * @param expr Expression to check
+     * @return true if sequence
+     */
+    public static boolean isSequence(String expr) {
+        java.util.regex.Matcher matcher = SEQUENCE_PATTERN.matcher(expr);
+        return matcher.matches() && !matcher.group(2).equalsIgnoreCase("x");
+    }
+    
     /**
      * Check if an expression is an intersection
      * @param expr Expression to check
@@ -203,6 +244,50 @@ public class FunctionParser {
         }
     }
     
+    /**
+     * Parse a recursive sequence definition (e.g., a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1)
+     * into its recurrence and base cases
+     * @param expr Expression to parse
+     * @return Object array [String name, String index, String recurrence, Map baseCases (value by index)]
+     *         or null if invalid
+     */
+    public static Object[] parseSequence(String expr) {
+        java.util.regex.Matcher matcher = SEQUENCE_PATTERN.matcher(expr);
+        if (!matcher.matches() || matcher.group(2).equalsIgnoreCase("x")) {
+            return null;
+        }
+        String name = matcher.group(1);
+        
+        // The recurrence and each base case are separated by top-level commas
+        List<String> parts = new ArrayList<>();
+        String rest = matcher.group(3);
+        int commaPos;
+        while ((commaPos = findTopLevelComma(rest)) != -1) {
+            parts.add(rest.substring(0, commaPos).trim());
+            rest = rest.substring(commaPos + 1);
+        }
+        parts.add(rest.trim());
+        if (parts.get(0).isEmpty()) {
+            return null;
+        }
+        
+        try {
+            Map<Integer, String> baseCases = new java.util.TreeMap<>();
+            for (String part : parts.subList(1, parts.size())) {
+                java.util.regex.Matcher baseCase = BASE_CASE_PATTERN.matcher(part);
+                if (!baseCase.matches() || !baseCase.group(1).equalsIgnoreCase(name)) {
+                    return null;
+                }
+                if (baseCases.put(Integer.parseInt(baseCase.group(2)), baseCase.group(3).trim()) != null) {
+                    return null; // Defined twice
+                }
+            }
+            return new Object[] { name, matcher.group(2), parts.get(0), baseCases };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
     /**
      * Find the position of the top-level comma (not inside parentheses)
      * Returns -1 if no top-level comma is found
@@ -2,23 +2,26 @@ package lib.model.function.base;
 
 import lib.model.domain.GraphBounds;
 import java.awt.Color;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Abstract class for functions that can be plotted on the graph.
  * Extends Function with color, point computation, and caching.
  * Uses Template Method pattern - subclasses define how points are computed,
- * this class manages the point list and common plottable properties.
+ * this class manages the point buffer and common plottable properties.
  * 
  * Examples: Regular functions, Equations, Inequations, Points
  */
 public abstract class PlottableFunction extends Function {
     
     protected final Color color;
-    protected List<Point2D.Double> cachedPoints;
-    protected boolean pointsCacheValid;
+    protected PointBuffer cachedPoints;
+    protected volatile boolean pointsCacheValid;
+    // Bumped by every invalidation, so one arriving mid-computation is not lost
+    private volatile int cacheGeneration;
+    // View the cached points were computed for
+    private double cachedMinX, cachedMaxX, cachedMinY, cachedMaxY;
+    private int cachedWidth, cachedHeight;
+    private boolean cachedPreview;
     
     /**
      * Create a plottable function with a name and color
@@ -28,7 +31,7 @@ public abstract class PlottableFunction extends Function {
     protected PlottableFunction(String name, Color color) {
         super(name);
         this.color = color;
-        this.cachedPoints = new ArrayList<>();
+        this.cachedPoints = new PointBuffer();
         this.pointsCacheValid = false;
     }
     
@@ -40,37 +43,108 @@ public abstract class PlottableFunction extends Function {
     }
     
     /**
-     * Invalidate the points cache (call when bounds or parameters change)
+     * Invalidate the points cache (call when a value the points depend on changes).
+     * Changes of the view are detected by {@link #getPoints} itself.
      */
     public void invalidateCache() {
         this.pointsCacheValid = false;
+        cacheGeneration++;
+    }
+    
+    /**
+     * Check if the points depend on a parameter's value, so that moving its
+     * slider only recomputes the functions that read it.
+     * Conservative by default: subclasses that know their dependencies override it.
+     * @param name Parameter name (lowercase)
+     * @return true if the points must be recomputed when the parameter changes
+     */
+    public boolean dependsOnParameter(String name) {
+        return true;
     }
     
     /**
      * Get the computed points for this function.
-     * Uses caching - recomputes only if cache is invalid.
+     * Continuous curves may hold breaks ({@link PointBuffer#isBreak}) between polylines.
+     * Uses caching - recomputes only if the cache was invalidated, the view
+     * changed or the function reports its cache stale.
+     * @param bounds Graph bounds
+     * @param width Screen width in pixels
+     * @param height Screen height in pixels
+     * @return Points to plot
+     */
+    public PointBuffer getPoints(GraphBounds bounds, int width, int height) {
+        return getPoints(bounds, width, height, false);
+    }
+    
+    /**
+     * Get the computed points for this function, possibly as a preview.
+     * Preview points may be approximate; exact points cached earlier are
+     * reused for a preview, but preview points are never reused for an exact frame.
      * @param bounds Graph bounds
      * @param width Screen width in pixels
      * @param height Screen height in pixels
-     * @return List of points to plot
+     * @param preview true while the user interacts and speed matters more than accuracy
+     * @return Points to plot
      */
-    public List<Point2D.Double> getPoints(GraphBounds bounds, int width, int height) {
-        if (!pointsCacheValid) {
-            cachedPoints = computePoints(bounds, width, height);
-            pointsCacheValid = true;
+    public PointBuffer getPoints(GraphBounds bounds, int width, int height, boolean preview) {
+        if (!pointsCacheValid || isCacheStale() || !isCachedView(bounds, width, height)
+                || (cachedPreview && !preview)) {
+            int generation = cacheGeneration;
+            cachedPoints = computePoints(bounds, width, height, preview);
+            cachedPreview = preview;
+            // Invalidated while computing, e.g. a slider moved on another thread: recompute next time
+            pointsCacheValid = generation == cacheGeneration;
+            cachedMinX = bounds.getMinX();
+            cachedMaxX = bounds.getMaxX();
+            cachedMinY = bounds.getMinY();
+            cachedMaxY = bounds.getMaxY();
+            cachedWidth = width;
+            cachedHeight = height;
         }
         return cachedPoints;
     }
     
+    /**
+     * Check if the cached points were computed for the given view
+     */
+    private boolean isCachedView(GraphBounds bounds, int width, int height) {
+        return cachedMinX == bounds.getMinX() && cachedMaxX == bounds.getMaxX()
+            && cachedMinY == bounds.getMinY() && cachedMaxY == bounds.getMaxY()
+            && cachedWidth == width && cachedHeight == height;
+    }
+    
+    /**
+     * Check if the cached points are outdated for a reason only the subclass
+     * knows, such as its expression having been compiled against older
+     * definitions
+     * @return true if the points must be recomputed
+     */
+    protected boolean isCacheStale() {
+        return false;
+    }
+    
     /**
      * Compute the points for this function.
      * Subclasses must implement this to define how points are calculated.
      * @param bounds Graph bounds
      * @param width Screen width in pixels
      * @param height Screen height in pixels
-     * @return List of points in graph coordinates
+     * @return Points in graph coordinates
      */
-    protected abstract List<Point2D.Double> computePoints(GraphBounds bounds, int width, int height);
+    protected abstract PointBuffer computePoints(GraphBounds bounds, int width, int height);
+    
+    /**
+     * Compute the points for this function, approximately if it is a preview.
+     * Subclasses without a faster approximate form compute the exact points.
+     * @param bounds Graph bounds
+     * @param width Screen width in pixels
+     * @param height Screen height in pixels
+     * @param preview true if approximate points are acceptable
+     * @return Points in graph coordinates
+     */
+    protected PointBuffer computePoints(GraphBounds bounds, int width, int height, boolean preview) {
+        return computePoints(bounds, width, height);
+    }
     
     /**
      * Check if this function represents a continuous curve
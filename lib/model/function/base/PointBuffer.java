@@ -0,0 +1,137 @@
+package lib.model.function.base;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The points of a plotted function, packed as {@code x, y} pairs in one
+ * {@code double} array instead of one {@link Point2D.Double} object per point.
+ * A curve of thousands of samples takes a third of the memory of a point
+ * list, and recomputing it while panning allocates one array instead of an
+ * object per sample.
+ * Continuous curves may hold breaks ({@link #addBreak}) between polylines,
+ * e.g. at a pole of {@code tan(x)}, across which nothing is drawn.
+ */
+public class PointBuffer {
+    
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    // x of point i at 2i, y at 2i + 1; breaks have undefined coordinates
+    private double[] coordinates;
+    private int size;
+    
+    /**
+     * Create an empty buffer
+     */
+    public PointBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Create an empty buffer with room for a number of points
+     * @param capacity Number of points before the buffer grows
+     */
+    public PointBuffer(int capacity) {
+        this.coordinates = new double[2 * Math.max(capacity, 1)];
+    }
+    
+    /**
+     * Create a buffer holding a copy of another buffer's points
+     * @param other The buffer to copy
+     */
+    public PointBuffer(PointBuffer other) {
+        this.coordinates = Arrays.copyOf(other.coordinates, Math.max(2 * other.size, 2));
+        this.size = other.size;
+    }
+    
+    /**
+     * Create a buffer holding a list of points
+     * @param points Points in graph coordinates
+     */
+    public PointBuffer(List<Point2D.Double> points) {
+        this(points.size());
+        for (Point2D.Double point : points) {
+            add(point.x, point.y);
+        }
+    }
+    
+    /**
+     * Append a point
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void add(double x, double y) {
+        if (2 * size == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, 2 * coordinates.length);
+        }
+        coordinates[2 * size] = x;
+        coordinates[2 * size + 1] = y;
+        size++;
+    }
+    
+    /**
+     * Append a break: the polyline drawn so far ends, and the next point starts a new one
+     */
+    public void addBreak() {
+        add(Double.NaN, Double.NaN);
+    }
+    
+    /**
+     * Remove every point, keeping the storage
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Get the number of points, breaks included
+     */
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Get the X coordinate of a point
+     * @param index Index of the point
+     * @return The X coordinate ({@code double}), NaN for a break
+     */
+    public double getX(int index) {
+        checkIndex(index);
+        return coordinates[2 * index];
+    }
+    
+    /**
+     * Get the Y coordinate of a point
+     * @param index Index of the point
+     * @return The Y coordinate ({@code double}), NaN for a break
+     */
+    public double getY(int index) {
+        checkIndex(index);
+        return coordinates[2 * index + 1];
+    }
+    
+    /**
+     * Check if a point is a break between two polylines ({@link #addBreak})
+     * @param index Index of the point
+     * @return true if the curve is not connected across the point
+     */
+    public boolean isBreak(int index) {
+        return Double.isNaN(getX(index));
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Point " + index + " of " + size);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "PointBuffer[points=" + size + ", capacity=" + coordinates.length / 2 + "]";
+    }
+}
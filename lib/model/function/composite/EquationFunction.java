@@ -1,11 +1,12 @@
 package lib.model.function.composite;
 
 import lib.model.function.base.PlottableFunction;
+import lib.model.function.base.PointBuffer;
 import lib.model.domain.GraphBounds;
+import lib.core.evaluation.CompiledExpression;
+import lib.core.evaluation.ExpressionEvaluator;
 import lib.rendering.IntersectionFinder;
 import java.awt.Color;
-import java.awt.geom.Point2D;
-import java.util.List;
 
 /**
  * A function representing equation solutions as intersection points.
@@ -17,6 +18,9 @@ public class EquationFunction extends PlottableFunction {
     private final String leftExpression;
     private final String rightExpression;
     private final IntersectionFinder intersectionFinder;
+    private CompiledExpression compiledLeft;
+    private CompiledExpression compiledRight;
+    private long compiledVersion = -1;
     
     /**
      * Create an equation function
@@ -61,15 +65,54 @@ public class EquationFunction extends PlottableFunction {
     }
     
     @Override
-    protected List<Point2D.Double> computePoints(GraphBounds bounds, int width, int height) {
+    protected PointBuffer computePoints(GraphBounds bounds, int width, int height) {
+        compileIfStale();
+        if (compiledLeft == null || compiledRight == null) {
+            // Invalid expressions have no intersections
+            return new PointBuffer();
+        }
+        
         // Find all intersection points within the current view
-        return intersectionFinder.findIntersections(
-            leftExpression, 
-            rightExpression,
+        return new PointBuffer(intersectionFinder.findIntersections(
+            compiledLeft, 
+            compiledRight,
             bounds.getMinX(), 
             bounds.getMaxX(),
             width
-        );
+        ));
+    }
+    
+    @Override
+    public boolean dependsOnParameter(String name) {
+        compileIfStale();
+        return (compiledLeft != null && compiledLeft.getDependencies().readsParameter(name))
+            || (compiledRight != null && compiledRight.getDependencies().readsParameter(name));
+    }
+    
+    @Override
+    protected boolean isCacheStale() {
+        return compiledVersion != intersectionFinder.getEvaluator().getVersion();
+    }
+    
+    /**
+     * Recompile both sides when the evaluator's definitions changed since the
+     * last compilation. A side that fails to compile is left null.
+     */
+    private void compileIfStale() {
+        ExpressionEvaluator evaluator = intersectionFinder.getEvaluator();
+        long version = evaluator.getVersion();
+        if (compiledVersion == version) return;
+        compiledVersion = version;
+        compiledLeft = compileOrNull(evaluator, leftExpression);
+        compiledRight = compileOrNull(evaluator, rightExpression);
+    }
+    
+    private CompiledExpression compileOrNull(ExpressionEvaluator evaluator, String expression) {
+        try {
+            return evaluator.compile(expression);
+        } catch (Exception e) {
+            return null;
+        }
     }
     
     @Override
@@ -1,14 +1,14 @@
 package lib.model.function.composite;
 
 import lib.model.function.base.PlottableFunction;
+import lib.model.function.base.PointBuffer;
 import lib.model.domain.GraphBounds;
 import lib.constants.RenderingConstants;
+import lib.core.evaluation.CompiledExpression;
 import lib.core.evaluation.ExpressionEvaluator;
 import lib.util.ValidationUtils;
 import java.awt.Color;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * A function representing an inequation (inequality) region.
@@ -21,6 +21,9 @@ public class InequationFunction extends PlottableFunction {
     private final String rightExpression;
     private final String operator; // ">=", "<=", ">", "<"
     private final ExpressionEvaluator evaluator;
+    private CompiledExpression compiledLeft;
+    private CompiledExpression compiledRight;
+    private long compiledVersion = -1;
     
     /**
      * Create an inequation function
@@ -77,21 +80,42 @@ public class InequationFunction extends PlottableFunction {
     /**
      * Evaluate the left expression at a given x
      * @param x X coordinate
-     * @return Evaluated y value
-     * @throws Exception if evaluation fails
+     * @return Evaluated y value, NaN if undefined or the expression is invalid
      */
-    public double evaluateLeft(double x) throws Exception {
-        return evaluator.evaluate(leftExpression, x);
+    public double evaluateLeft(double x) {
+        compileIfStale();
+        return compiledLeft != null ? compiledLeft.evaluate(x) : Double.NaN;
     }
     
     /**
      * Evaluate the right expression at a given x
      * @param x X coordinate
-     * @return Evaluated y value
-     * @throws Exception if evaluation fails
+     * @return Evaluated y value, NaN if undefined or the expression is invalid
      */
-    public double evaluateRight(double x) throws Exception {
-        return evaluator.evaluate(rightExpression, x);
+    public double evaluateRight(double x) {
+        compileIfStale();
+        return compiledRight != null ? compiledRight.evaluate(x) : Double.NaN;
+    }
+    
+    /**
+     * Evaluate both sides over a column of x values, each as one column
+     * evaluation, which large columns split across threads
+     * @param xs X coordinates
+     * @param leftOut Receives the left values, NaN where undefined or if the expression is invalid
+     * @param rightOut Receives the right values, NaN where undefined or if the expression is invalid
+     */
+    public void evaluateSides(double[] xs, double[] leftOut, double[] rightOut) {
+        compileIfStale();
+        evaluateColumn(compiledLeft, xs, leftOut);
+        evaluateColumn(compiledRight, xs, rightOut);
+    }
+    
+    private static void evaluateColumn(CompiledExpression compiled, double[] xs, double[] out) {
+        if (compiled != null) {
+            compiled.evaluate(xs, out);
+        } else {
+            Arrays.fill(out, 0, xs.length, Double.NaN);
+        }
     }
     
     /**
@@ -100,30 +124,35 @@ public class InequationFunction extends PlottableFunction {
      * @return true if point is in the region
      */
     public boolean satisfiesInequality(double x) {
-        try {
-            double leftValue = evaluator.evaluate(leftExpression, x);
-            double rightValue = evaluator.evaluate(rightExpression, x);
-            
-            if (!ValidationUtils.areAllValid(leftValue, rightValue)) {
-                return false;
-            }
-            
-            switch (operator) {
-                case ">=": return leftValue >= rightValue;
-                case "<=": return leftValue <= rightValue;
-                case ">":  return leftValue > rightValue;
-                case "<":  return leftValue < rightValue;
-                default:   return false;
-            }
-        } catch (Exception e) {
+        return satisfiesInequality(evaluateLeft(x), evaluateRight(x));
+    }
+    
+    /**
+     * Check if already evaluated sides satisfy the inequality
+     * @param leftValue Value of the left expression
+     * @param rightValue Value of the right expression
+     * @return true if both values are valid and satisfy the operator
+     */
+    public boolean satisfiesInequality(double leftValue, double rightValue) {
+        if (!ValidationUtils.areAllValid(leftValue, rightValue)) {
             return false;
         }
+        
+        switch (operator) {
+            case ">=": return leftValue >= rightValue;
+            case "<=": return leftValue <= rightValue;
+            case ">":  return leftValue > rightValue;
+            case "<":  return leftValue < rightValue;
+            default:   return false;
+        }
     }
     
     @Override
-    protected List<Point2D.Double> computePoints(GraphBounds bounds, int width, int height) {
+    protected PointBuffer computePoints(GraphBounds bounds, int width, int height) {
         // Compute the boundary curve (where leftExpression = rightExpression)
-        List<Point2D.Double> boundaryPoints = new ArrayList<>();
+        PointBuffer boundaryPoints = new PointBuffer(RenderingConstants.REGION_SAMPLE_COUNT + 1);
+        compileIfStale();
+        if (compiledLeft == null || compiledRight == null) return boundaryPoints;
         
         int sampleCount = RenderingConstants.REGION_SAMPLE_COUNT;
         double xMin = bounds.getMinX();
@@ -132,24 +161,51 @@ public class InequationFunction extends PlottableFunction {
         
         for (int i = 0; i <= sampleCount; i++) {
             double x = xMin + i * step;
+            double leftY = compiledLeft.evaluate(x);
+            double rightY = compiledRight.evaluate(x);
             
-            try {
-                double leftY = evaluator.evaluate(leftExpression, x);
-                double rightY = evaluator.evaluate(rightExpression, x);
-                
-                // For boundary, we plot the difference (should be near zero at boundary)
-                // But for regions, we typically want to show both curves
-                if (ValidationUtils.areAllValid(leftY, rightY)) {
-                    boundaryPoints.add(new Point2D.Double(x, leftY));
-                }
-            } catch (Exception e) {
-                // Skip invalid points
+            // For boundary, we plot the difference (should be near zero at boundary)
+            // But for regions, we typically want to show both curves
+            if (ValidationUtils.areAllValid(leftY, rightY)) {
+                boundaryPoints.add(x, leftY);
             }
         }
         
         return boundaryPoints;
     }
     
+    @Override
+    public boolean dependsOnParameter(String name) {
+        compileIfStale();
+        return (compiledLeft != null && compiledLeft.getDependencies().readsParameter(name))
+            || (compiledRight != null && compiledRight.getDependencies().readsParameter(name));
+    }
+    
+    @Override
+    protected boolean isCacheStale() {
+        return compiledVersion != evaluator.getVersion();
+    }
+    
+    /**
+     * Recompile both sides when the evaluator's definitions changed since the
+     * last compilation. A side that fails to compile is left null.
+     */
+    private void compileIfStale() {
+        long version = evaluator.getVersion();
+        if (compiledVersion == version) return;
+        compiledVersion = version;
+        compiledLeft = compileOrNull(leftExpression);
+        compiledRight = compileOrNull(rightExpression);
+    }
+    
+    private CompiledExpression compileOrNull(String expression) {
+        try {
+            return evaluator.compile(expression);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
     @Override
     public String getDisplayString() {
         return "(" + leftExpression + " " + operator + " " + rightExpression + ")";
@@ -1,14 +1,19 @@
 package lib.model.function.expression;
 
 import lib.model.function.base.PlottableFunction;
+import lib.model.function.base.PointBuffer;
 import lib.model.domain.GraphBounds;
+import lib.constants.MathConstants;
 import lib.constants.RenderingConstants;
+import lib.core.evaluation.CompiledExpression;
 import lib.core.evaluation.ExpressionEvaluator;
+import lib.core.evaluation.SampleRanges;
+import lib.core.evaluation.node.DoubleDouble;
+import lib.core.evaluation.node.Interval;
+import lib.core.evaluation.node.SampleColumnCache;
 import lib.util.ValidationUtils;
 import java.awt.Color;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * A regular function defined by a mathematical expression: y = f(x)
@@ -19,6 +24,9 @@ public class RegularFunction extends PlottableFunction {
     
     private final String expression;
     private final ExpressionEvaluator evaluator;
+    private CompiledExpression compiled;
+    private long compiledVersion = -1;
+    private int lastSampleCount;
     
     /**
      * Create a function from a mathematical expression
@@ -51,47 +59,253 @@ public class RegularFunction extends PlottableFunction {
     }
     
     @Override
-    protected List<Point2D.Double> computePoints(GraphBounds bounds, int width, int height) {
-        List<Point2D.Double> points = new ArrayList<>();
+    protected PointBuffer computePoints(GraphBounds bounds, int width, int height) {
+        return computePoints(bounds, width, height, false);
+    }
+    
+    @Override
+    protected PointBuffer computePoints(GraphBounds bounds, int width, int height, boolean preview) {
+        PointBuffer points = new PointBuffer();
+        CompiledExpression compiledExpression = getCompiledExpression();
+        if (compiledExpression == null) return points;
         
-        // Adaptive sampling based on zoom level
-        int sampleCount = calculateAdaptiveSamples(bounds, width);
         double xMin = bounds.getMinX();
         double xMax = bounds.getMaxX();
+        if (!compiledExpression.getDependencies().dependsOnX()) {
+            // Same value everywhere: one evaluation gives the whole horizontal line
+            double y = compiledExpression.evaluate(xMin);
+            if (ValidationUtils.isValidValue(y)) {
+                points.add(xMin, y);
+                points.add(xMax, y);
+            }
+            return points;
+        }
+        
+        // Recursive subdivision on the grid xMin + i * step: the curve starts
+        // with one sample every few pixels, and an interval is halved while its
+        // midpoint is off the chord by more than half a pixel. Every level of
+        // halving is evaluated as one column.
+        int span = 1 << RenderingConstants.ADAPTIVE_MAX_DEPTH;
+        int spacing = RenderingConstants.ADAPTIVE_INITIAL_SPACING;
+        int intervals = Math.max(RenderingConstants.MIN_SAMPLES, (width + spacing - 1) / spacing);
+        int sampleCount = intervals * span;
         double step = (xMax - xMin) / sampleCount;
+        boolean fastMath = preview && isFastMathInvisible(bounds, height);
+        Sampler sampler = new Sampler(compiledExpression, xMin, step, sampleCount, isDeepZoom(bounds), fastMath,
+            evaluator);
         
-        for (int i = 0; i <= sampleCount; i++) {
-            double x = xMin + i * step;
+        // Bound each initial interval with interval arithmetic first. An
+        // interval proven off-screen keeps only its ends: the segment between
+        // them is off-screen on the same side. An interval where the function
+        // is undefined is dropped. An unbounded one may hold a pole. The
+        // bounds are independent, so they are computed in parallel.
+        Interval[] ranges = new Interval[intervals];
+        SampleRanges.forEach(intervals, compiledExpression.getCost(), (from, to) -> {
+            for (int k = from; k < to; k++) {
+                ranges[k] = compiledExpression.evaluateInterval(xMin + k * span * step, xMin + (k + 1) * span * step);
+            }
+        });
+        int[] ends = new int[intervals + 1];
+        int endCount = 0;
+        int[] pending = new int[intervals];
+        boolean[] singular = new boolean[intervals];
+        int pendingCount = 0;
+        for (int k = 0; k < intervals; k++) {
+            int start = k * span;
+            Interval range = ranges[k];
+            if (range.isEmpty()) continue;
             
-            try {
-                double y = evaluator.evaluate(expression, x);
-                
-                if (ValidationUtils.isValidValue(y)) {
-                    points.add(new Point2D.Double(x, y));
+            if (endCount == 0 || ends[endCount - 1] != start) ends[endCount++] = start;
+            ends[endCount++] = start + span;
+            if (!range.isOutside(bounds.getMinY(), bounds.getMaxY())) {
+                singular[pendingCount] = isUnbounded(range);
+                pending[pendingCount++] = start;
+            }
+        }
+        sampler.evaluate(ends, endCount);
+        
+        // Halve the pending intervals level by level, down to the grid step.
+        // When the budget cannot cover a level, the intervals furthest off
+        // their chord are halved first. The half of an unbounded interval
+        // that is still unbounded, when the other is not, is halved whatever
+        // its chord, so that a pole is narrowed down to a single step; that
+        // costs one sample per level, not the resolution of an infinite slope.
+        double pixelsPerUnit = height / bounds.getRangeY();
+        double[] deviations = new double[pendingCount];
+        Arrays.fill(deviations, Double.POSITIVE_INFINITY);
+        int pendingSpan = span;
+        for (int half = span / 2; half >= 1 && pendingCount > 0; half /= 2) {
+            int remaining = RenderingConstants.ADAPTIVE_SAMPLE_BUDGET - sampler.getCount();
+            if (remaining <= 0) break;
+            if (pendingCount > remaining) {
+                pendingCount = keepLargest(pending, deviations, singular, pendingCount, remaining);
+            }
+            
+            int[] midpoints = new int[pendingCount];
+            for (int i = 0; i < pendingCount; i++) {
+                midpoints[i] = pending[i] + half;
+            }
+            sampler.evaluate(midpoints, pendingCount);
+            
+            int[] next = new int[2 * pendingCount];
+            double[] nextDeviations = new double[2 * pendingCount];
+            boolean[] nextSingular = new boolean[2 * pendingCount];
+            int nextCount = 0;
+            for (int i = 0; i < pendingCount; i++) {
+                int start = pending[i];
+                double deviation = chordDeviation(sampler.y(start), sampler.y(start + half),
+                    sampler.y(start + 2 * half), bounds, pixelsPerUnit);
+                boolean curved = deviation > RenderingConstants.ADAPTIVE_TOLERANCE;
+                // Only a single unbounded half locates a pole; when both halves
+                // stay unbounded the bound is merely loose (e.g. 1/(1/a) at a = 0)
+                boolean lowerUnbounded = singular[i] && isUnbounded(compiledExpression.evaluateInterval(
+                    xMin + start * step, xMin + (start + half) * step));
+                boolean upperUnbounded = singular[i] && isUnbounded(compiledExpression.evaluateInterval(
+                    xMin + (start + half) * step, xMin + (start + 2 * half) * step));
+                for (int child = start; child < start + 2 * half; child += half) {
+                    boolean unbounded = (child == start ? lowerUnbounded : upperUnbounded)
+                        && lowerUnbounded != upperUnbounded;
+                    if (curved || unbounded) {
+                        next[nextCount] = child;
+                        nextDeviations[nextCount] = deviation;
+                        nextSingular[nextCount++] = unbounded;
+                    }
                 }
-            } catch (Exception e) {
-                // Skip invalid points
+            }
+            pending = next;
+            deviations = nextDeviations;
+            singular = nextSingular;
+            pendingCount = nextCount;
+            pendingSpan = half;
+        }
+        
+        // Steps still unbounded at the grid resolution hold a singularity
+        if (pendingSpan == 1) {
+            for (int i = 0; i < pendingCount; i++) {
+                if (singular[i]) sampler.markBreak(pending[i]);
             }
         }
         
-        return points;
+        PointBuffer result = sampler.getPoints(bounds, pixelsPerUnit);
+        lastSampleCount = sampler.getCount();
+        return result;
     }
     
     /**
-     * Calculate adaptive sample count based on zoom level
+     * Check if an interval bound is infinite, as over a pole
      */
-    private int calculateAdaptiveSamples(GraphBounds bounds, int pixelWidth) {
-        double viewRangeX = bounds.getRangeX();
-        double baseSamples = pixelWidth;
-        
-        // Increase samples when zoomed in (smaller range)
-        double zoomFactor = 40.0 / Math.max(1.0, viewRangeX);
-        int samples = (int) (baseSamples * Math.sqrt(zoomFactor));
-        
-        // Clamp to reasonable limits
-        return ValidationUtils.clamp(samples, 
-            RenderingConstants.MIN_SAMPLES, 
-            RenderingConstants.MAX_SAMPLES);
+    private static boolean isUnbounded(Interval range) {
+        return Double.isInfinite(range.getLo()) || Double.isInfinite(range.getHi());
+    }
+    
+    /**
+     * Measure how far the midpoint of an interval lies from the chord between its ends
+     * @param a Value at the start of the interval
+     * @param mid Value at the midpoint
+     * @param b Value at the end of the interval
+     * @param bounds Graph bounds
+     * @param pixelsPerUnit Screen pixels per unit of y
+     * @return The vertical distance in pixels: infinite where the interval
+     *         reaches an edge of the domain, 0 where it is undefined or off-screen on one side
+     */
+    private static double chordDeviation(double a, double mid, double b, GraphBounds bounds, double pixelsPerUnit) {
+        boolean validA = ValidationUtils.isValidValue(a);
+        boolean validMid = ValidationUtils.isValidValue(mid);
+        boolean validB = ValidationUtils.isValidValue(b);
+        if (!validA || !validMid || !validB) {
+            // Locate the edge down to the grid step, unless there is no defined value at all
+            return validA || validMid || validB ? Double.POSITIVE_INFINITY : 0.0;
+        }
+        double minY = bounds.getMinY();
+        double maxY = bounds.getMaxY();
+        if ((a > maxY && mid > maxY && b > maxY) || (a < minY && mid < minY && b < minY)) return 0.0;
+        return Math.abs(mid - (a + b) / 2) * pixelsPerUnit;
+    }
+    
+    /**
+     * Keep the intervals with the largest deviations, in place
+     * @param starts Start of each interval
+     * @param deviations Deviation of each interval, in the same order
+     * @param singular Whether each interval may hold a pole, in the same order
+     * @param count Number of intervals
+     * @param limit Number of intervals to keep
+     * @return The number of intervals kept
+     */
+    private static int keepLargest(int[] starts, double[] deviations, boolean[] singular, int count, int limit) {
+        double[] sorted = Arrays.copyOf(deviations, count);
+        Arrays.sort(sorted);
+        double threshold = sorted[count - limit];
+        // Above the threshold first, then ties up to the limit
+        int above = 0;
+        for (int i = 0; i < count; i++) {
+            if (deviations[i] > threshold) above++;
+        }
+        int ties = limit - above;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (deviations[i] > threshold || (deviations[i] == threshold && ties-- > 0)) {
+                starts[kept] = starts[i];
+                singular[kept] = singular[i];
+                deviations[kept++] = deviations[i];
+            }
+        }
+        return kept;
+    }
+    
+    /**
+     * Check if the view is so narrow that sample positions are only a few
+     * ulps apart, so rounding them to doubles would turn the curve into stairs
+     */
+    private boolean isDeepZoom(GraphBounds bounds) {
+        double magnitude = Math.max(1.0, Math.max(Math.abs(bounds.getMinX()), Math.abs(bounds.getMaxX())));
+        return bounds.getRangeX() < MathConstants.DEEP_ZOOM_RANGE * magnitude;
+    }
+    
+    /**
+     * Check if the error of the fast-math approximations stays below a
+     * pixel: it is relative to the magnitude of the values, so it only shows
+     * when zoomed in far from the origin
+     */
+    private boolean isFastMathInvisible(GraphBounds bounds, int height) {
+        double pixel = bounds.getRangeY() / Math.max(1, height);
+        double magnitude = Math.max(1.0, Math.max(Math.abs(bounds.getMinY()), Math.abs(bounds.getMaxY())));
+        return MathConstants.FAST_MATH_MAX_ERROR * magnitude < pixel;
+    }
+    
+    @Override
+    public boolean dependsOnParameter(String name) {
+        CompiledExpression compiledExpression = getCompiledExpression();
+        return compiledExpression != null && compiledExpression.getDependencies().readsParameter(name);
+    }
+    
+    @Override
+    protected boolean isCacheStale() {
+        return compiledVersion != evaluator.getVersion();
+    }
+    
+    /**
+     * Get the compiled form of the expression, recompiling it only when the
+     * evaluator's definitions changed since the last compilation
+     * @return The compiled expression, or null if the expression is invalid
+     */
+    private CompiledExpression getCompiledExpression() {
+        long version = evaluator.getVersion();
+        if (compiledVersion != version) {
+            compiledVersion = version;
+            try {
+                compiled = evaluator.compile(expression);
+            } catch (Exception e) {
+                compiled = null;
+            }
+        }
+        return compiled;
+    }
+    
+    /**
+     * Get the number of samples evaluated for the last computed points
+     */
+    public int getLastSampleCount() {
+        return lastSampleCount;
     }
     
     @Override
@@ -103,4 +317,202 @@ public class RegularFunction extends PlottableFunction {
     public boolean isContinuous() {
         return true;
     }
+    
+    /**
+     * Samples of one curve on the grid {@code xMin + i * step}, evaluated a
+     * column at a time. Every curve of the frame samples the same grid, so
+     * user function columns are shared through the {@link SampleColumnCache}.
+     * At deep zoom each position {@code xMin + i * step} is kept exactly and
+     * evaluated in double-double precision instead, so cancellation no longer
+     * shows.
+     * The samples become polylines split at gaps where the function is
+     * undefined, and at jumps and poles between neighbouring grid samples.
+     */
+    private static final class Sampler {
+        private final CompiledExpression expression;
+        private final double xMin;
+        private final double step;
+        private final boolean deepZoom;
+        private final boolean fastMath;
+        private final SampleColumnCache columns;
+        private final double[] xs;
+        private final double[] ys;
+        private final boolean[] known;
+        // Steps from each grid index to the next that hold a singularity
+        private final boolean[] breaks;
+        // Double-double result of valueAt, reused so deep zoom allocates nothing per sample
+        private final double[] scratch = new double[2];
+        private int count;
+        private int bisections;
+        
+        Sampler(CompiledExpression expression, double xMin, double step, int sampleCount, boolean deepZoom,
+                boolean fastMath, ExpressionEvaluator evaluator) {
+            this.expression = expression;
+            this.xMin = xMin;
+            this.step = step;
+            this.deepZoom = deepZoom;
+            this.fastMath = fastMath;
+            this.columns = evaluator.getSampleColumnCache();
+            this.xs = new double[sampleCount + 1];
+            this.ys = new double[sampleCount + 1];
+            this.known = new boolean[sampleCount + 1];
+            this.breaks = new boolean[sampleCount + 1];
+            if (!deepZoom) {
+                columns.prepare(evaluator.getContext().getVersion(), xMin, step, sampleCount + 1, fastMath);
+            }
+        }
+        
+        /**
+         * Evaluate the curve at the given grid indices
+         * @param indices Grid indices, none of them evaluated before
+         * @param length Number of indices
+         */
+        void evaluate(int[] indices, int length) {
+            count += length;
+            if (deepZoom) {
+                // Samples are evaluated one by one, so the column is split here
+                SampleRanges.forEach(length, expression.getCost(), (from, to) -> {
+                    // One buffer per range, as ranges may run on several threads
+                    double[] value = new double[2];
+                    for (int i = from; i < to; i++) {
+                        int index = indices[i];
+                        DoubleDouble.add(xMin, 0.0, index * step, 0.0, value);
+                        xs[index] = value[0];
+                        expression.evaluateDoubleDouble(value[0], value[1], value);
+                        ys[index] = value[0] + value[1];
+                        known[index] = true;
+                    }
+                });
+                return;
+            }
+            
+            int[] column = Arrays.copyOf(indices, length);
+            double[] columnXs = new double[length];
+            double[] columnYs = new double[length];
+            for (int i = 0; i < length; i++) {
+                columnXs[i] = xMin + column[i] * step;
+            }
+            if (fastMath) {
+                expression.evaluateFast(columnXs, columnYs, column, columns);
+            } else {
+                expression.evaluate(columnXs, columnYs, column, columns);
+            }
+            for (int i = 0; i < length; i++) {
+                xs[column[i]] = columnXs[i];
+                ys[column[i]] = columnYs[i];
+                known[column[i]] = true;
+            }
+        }
+        
+        /**
+         * Evaluate the curve at a position between grid samples
+         * @param position Fractional grid index
+         * @return The value at {@code xMin + position * step}
+         */
+        double valueAt(double position) {
+            count++;
+            if (deepZoom) {
+                DoubleDouble.add(xMin, 0.0, position * step, 0.0, scratch);
+                expression.evaluateDoubleDouble(scratch[0], scratch[1], scratch);
+                return scratch[0] + scratch[1];
+            }
+            return expression.evaluate(xMin + position * step);
+        }
+        
+        /**
+         * Record that the step from a grid index to the next holds a singularity
+         */
+        void markBreak(int index) {
+            breaks[index] = true;
+        }
+        
+        /**
+         * Check if the curve jumps between two neighbouring grid samples.
+         * A step from above the view to below it (or back) is a pole, as a
+         * sign flip with exploding magnitude. Other steps are bisected towards
+         * the larger change: across a continuous segment the change shrinks by
+         * at least a quarter with every halving, across a jump it stays and
+         * across a pole it grows. Bisections are bounded per curve, so
+         * aliased oscillations cannot take over the frame.
+         * @param index Grid index of the first sample
+         * @param bounds Graph bounds
+         * @return true if the step holds a jump or a pole
+         */
+        boolean isJump(int index, GraphBounds bounds) {
+            double minY = bounds.getMinY();
+            double maxY = bounds.getMaxY();
+            if ((ys[index] > maxY && ys[index + 1] < minY) || (ys[index] < minY && ys[index + 1] > maxY)) return true;
+            if (bisections >= RenderingConstants.DISCONTINUITY_SAMPLE_BUDGET) return false;
+            
+            double lo = index;
+            double hi = index + 1;
+            double yLo = ys[index];
+            double yHi = ys[index + 1];
+            for (int i = 0; i < RenderingConstants.DISCONTINUITY_BISECTIONS; i++) {
+                double mid = (lo + hi) / 2;
+                double yMid = valueAt(mid);
+                bisections++;
+                // Undefined in between
+                if (!ValidationUtils.isValidValue(yMid)) return true;
+                double change = Math.abs(yHi - yLo);
+                if (Math.abs(yMid - yLo) > Math.abs(yHi - yMid)) {
+                    hi = mid;
+                    yHi = yMid;
+                } else {
+                    lo = mid;
+                    yLo = yMid;
+                }
+                if (Math.abs(yHi - yLo) < 0.75 * change) return false;
+            }
+            return true;
+        }
+        
+        /**
+         * Get the value at an evaluated grid index
+         */
+        double y(int index) {
+            return ys[index];
+        }
+        
+        /**
+         * Get the number of samples evaluated so far
+         */
+        int getCount() {
+            return count;
+        }
+        
+        /**
+         * Get the valid samples as points, in order of x, with a break
+         * ({@link PointBuffer#addBreak}) wherever the curve is not
+         * connected: across undefined samples, singular steps, and steps
+         * rising more than {@link RenderingConstants#DISCONTINUITY_MIN_PIXELS}
+         * that turn out to be jumps
+         * @param bounds Graph bounds
+         * @param pixelsPerUnit Screen pixels per unit of y
+         */
+        PointBuffer getPoints(GraphBounds bounds, double pixelsPerUnit) {
+            PointBuffer points = new PointBuffer(count);
+            int previous = -1;
+            boolean gap = false;
+            for (int i = 0; i < known.length; i++) {
+                if (!known[i]) continue;
+                if (!ValidationUtils.isValidValue(ys[i])) {
+                    gap = true;
+                    continue;
+                }
+                boolean split = gap;
+                if (!split && previous >= 0 && i == previous + 1) {
+                    double rise = Math.abs(ys[i] - ys[previous]) * pixelsPerUnit;
+                    split = breaks[previous] || (rise > RenderingConstants.DISCONTINUITY_MIN_PIXELS && isJump(previous, bounds));
+                }
+                if (split && previous >= 0) {
+                    points.addBreak();
+                }
+                points.add(xs[i], ys[i]);
+                previous = i;
+                gap = false;
+            }
+            return points;
+        }
+    }
 }
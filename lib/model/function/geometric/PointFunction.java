@@ -1,21 +1,24 @@
 package lib.model.function.geometric;
 
 import lib.model.function.base.PlottableFunction;
-import lib.model.function.definition.SetFunction;
+import lib.model.function.base.PointBuffer;
 import lib.model.domain.GraphBounds;
+import lib.core.evaluation.CompiledExpression;
+import lib.core.evaluation.EvaluationContext;
 import lib.core.evaluation.ExpressionEvaluator;
+import lib.core.evaluation.node.RecursiveSequence;
+import lib.constants.MathConstants;
 import lib.util.ValidationUtils;
 import java.awt.Color;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A unified function representing point(s) on the graph.
  * Supports both:
  * - Parametric points with expression coordinates (e.g., P=(a,0) or P=(S,0) where S is a set)
  * - Static point sets with fixed coordinates
+ * - Recursive sequences, plotted as the points (n, a(n)) (e.g., a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1)
  * 
  * This unifies ParametricPointFunction and PointSetFunction into a single class.
  */
@@ -25,10 +28,19 @@ public class PointFunction extends PlottableFunction {
     private final String xExpression;
     private final String yExpression;
     private final ExpressionEvaluator evaluator;
-    private Map<String, SetFunction> availableSets;
+    // Sets the cached points were computed from, compared by identity
+    private List<Double> readXSet;
+    private List<Double> readYSet;
+    private CompiledExpression compiledX;
+    private CompiledExpression compiledY;
+    private long compiledVersion = -1;
+    
+    // Sequence mode fields
+    private final String sequenceDefinition;
+    private RecursiveSequence compiledSequence;
     
     // Static mode fields
-    private final List<Point2D.Double> staticPoints;
+    private final PointBuffer staticPoints;
     
     // Mode flag
     private final boolean isParametric;
@@ -47,11 +59,28 @@ public class PointFunction extends PlottableFunction {
         this.xExpression = xExpression;
         this.yExpression = yExpression;
         this.evaluator = evaluator;
-        this.availableSets = new java.util.HashMap<>();
+        this.sequenceDefinition = null;
         this.staticPoints = null;
         this.isParametric = true;
     }
     
+    /**
+     * Create a recursive sequence plotted as discrete points
+     * @param name Sequence name (e.g., "a")
+     * @param definition Recurrence and base cases (e.g., "a(n)=a(n-1)+a(n-2), a(0)=0, a(1)=1")
+     * @param color Display color
+     * @param evaluator Expression evaluator to use
+     */
+    public PointFunction(String name, String definition, Color color, ExpressionEvaluator evaluator) {
+        super(name, color);
+        this.xExpression = null;
+        this.yExpression = null;
+        this.evaluator = evaluator;
+        this.sequenceDefinition = definition;
+        this.staticPoints = null;
+        this.isParametric = false;
+    }
+    
     /**
      * Create a static point set function with fixed coordinates
      * @param name Function name
@@ -63,8 +92,8 @@ public class PointFunction extends PlottableFunction {
         this.xExpression = null;
         this.yExpression = null;
         this.evaluator = null;
-        this.availableSets = null;
-        this.staticPoints = new ArrayList<>(points); // Defensive copy
+        this.sequenceDefinition = null;
+        this.staticPoints = new PointBuffer(points); // Defensive copy
         this.isParametric = false;
     }
     
@@ -83,10 +112,10 @@ public class PointFunction extends PlottableFunction {
         this.xExpression = null;
         this.yExpression = null;
         this.evaluator = null;
-        this.availableSets = null;
-        this.staticPoints = new ArrayList<>();
+        this.sequenceDefinition = null;
+        this.staticPoints = new PointBuffer(xValues.length);
         for (int i = 0; i < xValues.length; i++) {
-            this.staticPoints.add(new Point2D.Double(xValues[i], yValues[i]));
+            this.staticPoints.add(xValues[i], yValues[i]);
         }
         this.isParametric = false;
     }
@@ -99,13 +128,10 @@ public class PointFunction extends PlottableFunction {
     }
     
     /**
-     * Set the available sets that can be referenced in parametric coordinates
-     * @param sets Map of set name to SetFunction
+     * Check if this is a recursive sequence
      */
-    public void setAvailableSets(Map<String, SetFunction> sets) {
-        if (!isParametric) return;
-        this.availableSets = sets != null ? sets : new java.util.HashMap<>();
-        invalidateCache(); // Recompute points when sets change
+    public boolean isSequence() {
+        return sequenceDefinition != null;
     }
     
     /**
@@ -128,10 +154,10 @@ public class PointFunction extends PlottableFunction {
      * @param y Y coordinate
      */
     public void addPoint(double x, double y) {
-        if (isParametric) {
+        if (staticPoints == null) {
             throw new UnsupportedOperationException("Cannot add points to parametric point function");
         }
-        staticPoints.add(new Point2D.Double(x, y));
+        staticPoints.add(x, y);
         invalidateCache();
     }
     
@@ -139,7 +165,7 @@ public class PointFunction extends PlottableFunction {
      * Clear all points (static mode only)
      */
     public void clearPoints() {
-        if (isParametric) {
+        if (staticPoints == null) {
             throw new UnsupportedOperationException("Cannot clear points in parametric point function");
         }
         staticPoints.clear();
@@ -150,54 +176,62 @@ public class PointFunction extends PlottableFunction {
      * Get the number of points (static mode only)
      */
     public int getPointCount() {
-        return isParametric ? 0 : staticPoints.size();
+        return staticPoints == null ? 0 : staticPoints.size();
     }
     
     @Override
-    protected List<Point2D.Double> computePoints(GraphBounds bounds, int width, int height) {
+    protected PointBuffer computePoints(GraphBounds bounds, int width, int height) {
+        if (isSequence()) {
+            return computeSequencePoints(bounds, width);
+        }
+        
         if (!isParametric) {
             // Static mode: return the fixed point set
-            return new ArrayList<>(staticPoints);
+            return new PointBuffer(staticPoints);
         }
         
         // Parametric mode: evaluate expressions
-        List<Point2D.Double> points = new ArrayList<>();
+        PointBuffer points = new PointBuffer();
+        compileIfStale();
         
-        // Check if either coordinate references a set
-        SetFunction xSet = getReferencedSet(xExpression);
-        SetFunction ySet = getReferencedSet(yExpression);
+        // Check if either coordinate references a set, in one snapshot of the sets
+        EvaluationContext context = evaluator.getContext();
+        List<Double> xSet = getReferencedSet(context, xExpression);
+        List<Double> ySet = getReferencedSet(context, yExpression);
+        readXSet = xSet;
+        readYSet = ySet;
         
         if (xSet != null && ySet != null) {
             // Both coordinates are sets - create cartesian product
-            for (double x : xSet.getValues()) {
-                for (double y : ySet.getValues()) {
+            for (double x : xSet) {
+                for (double y : ySet) {
                     if (ValidationUtils.areAllValid(x, y)) {
-                        points.add(new Point2D.Double(x, y));
+                        points.add(x, y);
                     }
                 }
             }
         } else if (xSet != null) {
             // X is a set, Y is an expression
-            double yVal = evaluateCoordinate(yExpression);
+            double yVal = evaluateCoordinate(compiledY);
             if (ValidationUtils.isValidValue(yVal)) {
-                for (double x : xSet.getValues()) {
-                    points.add(new Point2D.Double(x, yVal));
+                for (double x : xSet) {
+                    points.add(x, yVal);
                 }
             }
         } else if (ySet != null) {
             // Y is a set, X is an expression
-            double xVal = evaluateCoordinate(xExpression);
+            double xVal = evaluateCoordinate(compiledX);
             if (ValidationUtils.isValidValue(xVal)) {
-                for (double y : ySet.getValues()) {
-                    points.add(new Point2D.Double(xVal, y));
+                for (double y : ySet) {
+                    points.add(xVal, y);
                 }
             }
         } else {
             // Both are simple expressions
-            double x = evaluateCoordinate(xExpression);
-            double y = evaluateCoordinate(yExpression);
+            double x = evaluateCoordinate(compiledX);
+            double y = evaluateCoordinate(compiledY);
             if (ValidationUtils.areAllValid(x, y)) {
-                points.add(new Point2D.Double(x, y));
+                points.add(x, y);
             }
         }
         
@@ -205,31 +239,113 @@ public class PointFunction extends PlottableFunction {
     }
     
     /**
-     * Check if a coordinate expression references a set
+     * Compute the terms of the sequence whose index is in view, at most one
+     * per pixel column. The memo table keeps the terms between frames, so
+     * panning only computes the terms that came into view.
+     * @param bounds The visible graph bounds
+     * @param width Screen width in pixels
      */
-    private SetFunction getReferencedSet(String expr) {
-        if (expr == null || availableSets == null) {
-            return null;
+    private PointBuffer computeSequencePoints(GraphBounds bounds, int width) {
+        PointBuffer points = new PointBuffer();
+        compileIfStale();
+        if (compiledSequence == null) {
+            return points;
         }
         
-        String trimmed = expr.trim();
+        // Terms beyond the memo table limit are undefined, so the view is clipped to it
+        double first = compiledSequence.getFirstIndex();
+        double from = Math.max(Math.ceil(bounds.getMinX()), first);
+        double to = Math.min(Math.floor(bounds.getMaxX()), first + MathConstants.MAX_SEQUENCE_TERMS - 1);
+        // Zoomed out past one index per pixel, only every few terms are plotted, like the
+        // samples of a curve; indices are multiples of the stride so panning keeps the same terms
+        double stride = Math.max(1.0, Math.ceil((to - from + 1) / Math.max(width, 1)));
+        from = first + Math.ceil((from - first) / stride) * stride;
+        for (double n = from; n <= to; n += stride) {
+            double value = compiledSequence.term(n);
+            if (ValidationUtils.isValidValue(value)) {
+                points.add(n, value);
+            }
+        }
+        return points;
+    }
+    
+    @Override
+    public boolean dependsOnParameter(String name) {
+        if (isSequence()) {
+            compileIfStale();
+            return compiledSequence != null && compiledSequence.readsParameter(name);
+        }
+        if (!isParametric) return false;
+        compileIfStale();
+        return (compiledX != null && compiledX.getDependencies().readsParameter(name))
+            || (compiledY != null && compiledY.getDependencies().readsParameter(name));
+    }
+    
+    @Override
+    protected boolean isCacheStale() {
+        if (isSequence()) return compiledVersion != evaluator.getVersion();
+        if (!isParametric) return false;
+        if (compiledVersion != evaluator.getVersion()) return true;
         
-        // Check if it's a simple set reference (just the set name)
-        if (availableSets.containsKey(trimmed)) {
-            return availableSets.get(trimmed);
+        // A set this point reads was replaced
+        EvaluationContext context = evaluator.getContext();
+        return getReferencedSet(context, xExpression) != readXSet
+            || getReferencedSet(context, yExpression) != readYSet;
+    }
+    
+    /**
+     * Check if a coordinate expression references a set
+     * @return The set's values, or null if the expression is not a set name
+     */
+    private List<Double> getReferencedSet(EvaluationContext context, String expr) {
+        if (expr == null) {
+            return null;
         }
         
-        return null;
+        // Only a simple set reference (just the set name) counts
+        return context.getSet(expr.trim());
+    }
+    
+    /**
+     * Evaluate a compiled coordinate expression to a numeric value
+     */
+    private double evaluateCoordinate(CompiledExpression expr) {
+        if (expr == null) {
+            return Double.NaN;
+        }
+        return expr.evaluate(0); // x=0 for parameter evaluation
     }
     
     /**
-     * Evaluate a coordinate expression to a numeric value
+     * Recompile the coordinate expressions when the evaluator's definitions
+     * changed since the last compilation
      */
-    private double evaluateCoordinate(String expr) {
+    private void compileIfStale() {
+        long version = evaluator.getVersion();
+        if (compiledVersion == version) return;
+        compiledVersion = version;
+        if (isSequence()) {
+            // A new sequence starts with an empty memo table
+            compiledSequence = compileSequenceOrNull();
+            return;
+        }
+        compiledX = compileOrNull(xExpression);
+        compiledY = compileOrNull(yExpression);
+    }
+    
+    private CompiledExpression compileOrNull(String expr) {
         try {
-            return evaluator.evaluate(expr, 0); // x=0 for parameter evaluation
+            return evaluator.compile(expr);
         } catch (Exception e) {
-            return Double.NaN;
+            return null;
+        }
+    }
+    
+    private RecursiveSequence compileSequenceOrNull() {
+        try {
+            return evaluator.compileSequence(sequenceDefinition);
+        } catch (Exception e) {
+            return null;
         }
     }
     
@@ -305,11 +421,17 @@ public class PointFunction extends PlottableFunction {
         return token.equals("sin") || token.equals("cos") || token.equals("tan") ||
                token.equals("sqrt") || token.equals("abs") || token.equals("log") ||
                token.equals("ln") || token.equals("exp") || token.equals("floor") ||
-               token.equals("ceil");
+               token.equals("ceil") || token.equals("sign") || token.equals("min") ||
+               token.equals("max") || token.equals("if") || token.equals("piecewise") ||
+               token.equals("sum") || token.equals("prod");
     }
     
     @Override
     public String getDisplayString() {
+        if (isSequence()) {
+            return sequenceDefinition;
+        }
+        
         if (!isParametric) {
             // Static mode: show point count
             return name + " (" + staticPoints.size() + " points)";
@@ -1,6 +1,7 @@
 package lib.rendering;
 
 import lib.model.function.base.PlottableFunction;
+import lib.model.function.base.PointBuffer;
 import lib.model.function.composite.InequationFunction;
 import lib.model.domain.GraphBounds;
 import lib.constants.RenderingConstants;
@@ -8,7 +9,6 @@ import lib.core.evaluation.ExpressionEvaluator;
 import lib.rendering.pipeline.*;
 import lib.util.ValidationUtils;
 import java.awt.*;
-import java.awt.geom.Point2D;
 import java.util.List;
 
 /**
@@ -20,6 +20,7 @@ public class GraphRenderer {
     private final GridRenderer gridRenderer;
     private final AxisRenderer axisRenderer;
     private final GraphBounds bounds;
+    private final ColumnDecimator decimator = new ColumnDecimator(RenderingConstants.MAX_SAMPLES);
     
     /**
      * Create a graph renderer
@@ -37,6 +38,14 @@ public class GraphRenderer {
      * Main render method - coordinates all rendering using polymorphism
      */
     public void render(Graphics2D g2, List<PlottableFunction> functions, int width, int height) {
+        render(g2, functions, width, height, false);
+    }
+    
+    /**
+     * Render a frame, as a preview while the user pans or drags a slider.
+     * Preview frames may use approximate points, which the settled frame replaces.
+     */
+    public void render(Graphics2D g2, List<PlottableFunction> functions, int width, int height, boolean preview) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
         // Draw grid and axes
@@ -47,7 +56,7 @@ public class GraphRenderer {
         for (PlottableFunction function : functions) {
             if (!function.isEnabled()) continue;
             
-            renderFunction(g2, function, width, height);
+            renderFunction(g2, function, width, height, preview);
         }
     }
     
@@ -55,9 +64,10 @@ public class GraphRenderer {
      * Render a single function using polymorphism.
      * The function itself knows how to compute its points.
      */
-    private void renderFunction(Graphics2D g2, PlottableFunction function, int width, int height) {
+    private void renderFunction(Graphics2D g2, PlottableFunction function, int width, int height,
+                                boolean preview) {
         // Get points from the function (uses caching internally)
-        List<Point2D.Double> points = function.getPoints(bounds, width, height);
+        PointBuffer points = function.getPoints(bounds, width, height, preview);
         
         if (points.isEmpty()) return;
         
@@ -78,37 +88,48 @@ public class GraphRenderer {
     }
     
     /**
-     * Render a continuous curve by connecting points
+     * Render a continuous curve by connecting points, starting a new polyline after each break.
+     * Points are decimated to at most four per pixel column before drawing.
      */
-    private void renderContinuousCurve(Graphics2D g2, List<Point2D.Double> points, 
+    private void renderContinuousCurve(Graphics2D g2, PointBuffer points, 
                                        int width, int height) {
         g2.setStroke(RenderingConstants.FUNCTION_STROKE);
         
-        Point2D.Double prevPoint = null;
-        for (Point2D.Double point : points) {
-            int x = bounds.xToScreen(point.x, width);
-            int y = bounds.yToScreen(point.y, height);
-            
-            if (prevPoint != null) {
-                int prevX = bounds.xToScreen(prevPoint.x, width);
-                int prevY = bounds.yToScreen(prevPoint.y, height);
-                g2.drawLine(prevX, prevY, x, y);
+        decimator.clear();
+        for (int i = 0; i < points.size(); i++) {
+            if (points.isBreak(i)) {
+                drawPolyline(g2);
+                decimator.clear();
+                continue;
             }
             
-            prevPoint = point;
+            decimator.add(bounds.xToScreen(points.getX(i), width), bounds.yToScreen(points.getY(i), height));
+        }
+        drawPolyline(g2);
+    }
+    
+    /**
+     * Draw the polyline collected by the decimator
+     */
+    private void drawPolyline(Graphics2D g2) {
+        int count = decimator.finish();
+        int[] xs = decimator.getXs();
+        int[] ys = decimator.getYs();
+        for (int i = 1; i < count; i++) {
+            g2.drawLine(xs[i - 1], ys[i - 1], xs[i], ys[i]);
         }
     }
     
     /**
      * Render discrete points (for intersections, scatter plots, etc.)
      */
-    private void renderDiscretePoints(Graphics2D g2, List<Point2D.Double> points,
+    private void renderDiscretePoints(Graphics2D g2, PointBuffer points,
                                       int width, int height) {
         int radius = RenderingConstants.INTERSECTION_POINT_RADIUS;
         
-        for (Point2D.Double point : points) {
-            int x = bounds.xToScreen(point.x, width);
-            int y = bounds.yToScreen(point.y, height);
+        for (int i = 0; i < points.size(); i++) {
+            int x = bounds.xToScreen(points.getX(i), width);
+            int y = bounds.yToScreen(points.getY(i), height);
             
             g2.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
         }
@@ -118,7 +139,7 @@ public class GraphRenderer {
      * Render an inequation function with filling
      */
     private void renderRegion(Graphics2D g2, InequationFunction function,
-                             List<Point2D.Double> points, int width, int height) {
+                             PointBuffer points, int width, int height) {
         // Draw the boundary curves
         g2.setColor(function.getColor());
         g2.setStroke(RenderingConstants.BORDER_STROKE);
@@ -129,99 +150,91 @@ public class GraphRenderer {
         double xMax = bounds.getMaxX();
         double xStep = (xMax - xMin) / sampleCount;
         
+        // Evaluate both sides once per sample, as columns split across threads
+        // when large enough; undefined values come back as NaN
+        double[] xs = new double[sampleCount + 1];
+        for (int i = 0; i <= sampleCount; i++) {
+            xs[i] = xMin + i * xStep;
+        }
+        double[] leftYs = new double[sampleCount + 1];
+        double[] rightYs = new double[sampleCount + 1];
+        function.evaluateSides(xs, leftYs, rightYs);
+        
         // Draw both boundary curves
         java.awt.geom.Path2D leftPath = new java.awt.geom.Path2D.Double();
         java.awt.geom.Path2D rightPath = new java.awt.geom.Path2D.Double();
         boolean leftStarted = false;
         boolean rightStarted = false;
         
-        try {
-            for (int i = 0; i <= sampleCount; i++) {
-                double x = xMin + i * xStep;
+        for (int i = 0; i <= sampleCount; i++) {
+            if (ValidationUtils.areAllValid(leftYs[i], rightYs[i])) {
+                int sx = bounds.xToScreen(xMin + i * xStep, width);
+                int leftSy = bounds.yToScreen(leftYs[i], height);
+                int rightSy = bounds.yToScreen(rightYs[i], height);
                 
-                try {
-                    double leftY = function.evaluateLeft(x);
-                    double rightY = function.evaluateRight(x);
-                    
-                    if (ValidationUtils.areAllValid(leftY, rightY)) {
-                        int sx = bounds.xToScreen(x, width);
-                        int leftSy = bounds.yToScreen(leftY, height);
-                        int rightSy = bounds.yToScreen(rightY, height);
-                        
-                        if (!leftStarted) {
-                            leftPath.moveTo(sx, leftSy);
-                            leftStarted = true;
-                        } else {
-                            leftPath.lineTo(sx, leftSy);
-                        }
-                        
-                        if (!rightStarted) {
-                            rightPath.moveTo(sx, rightSy);
-                            rightStarted = true;
-                        } else {
-                            rightPath.lineTo(sx, rightSy);
-                        }
-                    }
-                } catch (Exception e) {
-                    // Skip this point
+                if (!leftStarted) {
+                    leftPath.moveTo(sx, leftSy);
+                    leftStarted = true;
+                } else {
+                    leftPath.lineTo(sx, leftSy);
+                }
+                
+                if (!rightStarted) {
+                    rightPath.moveTo(sx, rightSy);
+                    rightStarted = true;
+                } else {
+                    rightPath.lineTo(sx, rightSy);
                 }
             }
+        }
+        
+        // Draw the boundary curves
+        g2.draw(leftPath);
+        g2.draw(rightPath);
+        
+        // Fill the region between the curves
+        Color fillColor = new Color(
+            function.getColor().getRed(),
+            function.getColor().getGreen(),
+            function.getColor().getBlue(),
+            RenderingConstants.FILL_ALPHA
+        );
+        g2.setColor(fillColor);
+        
+        // Create filled polygon between curves
+        for (int i = 0; i < sampleCount; i++) {
+            double x1 = xMin + i * xStep;
+            double x2 = xMin + (i + 1) * xStep;
+            double leftY1 = leftYs[i];
+            double rightY1 = rightYs[i];
+            double leftY2 = leftYs[i + 1];
+            double rightY2 = rightYs[i + 1];
             
-            // Draw the boundary curves
-            g2.draw(leftPath);
-            g2.draw(rightPath);
-            
-            // Fill the region between the curves
-            Color fillColor = new Color(
-                function.getColor().getRed(),
-                function.getColor().getGreen(),
-                function.getColor().getBlue(),
-                RenderingConstants.FILL_ALPHA
-            );
-            g2.setColor(fillColor);
-            
-            // Create filled polygon between curves
-            for (int i = 0; i < sampleCount; i++) {
-                double x1 = xMin + i * xStep;
-                double x2 = xMin + (i + 1) * xStep;
+            if (ValidationUtils.areAllValid(leftY1, rightY1, leftY2, rightY2)) {
+                // Check if this region satisfies the inequality
+                boolean satisfies1 = function.satisfiesInequality(leftY1, rightY1);
+                boolean satisfies2 = function.satisfiesInequality(leftY2, rightY2);
                 
-                try {
-                    double leftY1 = function.evaluateLeft(x1);
-                    double rightY1 = function.evaluateRight(x1);
-                    double leftY2 = function.evaluateLeft(x2);
-                    double rightY2 = function.evaluateRight(x2);
+                if (satisfies1 || satisfies2) {
+                    // Create a quad between the two curves
+                    int[] xPoints = new int[4];
+                    int[] yPoints = new int[4];
+                    
+                    xPoints[0] = bounds.xToScreen(x1, width);
+                    yPoints[0] = bounds.yToScreen(leftY1, height);
+                    
+                    xPoints[1] = bounds.xToScreen(x2, width);
+                    yPoints[1] = bounds.yToScreen(leftY2, height);
+                    
+                    xPoints[2] = bounds.xToScreen(x2, width);
+                    yPoints[2] = bounds.yToScreen(rightY2, height);
+                    
+                    xPoints[3] = bounds.xToScreen(x1, width);
+                    yPoints[3] = bounds.yToScreen(rightY1, height);
                     
-                    if (ValidationUtils.areAllValid(leftY1, rightY1, leftY2, rightY2)) {
-                        // Check if this region satisfies the inequality
-                        boolean satisfies1 = function.satisfiesInequality(x1);
-                        boolean satisfies2 = function.satisfiesInequality(x2);
-                        
-                        if (satisfies1 || satisfies2) {
-                            // Create a quad between the two curves
-                            int[] xPoints = new int[4];
-                            int[] yPoints = new int[4];
-                            
-                            xPoints[0] = bounds.xToScreen(x1, width);
-                            yPoints[0] = bounds.yToScreen(leftY1, height);
-                            
-                            xPoints[1] = bounds.xToScreen(x2, width);
-                            yPoints[1] = bounds.yToScreen(leftY2, height);
-                            
-                            xPoints[2] = bounds.xToScreen(x2, width);
-                            yPoints[2] = bounds.yToScreen(rightY2, height);
-                            
-                            xPoints[3] = bounds.xToScreen(x1, width);
-                            yPoints[3] = bounds.yToScreen(rightY1, height);
-                            
-                            g2.fillPolygon(xPoints, yPoints, 4);
-                        }
-                    }
-                } catch (Exception e) {
-                    // Skip this segment
+                    g2.fillPolygon(xPoints, yPoints, 4);
                 }
             }
-        } catch (Exception e) {
-            // Error rendering region
         }
     }
 }
\ No newline at end of file
@@ -2,10 +2,15 @@ package lib.rendering;
 
 import lib.constants.MathConstants;
 import lib.constants.RenderingConstants;
+import lib.core.evaluation.CompiledExpression;
 import lib.core.evaluation.ExpressionEvaluator;
+import lib.core.evaluation.SampleRanges;
+import lib.core.evaluation.node.DualNumber;
+import lib.core.evaluation.node.Interval;
 import lib.util.ValidationUtils;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,6 +29,13 @@ public class IntersectionFinder {
         this.evaluator = evaluator;
     }
     
+    /**
+     * Get the evaluator expressions are compiled with
+     */
+    public ExpressionEvaluator getEvaluator() {
+        return evaluator;
+    }
+    
     /**
      * Find all intersection points between two expressions over a range
      * @param leftExpr Left side expression
@@ -35,48 +47,106 @@ public class IntersectionFinder {
      */
     public List<Point2D.Double> findIntersections(String leftExpr, String rightExpr, 
                                                     double minX, double maxX, int screenWidth) {
-        List<Point2D.Double> roots = new ArrayList<>();
-        
+        try {
+            return findIntersections(evaluator.compile(leftExpr), evaluator.compile(rightExpr),
+                                     minX, maxX, screenWidth);
+        } catch (Exception ex) {
+            // Invalid expressions have no intersections
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Find all intersection points between two compiled expressions over a range
+     * @param left Left side expression
+     * @param right Right side expression
+     * @param minX Minimum X value to search
+     * @param maxX Maximum X value to search
+     * @param screenWidth Width in pixels (used for adaptive sampling)
+     * @return List of intersection points
+     */
+    public List<Point2D.Double> findIntersections(CompiledExpression left, CompiledExpression right,
+                                                    double minX, double maxX, int screenWidth) {
         int samples = calculateSampleCount(screenWidth);
         double step = (maxX - minX) / (double) samples;
-        double prevVal = Double.NaN;
-        double prevX = minX;
+        int block = RenderingConstants.INTERVAL_BLOCK_SAMPLES;
+        int blocks = (samples + block - 1) / block;
         
-        for (int i = 0; i <= samples; i++) {
-            double x = minX + i * step;
-            try {
-                double vLeft = evaluator.evaluate(leftExpr, x);
-                double vRight = evaluator.evaluate(rightExpr, x);
-                double v = vLeft - vRight;
-                
-                if (ValidationUtils.isValidValue(prevVal) && ValidationUtils.isValidValue(v)) {
-                    if (hasSignChange(prevVal, v)) {
-                        double root = findRootByBisection(leftExpr, rightExpr, prevX, x, prevVal);
-                        
-                        if (ValidationUtils.isValidValue(root)) {
-                            try {
-                                double y = evaluator.evaluate(leftExpr, root);
-                                Point2D.Double p = new Point2D.Double(root, y);
-                                
-                                // Deduplicate close roots
-                                if (!isDuplicate(p, roots)) {
-                                    roots.add(p);
-                                }
-                            } catch (Exception ex) {
-                                // Ignore invalid points
-                            }
+        // Blocks are scanned independently, in parallel when the scan is
+        // large enough, then merged in order so the result is the same as
+        // one sequential scan
+        List<List<Point2D.Double>> found = new ArrayList<>(Collections.nCopies(blocks, null));
+        int cost = (block + 1) * (left.getCost() + right.getCost());
+        SampleRanges.forEach(blocks, cost, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                found.set(k, scanBlock(left, right, minX, step, k * block, Math.min((k + 1) * block, samples)));
+            }
+        });
+        
+        List<Point2D.Double> roots = new ArrayList<>();
+        for (List<Point2D.Double> candidates : found) {
+            for (Point2D.Double p : candidates) {
+                // Deduplicate close roots
+                if (!isDuplicate(p, roots)) {
+                    roots.add(p);
+                }
+            }
+        }
+        
+        return roots;
+    }
+    
+    /**
+     * Scan one block of samples for sign changes of (left - right), refining each into a root.
+     * Consecutive blocks share their end sample.
+     * @param left Left side expression
+     * @param right Right side expression
+     * @param minX Position of sample 0
+     * @param step Distance between samples
+     * @param start First sample of the block
+     * @param end Last sample of the block
+     * @return The roots found, in order, not deduplicated
+     */
+    private List<Point2D.Double> scanBlock(CompiledExpression left, CompiledExpression right,
+                                           double minX, double step, int start, int end) {
+        // Skip blocks where interval bounds prove left - right never reaches zero
+        Interval difference = left.evaluateInterval(minX + start * step, minX + end * step)
+            .subtract(right.evaluateInterval(minX + start * step, minX + end * step));
+        if (!difference.contains(0.0)) return new ArrayList<>();
+        
+        // Evaluate both sides over the block's column
+        double[] xs = new double[end - start + 1];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = minX + (start + i) * step;
+        }
+        double[] leftValues = new double[xs.length];
+        double[] rightValues = new double[xs.length];
+        left.evaluate(xs, leftValues);
+        right.evaluate(xs, rightValues);
+        
+        List<Point2D.Double> roots = new ArrayList<>();
+        double prevVal = Double.NaN;
+        double prevX = xs[0];
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            double v = leftValues[i] - rightValues[i];
+            
+            if (ValidationUtils.isValidValue(prevVal) && ValidationUtils.isValidValue(v)) {
+                if (hasSignChange(prevVal, v)) {
+                    double root = findRootByNewton(left, right, prevX, x, prevVal);
+                    
+                    if (ValidationUtils.isValidValue(root)) {
+                        Point2D.Double p = new Point2D.Double(root, left.evaluate(root));
+                        if (ValidationUtils.isValidValue(p.y)) {
+                            roots.add(p);
                         }
                     }
                 }
-                
-                prevVal = v;
-                prevX = x;
-            } catch (Exception ex) {
-                prevVal = Double.NaN;
-                prevX = x;
             }
+            
+            prevVal = v;
+            prevX = x;
         }
-        
         return roots;
     }
     
@@ -91,38 +161,104 @@ public class IntersectionFinder {
      */
     public double findRootByBisection(String leftExpr, String rightExpr, 
                                       double a, double b, double fa) {
-        double root = Double.NaN;
         try {
-            // Perform bisection iterations
-            for (int it = 0; it < MathConstants.BISECTION_MAX_ITERATIONS; it++) {
-                double m = (a + b) / 2.0;
-                double fm = evaluator.evaluate(leftExpr, m) - evaluator.evaluate(rightExpr, m);
-                
-                if (!ValidationUtils.isValidValue(fm)) break;
-                
-                if (Math.abs(fm) < MathConstants.BISECTION_EPSILON) { 
-                    root = m; 
-                    break; 
-                }
-                
-                if ((fa > 0 && fm < 0) || (fa < 0 && fm > 0)) { 
-                    b = m; 
-                } else { 
-                    a = m; 
-                    fa = fm; 
-                }
+            return findRootByBisection(evaluator.compile(leftExpr), evaluator.compile(rightExpr), a, b, fa);
+        } catch (Exception ex) {
+            return (a + b) / 2.0;
+        }
+    }
+    
+    /**
+     * Find the root of (left - right) using bisection method
+     * @param left The left expression
+     * @param right The right expression
+     * @param a Start of interval
+     * @param b End of interval
+     * @param fa Function value at a
+     * @return The root, or NaN if not found
+     */
+    public double findRootByBisection(CompiledExpression left, CompiledExpression right,
+                                      double a, double b, double fa) {
+        double root = Double.NaN;
+        
+        // Perform bisection iterations
+        for (int it = 0; it < MathConstants.BISECTION_MAX_ITERATIONS; it++) {
+            double m = (a + b) / 2.0;
+            double fm = left.evaluate(m) - right.evaluate(m);
+            
+            if (!ValidationUtils.isValidValue(fm)) break;
+            
+            if (Math.abs(fm) < MathConstants.BISECTION_EPSILON) { 
+                root = m; 
+                break; 
             }
             
-            if (Double.isNaN(root)) {
-                root = (a + b) / 2.0;
+            if ((fa > 0 && fm < 0) || (fa < 0 && fm > 0)) { 
+                b = m; 
+            } else { 
+                a = m; 
+                fa = fm; 
             }
-        } catch (Exception ex) {
+        }
+        
+        if (Double.isNaN(root)) {
             root = (a + b) / 2.0;
         }
         
         return root;
     }
     
+    /**
+     * Find the root of (left - right) in a bracketing interval with Newton
+     * steps, using exact derivatives from automatic differentiation.
+     * A step that leaves the bracket, or a vanishing derivative, falls back to
+     * bisection, so convergence is never worse than {@link #findRootByBisection}.
+     * @param left The left expression
+     * @param right The right expression
+     * @param a Start of interval
+     * @param b End of interval
+     * @param fa Function value at a
+     * @return The root, or NaN if not found
+     */
+    public double findRootByNewton(CompiledExpression left, CompiledExpression right,
+                                   double a, double b, double fa) {
+        if (fa == 0.0) return a;
+        // The scan counts a sample landing exactly on the root as a sign change
+        if (left.evaluate(b) - right.evaluate(b) == 0.0) return b;
+        
+        double x = (a + b) / 2.0;
+        for (int it = 0; it < MathConstants.NEWTON_MAX_ITERATIONS; it++) {
+            DualNumber l = left.evaluateWithDerivative(x);
+            DualNumber r = right.evaluateWithDerivative(x);
+            double fx = l.getValue() - r.getValue();
+            double dfx = l.getDerivative() - r.getDerivative();
+            
+            if (!ValidationUtils.isValidValue(fx)) break;
+            if (fx == 0.0) return x;
+            
+            // Keep the sign change inside [a, b]
+            if ((fa > 0) == (fx > 0)) {
+                a = x;
+                fa = fx;
+            } else {
+                b = x;
+            }
+            
+            double next = x - fx / dfx;
+            if (!(next >= a && next <= b)) {
+                next = (a + b) / 2.0;
+            }
+            double tolerance = MathConstants.EPSILON * Math.max(1.0, Math.abs(x));
+            if (Math.abs(next - x) <= tolerance || b - a <= tolerance) {
+                return next;
+            }
+            x = next;
+        }
+        
+        // Newton did not settle: finish the bracket by bisection
+        return findRootByBisection(left, right, a, b, fa);
+    }
+    
     /**
      * Calculate the number of samples based on screen width
      * @param screenWidth Width in pixels
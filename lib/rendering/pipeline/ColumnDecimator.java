@@ -0,0 +1,126 @@
+package lib.rendering.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a polyline in screen coordinates to at most four points per pixel
+ * column (M4 decimation): of each run of consecutive points falling in the
+ * same column, only the first, the lowest, the highest and the last are kept,
+ * in the order they occur.
+ * Within a column the dropped points only draw vertical segments between the
+ * lowest and the highest, which the kept ones cover, and the segments into and
+ * out of the column are unchanged, so the rendered polyline is pixel-identical
+ * while it takes at most about four lines per column however densely the
+ * curve was sampled.
+ * Points are added one at a time; the buffers are reused between polylines.
+ */
+public class ColumnDecimator {
+    
+    private int[] xs;
+    private int[] ys;
+    private int size;
+    
+    // The run of points in the current column, not flushed yet
+    private boolean open;
+    private int column;
+    private int firstY;
+    private int lastY;
+    private int minY;
+    private int maxY;
+    // Order of the lowest and highest points within the run
+    private int minOrder;
+    private int maxOrder;
+    private int runLength;
+    
+    /**
+     * Create a decimator
+     * @param capacity Initial number of points of the buffers, grown as needed
+     */
+    public ColumnDecimator(int capacity) {
+        this.xs = new int[Math.max(capacity, 4)];
+        this.ys = new int[xs.length];
+    }
+    
+    /**
+     * Drop the current polyline and start a new one
+     */
+    public void clear() {
+        size = 0;
+        open = false;
+    }
+    
+    /**
+     * Add the next point of the polyline
+     * @param x Screen X coordinate
+     * @param y Screen Y coordinate
+     */
+    public void add(int x, int y) {
+        if (open && x == column) {
+            if (y < minY) {
+                minY = y;
+                minOrder = runLength;
+            }
+            if (y > maxY) {
+                maxY = y;
+                maxOrder = runLength;
+            }
+            lastY = y;
+            runLength++;
+            return;
+        }
+        flush();
+        open = true;
+        column = x;
+        firstY = lastY = minY = maxY = y;
+        minOrder = maxOrder = 0;
+        runLength = 1;
+    }
+    
+    /**
+     * Complete the polyline, flushing the points of its last column
+     * @return Number of points kept
+     */
+    public int finish() {
+        flush();
+        return size;
+    }
+    
+    public int[] getXs() {
+        return xs;
+    }
+    
+    public int[] getYs() {
+        return ys;
+    }
+    
+    /**
+     * Append the kept points of the current column run to the buffers
+     */
+    private void flush() {
+        if (!open) return;
+        open = false;
+        append(firstY);
+        if (minOrder < maxOrder) {
+            append(minY);
+            append(maxY);
+        } else {
+            append(maxY);
+            append(minY);
+        }
+        append(lastY);
+    }
+    
+    /**
+     * Append a point of the current column, skipping repeats of the previous point
+     */
+    private void append(int y) {
+        if (size > 0 && xs[size - 1] == column && ys[size - 1] == y) return;
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, 2 * size);
+            ys = Arrays.copyOf(ys, 2 * size);
+        }
+        xs[size] = column;
+        ys[size] = y;
+        size++;
+    }
+}
@@ -2,11 +2,13 @@ package lib.rendering.pipeline;
 
 import lib.constants.GraphConstants;
 import lib.constants.RenderingConstants;
+import lib.core.evaluation.CompiledExpression;
 import lib.core.evaluation.ExpressionEvaluator;
 import lib.model.domain.GraphBounds;
 import lib.util.ValidationUtils;
 import java.awt.*;
 import java.awt.geom.Path2D;
+import java.util.Arrays;
 
 /**
  * Handles plotting individual mathematical functions
@@ -39,31 +41,45 @@ public class FunctionPlotter {
         g2.setColor(color);
         g2.setStroke(RenderingConstants.FUNCTION_STROKE);
         
+        CompiledExpression compiled;
+        try {
+            compiled = evaluator.compile(expression);
+        } catch (Exception e) {
+            // Invalid expressions draw nothing
+            return;
+        }
+        
         Path2D path = new Path2D.Double();
         int sampleCount = calculateAdaptiveSamples(width);
         double step = (double) width / (double) sampleCount;
         boolean firstPoint = true;
         
-        for (double sx = 0.0; sx < width; sx += step) {
-            int screenX = (int) Math.round(sx);
-            double x = bounds.screenToX(screenX, width);
-            
-            try {
-                double y = evaluator.evaluate(expression, x);
+        // Collect the sample column first, then evaluate it in one call
+        int[] screenXs = new int[(int) Math.ceil(width / step) + 1];
+        double[] xs = new double[screenXs.length];
+        int count = 0;
+        for (double sx = 0.0; sx < width && count < xs.length; sx += step) {
+            screenXs[count] = (int) Math.round(sx);
+            xs[count] = bounds.screenToX(screenXs[count], width);
+            count++;
+        }
+        if (count < xs.length) {
+            xs = Arrays.copyOf(xs, count);
+        }
+        double[] ys = new double[count];
+        compiled.evaluate(xs, ys);
+        
+        for (int i = 0; i < count; i++) {
+            if (ValidationUtils.isValidValue(ys[i])) {
+                int screenY = bounds.yToScreen(ys[i], height);
                 
-                if (ValidationUtils.isValidValue(y)) {
-                    int screenY = bounds.yToScreen(y, height);
-                    
-                    if (firstPoint) {
-                        path.moveTo(screenX, screenY);
-                        firstPoint = false;
-                    } else {
-                        path.lineTo(screenX, screenY);
-                    }
+                if (firstPoint) {
+                    path.moveTo(screenXs[i], screenY);
+                    firstPoint = false;
                 } else {
-                    firstPoint = true;
+                    path.lineTo(screenXs[i], screenY);
                 }
-            } catch (Exception e) {
+            } else {
                 firstPoint = true;
             }
         }
@@ -1,6 +1,7 @@
 package lib.rendering.pipeline;
 
 import lib.constants.RenderingConstants;
+import lib.core.evaluation.CompiledExpression;
 import lib.core.evaluation.ExpressionEvaluator;
 import lib.model.domain.GraphBounds;
 import lib.rendering.IntersectionFinder;
@@ -39,17 +40,27 @@ public class RegionRenderer {
      */
     public void renderRegion(Graphics2D g2, String leftExpr, String operator, String rightExpr, 
                             Color color, int width, int height) {
+        CompiledExpression left;
+        CompiledExpression right;
+        try {
+            left = evaluator.compile(leftExpr);
+            right = evaluator.compile(rightExpr);
+        } catch (Exception e) {
+            // Invalid expressions draw nothing
+            return;
+        }
+        
         // Draw the border (where leftExpr = rightExpr)
-        drawBorder(g2, leftExpr, rightExpr, color, width, height);
+        drawBorder(g2, left, right, color, width, height);
         
         // Fill the region based on the operator
-        fillRegion(g2, leftExpr, operator, rightExpr, color, width, height);
+        fillRegion(g2, left, operator, right, color, width, height);
     }
     
     /**
      * Draw the border where leftExpr = rightExpr
      */
-    private void drawBorder(Graphics2D g2, String leftExpr, String rightExpr, 
+    private void drawBorder(Graphics2D g2, CompiledExpression left, CompiledExpression right, 
                            Color color, int width, int height) {
         g2.setColor(color);
         g2.setStroke(RenderingConstants.BORDER_STROKE);
@@ -62,23 +73,19 @@ public class RegionRenderer {
             int screenX = (int) Math.round(sx);
             double x = bounds.screenToX(screenX, width);
             
-            try {
-                double leftY = evaluator.evaluate(leftExpr, x);
-                double rightY = evaluator.evaluate(rightExpr, x);
+            double leftY = left.evaluate(x);
+            double rightY = right.evaluate(x);
+            
+            // Draw where they're approximately equal (the boundary); NaN never is
+            if (Math.abs(leftY - rightY) < 0.01) {
+                int screenY = bounds.yToScreen(leftY, height);
                 
-                // Draw where they're approximately equal (the boundary)
-                if (Math.abs(leftY - rightY) < 0.01) {
-                    int screenY = bounds.yToScreen(leftY, height);
-                    
-                    if (firstPoint) {
-                        path.moveTo(screenX, screenY);
-                        firstPoint = false;
-                    } else {
-                        path.lineTo(screenX, screenY);
-                    }
+                if (firstPoint) {
+                    path.moveTo(screenX, screenY);
+                    firstPoint = false;
+                } else {
+                    path.lineTo(screenX, screenY);
                 }
-            } catch (Exception e) {
-                // Skip invalid points
             }
         }
         
@@ -88,7 +95,7 @@ public class RegionRenderer {
     /**
      * Fill the region based on the inequality operator
      */
-    private void fillRegion(Graphics2D g2, String leftExpr, String operator, String rightExpr,
+    private void fillRegion(Graphics2D g2, CompiledExpression left, String operator, CompiledExpression right,
                            Color color, int width, int height) {
         // Create transparent fill color
         Color fillColor = new Color(color.getRed(), color.getGreen(), color.getBlue(), 
@@ -102,54 +109,50 @@ public class RegionRenderer {
             int screenX = (int) Math.round(sx);
             double x = bounds.screenToX(screenX, width);
             
-            try {
-                double leftY = evaluator.evaluate(leftExpr, x);
-                double rightY = evaluator.evaluate(rightExpr, x);
-                
-                if (!ValidationUtils.isValidValue(leftY) || !ValidationUtils.isValidValue(rightY)) continue;
-                
-                // Determine if we should fill based on operator
-                boolean shouldFill = false;
-                double topY, bottomY;
-                
-                switch (operator) {
-                    case ">=":
-                    case ">":
-                        // Fill where leftExpr >= rightExpr (above rightExpr, below leftExpr)
-                        if (leftY >= rightY) {
-                            shouldFill = true;
-                            topY = leftY;
-                            bottomY = rightY;
-                        } else {
-                            topY = rightY;
-                            bottomY = leftY;
-                        }
-                        break;
-                    case "<=":
-                    case "<":
-                        // Fill where leftExpr <= rightExpr (below rightExpr, above leftExpr)
-                        if (leftY <= rightY) {
-                            shouldFill = true;
-                            topY = rightY;
-                            bottomY = leftY;
-                        } else {
-                            topY = leftY;
-                            bottomY = rightY;
-                        }
-                        break;
-                    default:
-                        continue;
-                }
+            double leftY = left.evaluate(x);
+            double rightY = right.evaluate(x);
+            
+            if (!ValidationUtils.isValidValue(leftY) || !ValidationUtils.isValidValue(rightY)) continue;
+            
+            // Determine if we should fill based on operator
+            boolean shouldFill = false;
+            double topY, bottomY;
+            
+            switch (operator) {
+                case ">=":
+                case ">":
+                    // Fill where leftExpr >= rightExpr (above rightExpr, below leftExpr)
+                    if (leftY >= rightY) {
+                        shouldFill = true;
+                        topY = leftY;
+                        bottomY = rightY;
+                    } else {
+                        topY = rightY;
+                        bottomY = leftY;
+                    }
+                    break;
+                case "<=":
+                case "<":
+                    // Fill where leftExpr <= rightExpr (below rightExpr, above leftExpr)
+                    if (leftY <= rightY) {
+                        shouldFill = true;
+                        topY = rightY;
+                        bottomY = leftY;
+                    } else {
+                        topY = leftY;
+                        bottomY = rightY;
+                    }
+                    break;
+                default:
+                    continue;
+            }
+            
+            if (shouldFill) {
+                int screenY1 = bounds.yToScreen(topY, height);
+                int screenY2 = bounds.yToScreen(bottomY, height);
                 
-                if (shouldFill) {
-                    int screenY1 = bounds.yToScreen(topY, height);
-                    int screenY2 = bounds.yToScreen(bottomY, height);
-                    
-                    // Draw vertical line segment for this x position
-                    g2.drawLine(screenX, screenY1, screenX, screenY2);
-                }
-            } catch (Exception e) {
-                // Skip invalid points
+                // Draw vertical line segment for this x position
+                g2.drawLine(screenX, screenY1, screenX, screenY2);
             }
         }
     }
@@ -27,6 +27,7 @@ public abstract class AbstractFunctionEntry extends JPanel {
     // Common UI Components
     protected JTextField expressionField;
     protected JLabel displayLabel;
+    protected JLabel errorLabel;
     protected JButton deleteButton;
     protected JButton editButton;
     protected JPanel centerPanel;
@@ -75,6 +76,11 @@ public abstract class AbstractFunctionEntry extends JPanel {
         displayLabel.setFont(new Font("Monospaced", Font.PLAIN, 12));
         formatter.formatExpression(expression, displayLabel);
         
+        // Error indicator (hidden until the definition is reported invalid)
+        errorLabel = new JLabel("⚠");
+        errorLabel.setForeground(Color.RED);
+        errorLabel.setVisible(false);
+        
         // Edit button
         editButton = new JButton("Edit");
         editButton.setPreferredSize(new Dimension(60, 25));
@@ -100,6 +106,7 @@ public abstract class AbstractFunctionEntry extends JPanel {
         // Subclasses add their specific controls here (color picker, checkbox, etc.)
         layoutSpecificComponents(topPanel);
         
+        topPanel.add(errorLabel);
         topPanel.add(editButton);
         topPanel.add(deleteButton);
         add(topPanel, BorderLayout.NORTH);
@@ -195,6 +202,16 @@ public abstract class AbstractFunctionEntry extends JPanel {
         return expression;
     }
     
+    /**
+     * Show or clear the error indicator for an invalid definition
+     * (e.g. a recursive function), with the message as tooltip
+     * @param message Error message, or null if the definition is valid
+     */
+    public void setError(String message) {
+        errorLabel.setToolTipText(message);
+        errorLabel.setVisible(message != null);
+    }
+    
     /**
      * Set the expression text (updates both field and internal state)
      * @param expression New expression string
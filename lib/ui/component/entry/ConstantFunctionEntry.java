@@ -15,6 +15,7 @@ public class ConstantFunctionEntry extends AbstractFunctionEntry {
     private JLabel valueLabel;
     private JLabel minLabel;
     private JLabel maxLabel;
+    private boolean updatingSlider = false;
     
     public ConstantFunctionEntry(String expression, ConstantFunction function, FunctionPanel parent) {
         super(expression, parent);
@@ -28,11 +29,13 @@ public class ConstantFunctionEntry extends AbstractFunctionEntry {
         slider = new JSlider(0, 100);
         slider.setValue(getSliderPosition());
         slider.addChangeListener(e -> {
-            if (!slider.getValueIsAdjusting()) {
-                updateFunctionFromSlider();
-                updateValueLabel();
-                parent.updateGraph();
-            }
+            // Ignore changes made programmatically to mirror the model value
+            if (updatingSlider) return;
+            updateFunctionFromSlider();
+            updateValueLabel();
+            // Only the parameter value changed, so the graph just rereads its slot;
+            // while the knob is dragged it draws fast previews
+            parent.updateParameter(function.getName(), function.getCurrentValue(), slider.getValueIsAdjusting());
         });
         
         valueLabel = new JLabel();
@@ -96,7 +99,7 @@ public class ConstantFunctionEntry extends AbstractFunctionEntry {
             setExpression(newExpression);
             if (function.hasSlider()) {
                 updateValueLabel();
-                slider.setValue(getSliderPosition());
+                setSliderPosition();
             }
             return true;
         } catch (Exception e) {
@@ -117,7 +120,20 @@ public class ConstantFunctionEntry extends AbstractFunctionEntry {
         function.setCurrentValue(value);
         if (function.hasSlider()) {
             updateValueLabel();
+            setSliderPosition();
+        }
+    }
+    
+    /**
+     * Move the slider to match the current value without feeding the
+     * slider's rounded position back into the function
+     */
+    private void setSliderPosition() {
+        updatingSlider = true;
+        try {
             slider.setValue(getSliderPosition());
+        } finally {
+            updatingSlider = false;
         }
     }
 }
\ No newline at end of file
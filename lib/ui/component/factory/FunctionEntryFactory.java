@@ -39,6 +39,15 @@ public class FunctionEntryFactory {
             return createSetEntry(expression);
         }
         
+        if (FunctionParser.isSequence(expression)) {
+            Object[] sequence = FunctionParser.parseSequence(expression);
+            // Malformed definitions still get an entry, which reports the error
+            String name = sequence != null ? (String) sequence[0] : null;
+            Color color = colorManager.getNextColor();
+            PlottableFunction function = functionFactory.createSequenceFunction(name, expression, color);
+            return new PlottableFunctionEntry(function, parent);
+        }
+        
         // Check if it's a named function
         String name = null;
         String actualExpression = expression;
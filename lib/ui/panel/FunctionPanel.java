@@ -195,6 +195,7 @@ public class FunctionPanel extends JPanel {
         // Build parameter values map from ConstantFunctionEntry instances
         java.util.Map<String, Double> paramValues = new java.util.HashMap<>();
         java.util.Map<String, lib.model.function.definition.ConstantFunction> constantFunctions = new java.util.HashMap<>();
+        java.util.Set<String> fixedParameters = new java.util.HashSet<>();
         
         for (AbstractFunctionEntry entry : functionEntries) {
             if (entry instanceof ConstantFunctionEntry) {
@@ -202,6 +203,9 @@ public class FunctionPanel extends JPanel {
                 lib.model.function.definition.ConstantFunction constant = constEntry.getConstantFunction();
                 paramValues.put(constant.getName().toLowerCase(), constant.getCurrentValue());
                 constantFunctions.put(constant.getName().toLowerCase(), constant);
+                if (!constant.hasSlider()) {
+                    fixedParameters.add(constant.getName().toLowerCase());
+                }
             }
         }
         
@@ -222,7 +226,29 @@ public class FunctionPanel extends JPanel {
         
         // Update GraphPanel's user functions and parameters
         graphPanel.setUserFunctions(namedFunctions);
-        graphPanel.setParameters(paramValues);
+        graphPanel.setParameters(paramValues, fixedParameters);
+        graphPanel.setParameterObjects(constantFunctions);
+        
+        // Report invalid definitions (e.g. f(x)=f(x)+1) and syntax errors now rather than while plotting
+        java.util.Map<String, String> definitionErrors = graphPanel.getEvaluator().getDefinitionErrors();
+        for (AbstractFunctionEntry entry : functionEntries) {
+            String error = null;
+            if (entry instanceof PlottableFunctionEntry && FunctionParser.isNamedFunction(entry.getExpression())) {
+                String name = FunctionParser.extractName(entry.getExpression());
+                String rhs = FunctionParser.extractRHS(entry.getExpression());
+                // Intersection definitions such as f(x)=(x^2=x) are not expressions
+                if (name != null && rhs != null && !FunctionParser.isIntersection(rhs)) {
+                    error = definitionErrors.get(name.toLowerCase());
+                }
+            } else if (entry.getFunction() instanceof lib.model.function.geometric.PointFunction
+                       && ((lib.model.function.geometric.PointFunction) entry.getFunction()).isSequence()) {
+                error = graphPanel.getEvaluator().validateSequence(entry.getExpression());
+            } else if (entry.getFunction() instanceof lib.model.function.expression.RegularFunction) {
+                String body = ((lib.model.function.expression.RegularFunction) entry.getFunction()).getExpression();
+                error = graphPanel.getEvaluator().validate(body);
+            }
+            entry.setError(error);
+        }
         
         // Build lists of plottable functions and sets
         java.util.List<lib.model.function.base.PlottableFunction> plottableFunctions = new java.util.ArrayList<>();
@@ -248,6 +274,27 @@ public class FunctionPanel extends JPanel {
         graphPanel.repaint();
     }
     
+    /**
+     * Push a single parameter value change to the graph.
+     * Unlike {@link #updateGraph()}, nothing is rebuilt or recompiled.
+     * @param name Parameter name
+     * @param value New value
+     */
+    public void updateParameter(String name, double value) {
+        updateParameter(name, value, false);
+    }
+    
+    /**
+     * Push a single parameter value change to the graph, drawn as a preview
+     * while the slider is still moving
+     * @param name Parameter name
+     * @param value New value
+     * @param adjusting true while the slider is being dragged
+     */
+    public void updateParameter(String name, double value, boolean adjusting) {
+        graphPanel.setParameterValue(name, value, adjusting);
+    }
+    
     public java.util.Map<String, String> getNamedFunctions() {
         return namedFunctions;
     }
@@ -4,9 +4,10 @@ import lib.constants.GraphConstants;
 import lib.constants.RenderingConstants;
 import lib.core.evaluation.ExpressionEvaluator;
 import lib.model.function.base.PlottableFunction;
+import lib.model.function.base.PointBuffer;
 import lib.model.domain.GraphBounds;
-import lib.model.domain.Parameter;
 import lib.model.function.geometric.PointFunction;
+import lib.model.function.definition.ConstantFunction;
 import lib.model.function.definition.SetFunction;
 import lib.model.domain.ViewportManager;
 import lib.rendering.GraphRenderer;
@@ -19,19 +20,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class GraphPanel extends JPanel {
-
+    
     /**
      * Listener interface for parameter updates during point dragging
      */
     public interface ParameterUpdateListener {
         void onParameterUpdated(String parameterName, double newValue);
     }
-
+    
     private List<PlottableFunction> functions;
     private ExpressionEvaluator evaluator;
     private java.util.Map<String, String> userFunctions = new java.util.HashMap<>();
-    private java.util.Map<String, Double> parameters = new java.util.HashMap<>();
-    private java.util.Map<String, Parameter> parameterObjects = new java.util.HashMap<>();
+    private java.util.Map<String, ConstantFunction> parameterObjects = new java.util.HashMap<>();
     
     // Refactored components
     private GraphBounds bounds;
@@ -50,13 +50,17 @@ public class GraphPanel extends JPanel {
     private PointFunction draggedPoint = null;
     private String draggedParameterX = null;
     private String draggedParameterY = null;
-    private Parameter draggedParamObjX = null;
-    private Parameter draggedParamObjY = null;
+    private ConstantFunction draggedParamObjX = null;
+    private ConstantFunction draggedParamObjY = null;
     private boolean isDraggingPoint = false;
     
     // Callback to update parameter sliders in UI
     private ParameterUpdateListener parameterUpdateListener = null;
-
+    
+    // Interaction state: frames drawn while interacting are fast-math previews
+    private boolean interacting = false;
+    private final Timer settleTimer = new Timer(RenderingConstants.SETTLE_DELAY_MS, e -> settle());
+    
     /**
      * Constructor to set up the panel
      */
@@ -69,12 +73,13 @@ public class GraphPanel extends JPanel {
         bounds = GraphBounds.centered(halfWidth, halfHeight);
         
         // Initialize components
-        evaluator = new ExpressionEvaluator(userFunctions, parameters);
+        evaluator = new ExpressionEvaluator(userFunctions, null);
         functions = new ArrayList<>();
         viewportManager = new ViewportManager(bounds);
         intersectionFinder = new IntersectionFinder(evaluator);
         renderer = new GraphRenderer(evaluator, intersectionFinder, bounds);
         
+        settleTimer.setRepeats(false);
         setupMouseListeners();
         
         // Preserve zoom ratio when the panel is resized
@@ -85,7 +90,7 @@ public class GraphPanel extends JPanel {
             }
         });
     }
-
+    
     // Keep units-per-pixel constant when the component is resized by adjusting bounds
     private void preserveZoomOnResize() {
         int w = Math.max(1, getWidth());
@@ -139,6 +144,7 @@ public class GraphPanel extends JPanel {
                         viewportManager.endPan();
                     }
                     setCursor(Cursor.getDefaultCursor());
+                    settle();
                 }
             }
         });
@@ -173,6 +179,7 @@ public class GraphPanel extends JPanel {
     private void handleZoom(MouseWheelEvent e) {
         boolean zoomIn = e.getWheelRotation() < 0;
         viewportManager.zoom(zoomIn, e.getX(), e.getY(), getWidth(), getHeight());
+        beginInteraction();
         repaint();
     }
     
@@ -182,6 +189,26 @@ public class GraphPanel extends JPanel {
      */
     private void handlePan(MouseEvent e) {
         viewportManager.updatePan(e.getPoint(), getWidth(), getHeight());
+        beginInteraction();
+        repaint();
+    }
+    
+    /**
+     * Mark the frames drawn from now on as previews, until the user has been
+     * idle for {@link RenderingConstants#SETTLE_DELAY_MS}
+     */
+    private void beginInteraction() {
+        interacting = true;
+        settleTimer.restart();
+    }
+    
+    /**
+     * End the interaction and draw the exact frame
+     */
+    private void settle() {
+        settleTimer.stop();
+        if (!interacting) return;
+        interacting = false;
         repaint();
     }
     
@@ -193,28 +220,21 @@ public class GraphPanel extends JPanel {
     public void setFunctions(List<PlottableFunction> functions, List<SetFunction> sets) {
         this.functions = functions;
         
-        // Build a map of sets for parametric points to reference
-        java.util.Map<String, SetFunction> setMap = new java.util.HashMap<>();
+        // Publish the sets for parametric points to reference
+        java.util.Map<String, java.util.List<Double>> setValues = new java.util.HashMap<>();
         if (sets != null) {
             for (SetFunction setFunc : sets) {
                 String setName = setFunc.getName();
                 if (setName != null) {
-                    setMap.put(setName, setFunc);
+                    setValues.put(setName, setFunc.getValues());
                 }
             }
         }
+        evaluator.setSets(setValues);
         
-        // Pass sets to all parametric point functions
-        for (PlottableFunction function : functions) {
-            if (function instanceof PointFunction) {
-                PointFunction pf = (PointFunction) function;
-                if (pf.isParametric()) {
-                    pf.setAvailableSets(setMap);
-                }
-            }
-            // Invalidate caches when functions change
-            function.invalidateCache();
-        }
+        // Cached points stay valid: each function notices on its own when its
+        // definitions, the sets it reads or the view changed, and parameter
+        // changes invalidate only the functions that read them
     }
     
     /**
@@ -223,14 +243,12 @@ public class GraphPanel extends JPanel {
     public void setFunctions(List<PlottableFunction> functions) {
         setFunctions(functions, null);
     }
-
+    
     public void setUserFunctions(java.util.Map<String, String> userFunctions) {
         this.userFunctions = userFunctions == null ? new java.util.HashMap<>() : userFunctions;
-        this.evaluator = new ExpressionEvaluator(this.userFunctions, this.parameters);
         
-        // Update renderer and intersection finder with new evaluator
-        this.intersectionFinder = new IntersectionFinder(evaluator);
-        this.renderer = new GraphRenderer(evaluator, intersectionFinder, bounds);
+        // Update the shared evaluator in place so functions holding it see the new definitions
+        evaluator.setUserFunctions(this.userFunctions);
         
         // Precompute intersection points for any named function whose RHS is an intersection
         namedIntersectionPoints.clear();
@@ -258,19 +276,81 @@ public class GraphPanel extends JPanel {
     }
     
     public void setParameters(java.util.Map<String, Double> parameters) {
-        this.parameters = parameters == null ? new java.util.HashMap<>() : parameters;
-        this.evaluator = new ExpressionEvaluator(this.userFunctions, this.parameters);
+        evaluator.setParameters(parameters);
+    }
+    
+    /**
+     * Set the parameter values, marking the ones without a slider as fixed
+     * so that compiled expressions can fold them
+     * @param parameters Map of parameter name to value
+     * @param fixedNames Names of the fixed parameters
+     */
+    public void setParameters(java.util.Map<String, Double> parameters, java.util.Set<String> fixedNames) {
+        java.util.Map<String, Double> previous = evaluator.getContext().getParameters();
+        evaluator.setParameters(parameters, fixedNames);
         
-        // Update renderer and intersection finder with new evaluator
-        this.intersectionFinder = new IntersectionFinder(evaluator);
-        this.renderer = new GraphRenderer(evaluator, intersectionFinder, bounds);
+        // Added or removed parameters recompile every function; changed values
+        // only concern the functions reading them
+        if (parameters != null) {
+            for (java.util.Map.Entry<String, Double> entry : parameters.entrySet()) {
+                Double oldValue = previous.get(entry.getKey());
+                if (oldValue != null && !oldValue.equals(entry.getValue())) {
+                    invalidateDependents(entry.getKey());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Change the value of a single parameter and redraw.
+     * The value is written to the parameter's slot, so no expression is recompiled.
+     * @param name Parameter name
+     * @param value New value
+     */
+    public void setParameterValue(String name, double value) {
+        setParameterValue(name, value, false);
+    }
+    
+    /**
+     * Change the value of a single parameter and redraw, as a preview while
+     * its slider is still moving
+     * @param name Parameter name
+     * @param value New value
+     * @param adjusting true while the slider is being dragged
+     */
+    public void setParameterValue(String name, double value, boolean adjusting) {
+        if (!evaluator.setParameterValue(name.toLowerCase(), value)) {
+            return;
+        }
+        
+        invalidateDependents(name.toLowerCase());
+        if (adjusting) {
+            beginInteraction();
+        } else {
+            interacting = false;
+            settleTimer.stop();
+        }
+        repaint();
+    }
+    
+    /**
+     * Invalidate the points of every function that reads a parameter,
+     * leaving the others cached
+     * @param name Parameter name (lowercase)
+     */
+    private void invalidateDependents(String name) {
+        for (PlottableFunction function : functions) {
+            if (function.dependsOnParameter(name)) {
+                function.invalidateCache();
+            }
+        }
     }
     
     /**
      * Set parameter objects for drag constraints
-     * @param parameterObjects Map of parameter name to Parameter object
+     * @param parameterObjects Map of parameter name to ConstantFunction object
      */
-    public void setParameterObjects(java.util.Map<String, Parameter> parameterObjects) {
+    public void setParameterObjects(java.util.Map<String, ConstantFunction> parameterObjects) {
         this.parameterObjects = parameterObjects == null ? new java.util.HashMap<>() : parameterObjects;
     }
     
@@ -300,16 +380,14 @@ public class GraphPanel extends JPanel {
                 }
                 
                 // Get the point's current position
-                List<Point2D.Double> points = pointFunc.getPoints(bounds, getWidth(), getHeight());
+                PointBuffer points = pointFunc.getPoints(bounds, getWidth(), getHeight());
                 if (points.isEmpty()) {
                     continue;
                 }
                 
-                Point2D.Double point = points.get(0);
-                
                 // Convert to screen coordinates
-                int pointScreenX = bounds.xToScreen(point.x, getWidth());
-                int pointScreenY = bounds.yToScreen(point.y, getHeight());
+                int pointScreenX = bounds.xToScreen(points.getX(0), getWidth());
+                int pointScreenY = bounds.yToScreen(points.getY(0), getHeight());
                 
                 // Check if click is within threshold
                 double distance = Math.sqrt(
@@ -337,7 +415,7 @@ public class GraphPanel extends JPanel {
         draggedParameterX = point.getParameterInX();
         draggedParameterY = point.getParameterInY();
         
-        // Find the Parameter objects for constraints
+        // Find the parameter definitions for constraints
         draggedParamObjX = findParameter(draggedParameterX);
         draggedParamObjY = findParameter(draggedParameterY);
         
@@ -370,7 +448,7 @@ public class GraphPanel extends JPanel {
             }
             
             // Update parameter value
-            parameters.put(draggedParameterX, newValue);
+            evaluator.setParameterValue(draggedParameterX, newValue);
             draggedParamObjX.setCurrentValue(newValue);
             updated = true;
             
@@ -391,7 +469,7 @@ public class GraphPanel extends JPanel {
             }
             
             // Update parameter value
-            parameters.put(draggedParameterY, newValue);
+            evaluator.setParameterValue(draggedParameterY, newValue);
             draggedParamObjY.setCurrentValue(newValue);
             updated = true;
             
@@ -402,14 +480,15 @@ public class GraphPanel extends JPanel {
         }
         
         if (updated) {
-            // Recreate evaluator with updated parameters
-            this.evaluator = new ExpressionEvaluator(this.userFunctions, this.parameters);
-            this.intersectionFinder = new IntersectionFinder(evaluator);
-            this.renderer = new GraphRenderer(evaluator, intersectionFinder, bounds);
-            
-            // Invalidate cache to force recomputation
-            draggedPoint.invalidateCache();
+            // Recompute the functions reading the dragged parameters
+            if (draggedParameterX != null) {
+                invalidateDependents(draggedParameterX.toLowerCase());
+            }
+            if (draggedParameterY != null) {
+                invalidateDependents(draggedParameterY.toLowerCase());
+            }
             
+            beginInteraction();
             repaint();
         }
     }
@@ -427,17 +506,16 @@ public class GraphPanel extends JPanel {
     }
     
     /**
-     * Find a Parameter object by name
+     * Find a parameter's ConstantFunction by name
      */
-    private Parameter findParameter(String name) {
+    private ConstantFunction findParameter(String name) {
         if (name == null) {
             return null;
         }
         
-        // We need access to the Parameter objects from FunctionPanel
-        // For now, we'll create a list to store them
-        // This will need to be connected to FunctionPanel
-        return parameterObjects.get(name.toLowerCase());
+        // Only slider parameters have the range needed to clamp a drag
+        ConstantFunction parameter = parameterObjects.get(name.toLowerCase());
+        return parameter != null && parameter.hasSlider() ? parameter : null;
     }
     
     /**
@@ -462,6 +540,6 @@ public class GraphPanel extends JPanel {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g;
-        renderer.render(g2, functions, getWidth(), getHeight());
+        renderer.render(g2, functions, getWidth(), getHeight(), interacting);
     }
 }
\ No newline at end of file